@@ -0,0 +1,92 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.components.BankCommunicationProcessor;
+import com.kevshake.gateway.packagers.BankPackager;
+import com.kevshake.gateway.packagers.ByteBufPacker;
+import com.kevshake.gateway.packagers.ByteBufUnpacker;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * BankCommunicationProcessor.createBankMessage converting a POS 0200 into the bank request
+ * (field copies, RRN and transmission time), on its own and followed by packing with
+ * BankPackager as the bank encoder does
+ * The encode benchmarks take the POS request eagerly and lazily unpacked from its frame;
+ * the lazy one forwards the copied fields as received
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BankMessageBenchmark {
+
+    private BankCommunicationProcessor processor;
+    private ISOMsg posRequest;
+    private ISOMsg eagerRequest;
+    private ISOMsg lazyRequest;
+    private ByteBufPacker bankPacker;
+    private ByteBuf out;
+
+    @Setup
+    public void setup() throws Exception {
+        processor = new BankCommunicationProcessor();
+        POSPackager posPackager = new POSPackager();
+        posRequest = BenchmarkMessages.financialRequest(posPackager);
+        if (!posRequest.getString(2).equals(processor.createBankMessage(posRequest).getString(2))) {
+            throw new IllegalStateException("Bank message does not carry the PAN");
+        }
+
+        byte[] packed = posRequest.pack();
+        ByteBuf frame = PooledByteBufAllocator.DEFAULT.heapBuffer(packed.length);
+        try {
+            frame.writeBytes(packed);
+            ByteBufUnpacker unpacker = new ByteBufUnpacker(posPackager);
+            eagerRequest = unpacker.unpack(frame.duplicate());
+            lazyRequest = unpacker.unpackLazy(frame.duplicate());
+        } finally {
+            frame.release();
+        }
+        bankPacker = new ByteBufPacker(new BankPackager());
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length + 64);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+    }
+
+    @Benchmark
+    public ISOMsg createBankMessage() throws Exception {
+        return processor.createBankMessage(posRequest);
+    }
+
+    @Benchmark
+    public byte[] createAndPack() throws Exception {
+        return processor.createBankMessage(posRequest).pack();
+    }
+
+    @Benchmark
+    public ByteBuf eagerCreateAndEncode() throws Exception {
+        return encode(eagerRequest);
+    }
+
+    @Benchmark
+    public ByteBuf lazyCreateAndEncode() throws Exception {
+        return encode(lazyRequest);
+    }
+
+    private ByteBuf encode(ISOMsg request) throws Exception {
+        out.clear();
+        bankPacker.pack(processor.createBankMessage(request), out);
+        return out;
+    }
+}
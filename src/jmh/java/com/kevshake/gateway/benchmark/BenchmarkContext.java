@@ -0,0 +1,63 @@
+package com.kevshake.gateway.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.kevshake.gateway.repository.TerminalKeyRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Spring and logging setup shared by the benchmarks that measure gateway services
+ * The services are wired by a small annotation context with their application.yml defaults,
+ * an in-memory meter registry and a terminal key repository that finds no keys, so
+ * terminals use the default terminal key without a database
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Start a context with the given components and the shared infrastructure beans
+     */
+    public static AnnotationConfigApplicationContext create(Class<?>... components) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(TerminalKeyRepository.class, BenchmarkContext::emptyTerminalKeyRepository);
+        context.register(components);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Send every logger at INFO, the production default, to a Null appender so benchmarks
+     * measure the logging calls and not file I/O
+     */
+    public static void discardLogs() {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.add(builder.newAppender("Null", "Null"));
+        builder.add(builder.newRootLogger(Level.INFO).add(builder.newAppenderRef("Null")));
+        Configurator.reconfigure(builder.build());
+    }
+
+    private static TerminalKeyRepository emptyTerminalKeyRepository() {
+        return (TerminalKeyRepository) Proxy.newProxyInstance(TerminalKeyRepository.class.getClassLoader(),
+            new Class<?>[] { TerminalKeyRepository.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    case "toString": return "EmptyTerminalKeyRepository";
+                    default: return method.getReturnType() == Optional.class ? Optional.empty() : null;
+                }
+            });
+    }
+}
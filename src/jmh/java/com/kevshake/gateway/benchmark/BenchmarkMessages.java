@@ -0,0 +1,59 @@
+package com.kevshake.gateway.benchmark;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.jpos.iso.ISOUtil;
+
+/**
+ * Sample ISO8583 messages shared by the benchmarks
+ * Field values mirror what POS terminals send in production (0200 with PIN and EMV data)
+ */
+public final class BenchmarkMessages {
+
+    public static final String PAN = "4761739001010010";
+    public static final String TERMINAL_ID = "TERM0001";
+
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * Financial request (0200) with PIN block and ICC data
+     */
+    public static ISOMsg financialRequest(ISOPackager packager) throws ISOException {
+        ISOMsg msg = new ISOMsg("0200");
+        msg.setPackager(packager);
+        msg.set(2, PAN);
+        msg.set(3, "000000");
+        msg.set(4, "000000010000");
+        msg.set(7, "1015103000");
+        msg.set(11, "123456");
+        msg.set(12, "103000");
+        msg.set(13, "1015");
+        msg.set(14, "2712");
+        msg.set(22, "051");
+        msg.set(25, "00");
+        msg.set(35, PAN + "D27121011234567");
+        msg.set(37, "000000123456");
+        msg.set(41, TERMINAL_ID);
+        msg.set(42, "MERCH001       ");
+        msg.set(43, "KEVSHAKE GATEWAY TEST MERCHANT  NAIROBI ");
+        msg.set(49, "404");
+        msg.set(52, ISOUtil.hex2byte("0123456789ABCDEF"));
+        msg.set(55, ISOUtil.hex2byte("9F2608A1B2C3D4E5F607089F2701809F10120110A04003240000000000000000000000FF"
+                + "9F3704A1B2C3D49F360200019505000000800009A032410159C01009F02060000000100005F2A020404"));
+        return msg;
+    }
+
+    /**
+     * Echo test (0800 / 990002)
+     */
+    public static ISOMsg echoRequest(ISOPackager packager) throws ISOException {
+        ISOMsg msg = new ISOMsg("0800");
+        msg.setPackager(packager);
+        msg.set(3, "990002");
+        msg.set(11, "000001");
+        msg.set(41, TERMINAL_ID);
+        return msg;
+    }
+}
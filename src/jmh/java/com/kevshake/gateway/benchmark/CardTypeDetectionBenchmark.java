@@ -0,0 +1,76 @@
+package com.kevshake.gateway.benchmark;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.security.BinTable;
+import com.kevshake.gateway.security.CardValidationService.CardType;
+
+/**
+ * Compares the previous card type detection (String.matches over every CardType pattern)
+ * with a lookup in the BIN table trie, over a mix of schemes and an unknown PAN
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CardTypeDetectionBenchmark {
+
+    private static final String[] PANS = {
+        BenchmarkMessages.PAN,      // Visa
+        "5555555555554444",         // Mastercard
+        "2223003122003222",         // Mastercard 2-series
+        "378282246310005",          // American Express
+        "6011111111111117",         // Discover
+        "3530111333300000",         // JCB
+        "6759649826438453",         // Maestro
+        "9999999999999995"          // Unknown, every pattern is tried
+    };
+
+    private BinTable binTable;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        try (InputStream in = CardTypeDetectionBenchmark.class.getResourceAsStream("/bin-table.txt")) {
+            binTable = BinTable.load(in);
+        }
+        for (String pan : PANS) {
+            BinTable.Scheme scheme = binTable.lookup(pan);
+            CardType type = scheme != null ? scheme.getCardType() : CardType.UNKNOWN;
+            if (type != regexDetect(pan)) {
+                throw new IllegalStateException("BIN table and patterns disagree for " + pan);
+            }
+        }
+    }
+
+    private String nextPan() {
+        String pan = PANS[next];
+        next = (next + 1) % PANS.length;
+        return pan;
+    }
+
+    @Benchmark
+    public CardType regexPatterns() {
+        return regexDetect(nextPan());
+    }
+
+    @Benchmark
+    public CardType binTable() {
+        BinTable.Scheme scheme = binTable.lookup(nextPan());
+        return scheme != null ? scheme.getCardType() : CardType.UNKNOWN;
+    }
+
+    private static CardType regexDetect(String pan) {
+        for (CardType cardType : CardType.values()) {
+            if (cardType.getPattern() != null && cardType != CardType.UNKNOWN && pan.matches(cardType.getPattern())) {
+                return cardType;
+            }
+        }
+        return CardType.UNKNOWN;
+    }
+}
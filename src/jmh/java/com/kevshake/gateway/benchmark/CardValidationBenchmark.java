@@ -0,0 +1,59 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.kevshake.gateway.components.MaskedLogger;
+import com.kevshake.gateway.components.TransactionEventLog;
+import com.kevshake.gateway.security.CardValidationService;
+import com.kevshake.gateway.security.CardValidationService.CardValidationResult;
+
+/**
+ * CardValidationService.validateCard as called once per message by the POS handler:
+ * Luhn check, BIN table lookup, PAN masking and the validation log events, over a mix
+ * of schemes with one PAN failing the Luhn check
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CardValidationBenchmark {
+
+    private static final String[] PANS = {
+        BenchmarkMessages.PAN,      // Visa
+        "5555555555554444",         // Mastercard
+        "378282246310005",          // American Express
+        "6011111111111117",         // Discover
+        "4761739001010011"          // Fails the Luhn check
+    };
+
+    private AnnotationConfigApplicationContext context;
+    private CardValidationService cardValidationService;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkContext.discardLogs();
+        context = BenchmarkContext.create(CardValidationService.class, MaskedLogger.class, TransactionEventLog.class);
+        cardValidationService = context.getBean(CardValidationService.class);
+        if (!cardValidationService.validateCard(BenchmarkMessages.PAN).isValid()) {
+            throw new IllegalStateException("Sample PAN did not validate");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CardValidationResult validateCard() {
+        String pan = PANS[next];
+        next = (next + 1) % PANS.length;
+        return cardValidationService.validateCard(pan, BenchmarkMessages.TERMINAL_ID);
+    }
+}
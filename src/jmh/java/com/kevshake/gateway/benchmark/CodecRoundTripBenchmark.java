@@ -0,0 +1,75 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.components.AsciiLengthFrameDecoder;
+import com.kevshake.gateway.components.IsoMessageDecoder;
+import com.kevshake.gateway.components.IsoMessageEncoder;
+import com.kevshake.gateway.components.IsoMessageEncoder.LengthHeader;
+import com.kevshake.gateway.packagers.BankPackager;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * Encode and decode of a 0200 through the production pipelines, without sockets:
+ * IsoMessageEncoder writes the framed message, the frame decoder and IsoMessageDecoder
+ * read it back. The POS link uses POSPackager with a binary length header, the bank link
+ * BankPackager with the 4 digit ASCII header
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecRoundTripBenchmark {
+
+    @Param({"pos", "bank"})
+    public String link;
+
+    private ISOMsg request;
+    private EmbeddedChannel encoding;
+    private EmbeddedChannel decoding;
+
+    @Setup
+    public void setup() throws Exception {
+        ISOPackager packager;
+        if ("pos".equals(link)) {
+            packager = new POSPackager();
+            encoding = new EmbeddedChannel(new IsoMessageEncoder(packager, LengthHeader.BINARY));
+            decoding = new EmbeddedChannel(new LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2),
+                new IsoMessageDecoder(packager));
+        } else {
+            packager = new BankPackager();
+            encoding = new EmbeddedChannel(new IsoMessageEncoder(packager, LengthHeader.ASCII));
+            decoding = new EmbeddedChannel(new AsciiLengthFrameDecoder(9999), new IsoMessageDecoder(packager));
+        }
+        request = BenchmarkMessages.financialRequest(packager);
+
+        ISOMsg decoded = roundTrip();
+        if (!request.getString(2).equals(decoded.getString(2)) || !request.getString(41).equals(decoded.getString(41))) {
+            throw new IllegalStateException("Round trip changed the message on the " + link + " link");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoding.finishAndReleaseAll();
+        decoding.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public ISOMsg roundTrip() {
+        encoding.writeOutbound(request);
+        ByteBuf frame = encoding.readOutbound();
+        decoding.writeInbound(frame);
+        return decoding.readInbound();
+    }
+}
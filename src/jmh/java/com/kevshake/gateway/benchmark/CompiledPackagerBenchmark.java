@@ -0,0 +1,140 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.packagers.BankPackager;
+import com.kevshake.gateway.packagers.ByteBufPacker;
+import com.kevshake.gateway.packagers.ByteBufUnpacker;
+import com.kevshake.gateway.packagers.CompiledPackager;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Packs and unpacks the financial request three ways: ISOBasePackager on byte[], the
+ * FieldSpec table-driven ByteBufPacker/ByteBufUnpacker, and the code PackagerCodeGenerator
+ * generated for the packager. Setup checks that all three produce the same bytes and fields,
+ * also for a message with a secondary bitmap
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompiledPackagerBenchmark {
+
+    @Param({ "pos", "bank" })
+    public String link;
+
+    private ISOBasePackager packager;
+    private ByteBufPacker tablePacker;
+    private ByteBufUnpacker tableUnpacker;
+    private CompiledPackager compiled;
+    private ISOMsg msg;
+    private ByteBuf frame;
+    private ByteBuf out;
+
+    @Setup
+    public void setup() throws Exception {
+        packager = "bank".equals(link) ? new BankPackager() : new POSPackager();
+        tablePacker = new ByteBufPacker(packager, false);
+        tableUnpacker = new ByteBufUnpacker(packager, false);
+        compiled = CompiledPackager.forPackager(packager);
+        if (compiled == null) {
+            throw new IllegalStateException("No generated code for " + packager.getClass().getName()
+                    + ", run the compile phase first");
+        }
+
+        msg = BenchmarkMessages.financialRequest(packager);
+        ISOMsg withSecondary = (ISOMsg) msg.clone();
+        withSecondary.setMTI("0420");
+        withSecondary.set(90, "020012345610151030000000000123400000005678");
+        verify(msg);
+        verify(withSecondary);
+
+        byte[] packed = msg.pack();
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length);
+        frame.writeBytes(packed);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        out.release();
+    }
+
+    @Benchmark
+    public byte[] jposPack() throws Exception {
+        return packager.pack(msg);
+    }
+
+    @Benchmark
+    public ByteBuf tablePack() throws Exception {
+        out.clear();
+        tablePacker.pack(msg, out);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf compiledPack() throws Exception {
+        out.clear();
+        compiled.pack(msg, out);
+        return out;
+    }
+
+    @Benchmark
+    public ISOMsg jposUnpack() throws Exception {
+        ISOMsg unpacked = new ISOMsg();
+        unpacked.setPackager(packager);
+        packager.unpack(unpacked, ByteBufUtil.getBytes(frame));
+        return unpacked;
+    }
+
+    @Benchmark
+    public ISOMsg tableUnpack() throws Exception {
+        return tableUnpacker.unpack(frame.duplicate());
+    }
+
+    @Benchmark
+    public ISOMsg compiledUnpack() throws Exception {
+        return compiled.unpack(frame.duplicate());
+    }
+
+    private void verify(ISOMsg message) throws Exception {
+        byte[] expected = message.pack();
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(expected.length);
+        try {
+            tablePacker.pack(message, buf);
+            check("table pack", expected, ByteBufUtil.getBytes(buf));
+
+            buf.clear();
+            compiled.pack(message, buf);
+            check("compiled pack", expected, ByteBufUtil.getBytes(buf));
+            if (compiled.packedSize(message) != expected.length) {
+                throw new IllegalStateException("compiled packedSize " + compiled.packedSize(message)
+                        + " != " + expected.length);
+            }
+
+            check("table unpack", expected, packager.pack(tableUnpacker.unpack(buf.duplicate())));
+            check("compiled unpack", expected, packager.pack(compiled.unpack(buf.duplicate())));
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static void check(String path, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException(path + " differs from ISOBasePackager:\n"
+                    + new String(expected) + "\n" + new String(actual));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.packagers.ByteBufUnpacker;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Compares the previous decode path (copy frame to byte[] then ISOBasePackager.unpack)
+ * with ByteBufUnpacker reading fields straight from a pooled direct buffer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoMessageDecoderBenchmark {
+
+    private POSPackager packager;
+    private ByteBufUnpacker unpacker;
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() throws Exception {
+        packager = new POSPackager();
+        unpacker = new ByteBufUnpacker(packager);
+        byte[] packed = BenchmarkMessages.financialRequest(packager).pack();
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length);
+        frame.writeBytes(packed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public ISOMsg copyAndUnpack() throws Exception {
+        ByteBuf in = frame.duplicate();
+        byte[] buffer = ByteBufUtil.getBytes(in);
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        packager.unpack(msg, buffer);
+        return msg;
+    }
+
+    @Benchmark
+    public ISOMsg byteBufUnpack() throws Exception {
+        return unpacker.unpack(frame.duplicate());
+    }
+}
@@ -0,0 +1,64 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.packagers.ByteBufPacker;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Compares the previous encode path (ISOMsg.pack() then copy into a default sized buffer)
+ * with ByteBufPacker writing the length header and fields into an exactly sized pooled buffer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IsoMessageEncoderBenchmark {
+
+    private final PooledByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    private ByteBufPacker packer;
+    private ISOMsg response;
+
+    @Setup
+    public void setup() throws Exception {
+        POSPackager packager = new POSPackager();
+        packer = new ByteBufPacker(packager);
+        response = BenchmarkMessages.financialRequest(packager);
+        response.setMTI("0210");
+        response.set(38, "123456");
+        response.set(39, "00");
+    }
+
+    @Benchmark
+    public int packAndCopy() throws Exception {
+        ByteBuf out = allocator.directBuffer();
+        try {
+            byte[] packed = response.pack();
+            out.writeShort(packed.length);
+            out.writeBytes(packed);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public int packIntoPooledBuffer() throws Exception {
+        ByteBuf out = allocator.directBuffer(ByteBufPacker.LENGTH_HEADER_SIZE + packer.packedSize(response));
+        try {
+            packer.packWithLengthHeader(response, out);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+}
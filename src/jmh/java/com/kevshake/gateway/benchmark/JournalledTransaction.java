@@ -0,0 +1,37 @@
+package com.kevshake.gateway.benchmark;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * JPA mapping of a transaction record, the baseline for TransactionJournalBenchmark
+ */
+@Entity
+@Table(name = "journalled_transactions", indexes = @Index(columnList = "rrn"))
+public class JournalledTransaction {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    String stan;
+    String date;
+    String time;
+    String pan;
+    String amount;
+    String processingCode;
+    String responseCode;
+    String rrn;
+    String mti;
+    String transmissionDateTime;
+    String acquirerId;
+    String terminalId;
+    LocalDateTime timestamp;
+    boolean reversed;
+}
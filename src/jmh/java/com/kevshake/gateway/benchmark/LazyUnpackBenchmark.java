@@ -0,0 +1,132 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.kevshake.gateway.components.MaskedLogger;
+import com.kevshake.gateway.components.TransactionEventLog;
+import com.kevshake.gateway.packagers.BankPackager;
+import com.kevshake.gateway.packagers.ByteBufPacker;
+import com.kevshake.gateway.packagers.ByteBufUnpacker;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Eager against lazy unpacking of an EMV-heavy financial request (fields 46 to 48 and 55 filled)
+ * handle: unpack, log the masked incoming line and read the fields the handler uses
+ * forward: the same, then rewrite 7 and 37, log the outgoing line and pack the message for the bank
+ * The log lines go to a Null appender at INFO, as in TransactionLoggingBenchmark
+ * Setup checks that both forward paths produce the same bank message
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LazyUnpackBenchmark {
+
+    private static final int[] HANDLER_FIELDS = { 0, 2, 3, 4, 11, 12, 13, 41, 42, 52 };
+
+    private final POSPackager posPackager = new POSPackager();
+    private final BankPackager bankPackager = new BankPackager();
+    private ByteBufUnpacker unpacker;
+    private ByteBufPacker bankPacker;
+    private ByteBuf frame;
+    private ByteBuf out;
+    private AnnotationConfigApplicationContext context;
+    private MaskedLogger maskedLogger;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.discardLogs();
+        context = BenchmarkContext.create(MaskedLogger.class, TransactionEventLog.class);
+        maskedLogger = context.getBean(MaskedLogger.class);
+        unpacker = new ByteBufUnpacker(posPackager);
+        bankPacker = new ByteBufPacker(bankPackager);
+
+        ISOMsg msg = BenchmarkMessages.financialRequest(posPackager);
+        msg.set(46, ISOUtil.padright("D00000000050C00000000025", 120, ' '));
+        msg.set(47, ISOUtil.padright("NATIONAL ADDITIONAL DATA", 180, ' '));
+        msg.set(48, ISOUtil.padright("PRIVATE ADDITIONAL DATA", 240, ' '));
+        byte[] icc = new byte[220];
+        for (int i = 0; i < icc.length; i++) {
+            icc[i] = (byte) i;
+        }
+        msg.set(55, icc);
+        byte[] packed = msg.pack();
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length);
+        frame.writeBytes(packed);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(packed.length + 64);
+
+        byte[] eager = ByteBufUtil.getBytes(eagerForward(null));
+        byte[] lazy = ByteBufUtil.getBytes(lazyForward(null));
+        if (!Arrays.equals(eager, lazy)) {
+            throw new IllegalStateException("Lazy forward differs from eager forward:\n"
+                    + new String(eager) + "\n" + new String(lazy));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        out.release();
+        context.close();
+    }
+
+    @Benchmark
+    public void eagerHandle(Blackhole bh) throws Exception {
+        handle(unpacker.unpack(frame.duplicate()), bh);
+    }
+
+    @Benchmark
+    public void lazyHandle(Blackhole bh) throws Exception {
+        handle(unpacker.unpackLazy(frame.duplicate()), bh);
+    }
+
+    @Benchmark
+    public ByteBuf eagerForward(Blackhole bh) throws Exception {
+        return forward(unpacker.unpack(frame.duplicate()), bh);
+    }
+
+    @Benchmark
+    public ByteBuf lazyForward(Blackhole bh) throws Exception {
+        return forward(unpacker.unpackLazy(frame.duplicate()), bh);
+    }
+
+    private ByteBuf forward(ISOMsg msg, Blackhole bh) throws Exception {
+        handle(msg, bh);
+        ISOMsg bankMsg = (ISOMsg) msg.clone();
+        bankMsg.setPackager(bankPackager);
+        bankMsg.set(7, "1015103001");
+        bankMsg.set(37, "000000654321");
+        maskedLogger.logOutgoingTransaction(bankMsg, "BANK");
+        out.clear();
+        bankPacker.pack(bankMsg, out);
+        return out;
+    }
+
+    private void handle(ISOMsg msg, Blackhole bh) {
+        maskedLogger.logIncomingTransaction(msg, "POS_TERMINAL");
+        read(msg, bh);
+    }
+
+    private static void read(ISOMsg msg, Blackhole bh) {
+        for (int field : HANDLER_FIELDS) {
+            if (bh != null) {
+                bh.consume(msg.getValue(field));
+            } else {
+                msg.getValue(field);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kevshake.gateway.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.kevshake.gateway.components.GatewayMetrics;
+import com.kevshake.gateway.components.MaskedLogger;
+import com.kevshake.gateway.components.TransactionEventLog;
+import com.kevshake.gateway.security.KeyHandle;
+import com.kevshake.gateway.security.PinBlockTranslator;
+import com.kevshake.gateway.security.PinTranspositionService;
+import com.kevshake.gateway.security.TDES;
+import com.kevshake.gateway.service.ResponseCodeService;
+import com.kevshake.gateway.service.TerminalKeyCache;
+
+/**
+ * Compares the String based PIN transposition flow (TDES_Decrypt, format0decode,
+ * format0Encode, TDES_Encrypt) with PinBlockTranslator working on byte arrays, and
+ * PinTranspositionService adding the terminal key cache, metrics and log events on top.
+ * Run with -prof gc to see the allocation difference
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PinTranslationBenchmark {
+
+    private static final String TERMINAL_KEY = "9E4F7FF1F831F1132CD9B6C740B0134C";
+    private static final String ZONAL_KEY = "40763BB5B0B910B5CE3297E58967CD2A";
+
+    private String encryptedPinBlock;
+    private byte[] encryptedPinBlockBytes;
+    private byte[] pan;
+    private byte[] out;
+    private KeyHandle terminalKey;
+    private KeyHandle zonalKey;
+    private AnnotationConfigApplicationContext context;
+    private PinTranspositionService pinTranspositionService;
+
+    @Setup
+    public void setup() {
+        encryptedPinBlock = TDES.TDES_Encrypt(TDES.format0Encode("1234", BenchmarkMessages.PAN), TERMINAL_KEY, false);
+        encryptedPinBlockBytes = HexFormat.of().parseHex(encryptedPinBlock);
+        pan = BenchmarkMessages.PAN.getBytes(StandardCharsets.US_ASCII);
+        out = new byte[PinBlockTranslator.PIN_BLOCK_SIZE];
+        terminalKey = KeyHandle.fromHex(TERMINAL_KEY);
+        zonalKey = KeyHandle.fromHex(ZONAL_KEY);
+
+        PinBlockTranslator.translatePinBlock(encryptedPinBlockBytes, pan, terminalKey, zonalKey, out);
+        if (!HexFormat.of().withUpperCase().formatHex(out).equals(stringFlow())) {
+            throw new IllegalStateException("Binary translation differs from the String flow");
+        }
+
+        BenchmarkContext.discardLogs();
+        context = BenchmarkContext.create(PinTranspositionService.class, TerminalKeyCache.class, GatewayMetrics.class,
+            ResponseCodeService.class, MaskedLogger.class, TransactionEventLog.class);
+        pinTranspositionService = context.getBean(PinTranspositionService.class);
+        if (!Arrays.equals(out, transpositionService())) {
+            throw new IllegalStateException("PinTranspositionService differs from PinBlockTranslator");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String stringFlow() {
+        String clearBlock = TDES.TDES_Decrypt(encryptedPinBlock, TERMINAL_KEY, false);
+        String clearPin = TDES.format0decode(clearBlock, BenchmarkMessages.PAN);
+        String newBlock = TDES.format0Encode(clearPin, BenchmarkMessages.PAN);
+        return TDES.TDES_Encrypt(newBlock, ZONAL_KEY, false);
+    }
+
+    @Benchmark
+    public byte[] translatePinBlock() {
+        PinBlockTranslator.translatePinBlock(encryptedPinBlockBytes, pan, terminalKey, zonalKey, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] transpositionService() {
+        return pinTranspositionService.transposePinToGatewayKey(encryptedPinBlockBytes, pan, BenchmarkMessages.TERMINAL_ID);
+    }
+}
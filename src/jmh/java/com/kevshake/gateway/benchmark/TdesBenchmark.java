@@ -0,0 +1,73 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.security.TDES;
+
+/**
+ * Cost of the TDES steps of a PIN transposition (decrypt under the terminal key, encrypt
+ * under the zonal key) with the previous hex-string DES, the table-driven DesEngine behind
+ * TDES, and JCE DESede with cached Cipher instances for reference
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TdesBenchmark {
+
+    private static final String TERMINAL_KEY = "9E4F7FF1F831F1132CD9B6C740B0134C";
+    private static final String ZONAL_KEY = "40763BB5B0B910B5CE3297E58967CD2A";
+
+    private String encryptedPinBlock;
+    private byte[] encryptedPinBlockBytes;
+    private Cipher terminalDecrypt;
+    private Cipher zonalEncrypt;
+
+    @Setup
+    public void setup() throws Exception {
+        encryptedPinBlock = TDES.TDES_Encrypt(TDES.format0Encode("1234", BenchmarkMessages.PAN), TERMINAL_KEY, false);
+        encryptedPinBlockBytes = HexFormat.of().parseHex(encryptedPinBlock);
+        terminalDecrypt = cipher(Cipher.DECRYPT_MODE, TERMINAL_KEY);
+        zonalEncrypt = cipher(Cipher.ENCRYPT_MODE, ZONAL_KEY);
+
+        String expected = TDES.TDES_Encrypt(TDES.TDES_Decrypt(encryptedPinBlock, TERMINAL_KEY, false), ZONAL_KEY, false);
+        if (!expected.equals(legacyHexString())) {
+            throw new IllegalStateException("DesEngine result differs from the legacy implementation");
+        }
+    }
+
+    @Benchmark
+    public String legacyHexString() {
+        String clear = LegacyTdes.TDES_Decrypt(encryptedPinBlock, TERMINAL_KEY, false);
+        return LegacyTdes.TDES_Encrypt(clear, ZONAL_KEY, false);
+    }
+
+    @Benchmark
+    public String tableDriven() {
+        String clear = TDES.TDES_Decrypt(encryptedPinBlock, TERMINAL_KEY, false);
+        return TDES.TDES_Encrypt(clear, ZONAL_KEY, false);
+    }
+
+    @Benchmark
+    public byte[] jceCachedCipher() throws Exception {
+        return zonalEncrypt.doFinal(terminalDecrypt.doFinal(encryptedPinBlockBytes));
+    }
+
+    private static Cipher cipher(int mode, String doubleLengthKey) throws Exception {
+        byte[] key = HexFormat.of().parseHex(doubleLengthKey);
+        byte[] ede = new byte[24];
+        System.arraycopy(key, 0, ede, 0, 16);
+        System.arraycopy(key, 0, ede, 16, 8);
+        Cipher cipher = Cipher.getInstance("DESede/ECB/NoPadding");
+        cipher.init(mode, new SecretKeySpec(ede, "DESede"));
+        return cipher;
+    }
+}
@@ -0,0 +1,282 @@
+package com.kevshake.gateway.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.components.TransactionJournal;
+import com.kevshake.gateway.components.TransactionProcessor.TransactionRecord;
+import com.kevshake.gateway.components.TransactionStore;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Durable transaction storage: the memory-mapped journal with group commit against one JPA
+ * insert and commit per transaction into a file-backed H2 database.
+ * The append benchmarks run on 16 threads, as the processing stage would; the recovery
+ * benchmarks rebuild a TransactionStore from 100,000 stored transactions
+ */
+@Fork(1)
+public class TransactionJournalBenchmark {
+
+    private static final int RECOVERY_RECORDS = 100_000;
+
+    static TransactionRecord record(int i) {
+        TransactionRecord record = new TransactionRecord();
+        record.setStan(String.format("%06d", i % 1_000_000));
+        record.setDate("1015");
+        record.setTime("120000");
+        record.setPan(BenchmarkMessages.PAN);
+        record.setAmount("000000001000");
+        record.setProcessingCode("000000");
+        record.setResponseCode("00");
+        record.setRrn(String.format("%012d", i));
+        record.setMti("0200");
+        record.setTransmissionDateTime("1015120000");
+        record.setAcquirerId("123456");
+        record.setTerminalId(String.format("T%07d", i % 10_000));
+        record.setTimestamp(LocalDateTime.now());
+        return record;
+    }
+
+    static JournalledTransaction entity(TransactionRecord record) {
+        JournalledTransaction entity = new JournalledTransaction();
+        entity.stan = record.getStan();
+        entity.date = record.getDate();
+        entity.time = record.getTime();
+        entity.pan = record.getPan();
+        entity.amount = record.getAmount();
+        entity.processingCode = record.getProcessingCode();
+        entity.responseCode = record.getResponseCode();
+        entity.rrn = record.getRrn();
+        entity.mti = record.getMti();
+        entity.transmissionDateTime = record.getTransmissionDateTime();
+        entity.acquirerId = record.getAcquirerId();
+        entity.terminalId = record.getTerminalId();
+        entity.timestamp = record.getTimestamp();
+        return entity;
+    }
+
+    static TransactionRecord record(JournalledTransaction entity) {
+        TransactionRecord record = new TransactionRecord();
+        record.setStan(entity.stan);
+        record.setDate(entity.date);
+        record.setTime(entity.time);
+        record.setPan(entity.pan);
+        record.setAmount(entity.amount);
+        record.setProcessingCode(entity.processingCode);
+        record.setResponseCode(entity.responseCode);
+        record.setRrn(entity.rrn);
+        record.setMti(entity.mti);
+        record.setTransmissionDateTime(entity.transmissionDateTime);
+        record.setAcquirerId(entity.acquirerId);
+        record.setTerminalId(entity.terminalId);
+        record.setTimestamp(entity.timestamp);
+        record.setReversed(entity.reversed);
+        return record;
+    }
+
+    static SessionFactory sessionFactory(Path directory) {
+        return new Configuration()
+            .addAnnotatedClass(JournalledTransaction.class)
+            .setProperty("hibernate.connection.url", "jdbc:h2:file:" + directory.resolve("transactions").toAbsolutePath())
+            .setProperty("hibernate.connection.username", "sa")
+            .setProperty("hibernate.connection.password", "")
+            .setProperty("hibernate.connection.pool_size", "32")
+            .setProperty("hibernate.hbm2ddl.auto", "update")
+            .setProperty("hibernate.show_sql", "false")
+            .buildSessionFactory();
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static TransactionJournal.ReplayListener into(TransactionStore store) {
+        return new TransactionJournal.ReplayListener() {
+            @Override
+            public void transaction(TransactionRecord record) {
+                store.add(record);
+            }
+
+            @Override
+            public void reversal(String terminalId, String stan, String date, long timestamp) {
+                TransactionRecord record = terminalId != null
+                    ? store.findByTerminalStanAndDate(terminalId, stan, date)
+                    : store.findByStanAndDate(stan, date);
+                if (record != null) {
+                    store.markReversed(record);
+                }
+            }
+        };
+    }
+
+    @State(Scope.Benchmark)
+    public static class Journal {
+        final AtomicInteger sequence = new AtomicInteger();
+        Path directory;
+        TransactionJournal journal;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = new TransactionJournal(directory, 64 * 1024 * 1024, 8, true);
+            journal.open(into(new TransactionStore()));
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Jpa {
+        final AtomicInteger sequence = new AtomicInteger();
+        Path directory;
+        SessionFactory sessionFactory;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            directory = Files.createTempDirectory("jpa-bench");
+            sessionFactory = sessionFactory(directory);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            sessionFactory.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class JpaSession {
+        EntityManager entityManager;
+
+        @Setup(Level.Iteration)
+        public void open(Jpa jpa) {
+            entityManager = jpa.sessionFactory.createEntityManager();
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            entityManager.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    @Threads(16)
+    public void journalAppend(Journal state) throws IOException {
+        state.journal.appendTransaction(record(state.sequence.incrementAndGet()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    @Threads(16)
+    public void jpaInsert(Jpa state, JpaSession session) {
+        EntityManager entityManager = session.entityManager;
+        entityManager.getTransaction().begin();
+        entityManager.persist(entity(record(state.sequence.incrementAndGet())));
+        entityManager.getTransaction().commit();
+        entityManager.clear();
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoredJournal {
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void populate() throws IOException {
+            directory = Files.createTempDirectory("journal-recovery");
+            try (TransactionJournal journal = new TransactionJournal(directory, 64 * 1024 * 1024, 8, false)) {
+                journal.open(into(new TransactionStore()));
+                for (int i = 0; i < RECOVERY_RECORDS; i++) {
+                    journal.appendTransaction(record(i));
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            TransactionJournalBenchmark.delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoredTable {
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void populate() throws IOException {
+            directory = Files.createTempDirectory("jpa-recovery");
+            try (SessionFactory sessionFactory = sessionFactory(directory)) {
+                EntityManager entityManager = sessionFactory.createEntityManager();
+                entityManager.getTransaction().begin();
+                for (int i = 0; i < RECOVERY_RECORDS; i++) {
+                    entityManager.persist(entity(record(i)));
+                    if (i % 1000 == 999) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+                entityManager.getTransaction().commit();
+                entityManager.close();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            TransactionJournalBenchmark.delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public TransactionStore journalRecovery(StoredJournal stored) throws IOException {
+        TransactionStore store = new TransactionStore();
+        try (TransactionJournal journal = new TransactionJournal(stored.directory, 64 * 1024 * 1024, 8, false)) {
+            journal.open(into(store));
+        }
+        return store;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public TransactionStore jpaRecovery(StoredTable stored) {
+        TransactionStore store = new TransactionStore();
+        // Startup cost includes building the session factory, as it would on a restart
+        try (SessionFactory sessionFactory = sessionFactory(stored.directory)) {
+            EntityManager entityManager = sessionFactory.createEntityManager();
+            entityManager.createQuery("select t from JournalledTransaction t order by t.id", JournalledTransaction.class)
+                .getResultStream()
+                .forEach(entity -> store.add(record(entity)));
+            entityManager.close();
+        }
+        return store;
+    }
+}
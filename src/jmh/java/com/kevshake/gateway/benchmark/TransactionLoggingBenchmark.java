@@ -0,0 +1,47 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.kevshake.gateway.components.MaskedLogger;
+import com.kevshake.gateway.components.TransactionEventLog;
+import com.kevshake.gateway.packagers.POSPackager;
+
+/**
+ * MaskedLogger.logIncomingTransaction for a 0200 with PAN, track 2, PIN block and ICC data:
+ * masking every field into one line and handing it to the logger. The binary event log is
+ * disabled (its default) and the line goes to a Null appender
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionLoggingBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+    private MaskedLogger maskedLogger;
+    private ISOMsg request;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext.discardLogs();
+        context = BenchmarkContext.create(MaskedLogger.class, TransactionEventLog.class);
+        maskedLogger = context.getBean(MaskedLogger.class);
+        request = BenchmarkMessages.financialRequest(new POSPackager());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void logIncomingTransaction() {
+        maskedLogger.logIncomingTransaction(request, "POS_TERMINAL");
+    }
+}
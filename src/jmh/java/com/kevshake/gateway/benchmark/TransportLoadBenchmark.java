@@ -0,0 +1,184 @@
+package com.kevshake.gateway.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.openjdk.jmh.annotations.*;
+
+import com.kevshake.gateway.components.BankCommunicationConfig;
+import com.kevshake.gateway.components.IsoMessageDecoder;
+import com.kevshake.gateway.components.IsoMessageEncoder;
+import com.kevshake.gateway.components.IsoServer;
+import com.kevshake.gateway.components.NettyTransport;
+import com.kevshake.gateway.packagers.POSPackager;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * Loopback load test of the POS listener on the NIO and epoll transports
+ * Each benchmark thread owns a terminal connection and pipelines a burst of 0800 echo
+ * requests through the production codecs and socket options, then waits for every 0810
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TransportLoadBenchmark {
+
+    private static final int BURST = 100;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"nio", "epoll"})
+        public String transport;
+
+        NettyTransport selected;
+        ISOPackager packager;
+        EventLoopGroup bossGroup;
+        EventLoopGroup workerGroup;
+        EventLoopGroup clientGroup;
+        Channel listener;
+
+        @Setup
+        public void start() throws Exception {
+            selected = NettyTransport.select(transport);
+            if (!selected.name().equalsIgnoreCase(transport)) {
+                throw new IllegalStateException(transport + " transport not available: "
+                        + NettyTransport.epollUnavailabilityCause());
+            }
+
+            packager = new POSPackager();
+            BankCommunicationConfig.Pos pos = new BankCommunicationConfig.Pos();
+            bossGroup = selected.newEventLoopGroup(1, "bench-boss");
+            workerGroup = selected.newEventLoopGroup(2, "bench-worker");
+            clientGroup = selected.newEventLoopGroup(2, "bench-client");
+
+            IsoMessageDecoder decoder = new IsoMessageDecoder(packager);
+            IsoMessageEncoder encoder = new IsoMessageEncoder(packager);
+            EchoHandler echo = new EchoHandler();
+
+            ServerBootstrap b = new ServerBootstrap()
+                    .group(bossGroup, workerGroup)
+                    .channel(selected.serverChannelClass())
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                    .addLast(new LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2))
+                                    .addLast(decoder)
+                                    .addLast(encoder)
+                                    .addLast(echo);
+                        }
+                    });
+            IsoServer.applySocketOptions(b, pos);
+            listener = b.bind("127.0.0.1", 0).sync().channel();
+        }
+
+        @TearDown
+        public void stop() throws Exception {
+            listener.close().sync();
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Terminal {
+
+        Channel channel;
+        ResponseCounter counter;
+        ISOMsg request;
+
+        @Setup
+        public void connect(Server server) throws Exception {
+            counter = new ResponseCounter();
+            request = BenchmarkMessages.echoRequest(server.packager);
+            ISOPackager packager = server.packager;
+            channel = new Bootstrap()
+                    .group(server.clientGroup)
+                    .channel(server.selected.socketChannelClass())
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                    .addLast(new LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2))
+                                    .addLast(new IsoMessageDecoder(packager))
+                                    .addLast(new IsoMessageEncoder(packager))
+                                    .addLast(counter);
+                        }
+                    })
+                    .connect(server.listener.localAddress()).sync().channel();
+        }
+
+        @TearDown
+        public void disconnect() throws Exception {
+            channel.close().sync();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int echoBurst(Terminal terminal) throws Exception {
+        CompletableFuture<Void> done = terminal.counter.expect(BURST);
+        for (int i = 0; i < BURST - 1; i++) {
+            terminal.channel.write(terminal.request);
+        }
+        terminal.channel.writeAndFlush(terminal.request);
+        done.get(10, TimeUnit.SECONDS);
+        return BURST;
+    }
+
+    @ChannelHandler.Sharable
+    static final class EchoHandler extends SimpleChannelInboundHandler<ISOMsg> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ISOMsg msg) throws Exception {
+            msg.setResponseMTI();
+            msg.set(39, "00");
+            ctx.writeAndFlush(msg);
+        }
+    }
+
+    static final class ResponseCounter extends SimpleChannelInboundHandler<ISOMsg> {
+        private int remaining;
+        private CompletableFuture<Void> done;
+
+        CompletableFuture<Void> expect(int responses) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            synchronized (this) {
+                remaining = responses;
+                done = future;
+            }
+            return future;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ISOMsg msg) {
+            CompletableFuture<Void> completed = null;
+            synchronized (this) {
+                if (--remaining == 0) {
+                    completed = done;
+                }
+            }
+            if (completed != null) {
+                completed.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kevshake.gateway.loadtest;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Results of a load run: response latency, counts per MTI and response code, timeouts
+ * Terminals record from their event loops; the reporting thread takes interval snapshots,
+ * prints progress lines and accumulates the measured period. Everything recorded during
+ * warm-up is discarded by startMeasurement
+ */
+public class LoadReport {
+
+    // Latencies up to one minute, three significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+    private final Map<String, LongAdder> responsesByMti = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> responseCodes = new ConcurrentHashMap<>();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder lateResponses = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+
+    private Histogram interval;
+    private long measurementStart;
+    private long lastSnapshot;
+
+    public void recordResponse(String mti, String responseCode, long nanos) {
+        recorder.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        count(responsesByMti, mti);
+        count(responseCodes, responseCode != null ? responseCode : "--");
+    }
+
+    public void recordTimeout() { timeouts.increment(); }
+    public void recordLateResponse() { lateResponses.increment(); }
+    public void recordDisconnect() { disconnects.increment(); }
+    public void recordConnectFailure() { connectFailures.increment(); }
+
+    /**
+     * Drop what was recorded so far and start the measured period
+     */
+    public void startMeasurement() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.reset();
+        responsesByMti.clear();
+        responseCodes.clear();
+        timeouts.reset();
+        lateResponses.reset();
+        disconnects.reset();
+        measurementStart = System.nanoTime();
+        lastSnapshot = measurementStart;
+    }
+
+    /**
+     * Add the responses since the last call to the total and print one progress line
+     */
+    public void printProgress(PrintStream out, int connected) {
+        long now = System.nanoTime();
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        double seconds = (now - lastSnapshot) / 1e9;
+        lastSnapshot = now;
+        out.printf("%6.0fs  connected %6d  tps %9.1f  p50 %8.2fms  p99 %8.2fms  max %8.2fms  timeouts %d%n",
+            (now - measurementStart) / 1e9, connected, interval.getTotalCount() / seconds,
+            millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+            millis(interval.getMaxValue()), timeouts.sum());
+    }
+
+    /**
+     * Print the summary of the measured period
+     */
+    public void printSummary(PrintStream out) {
+        long now = System.nanoTime();
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        Map<String, Long> mtis = sorted(responsesByMti);
+        Map<String, Long> codes = sorted(responseCodes);
+        double seconds = (now - measurementStart) / 1e9;
+
+        out.println();
+        out.printf("Measured %.1f s: %d responses, %.1f TPS%n", seconds, total.getTotalCount(),
+            total.getTotalCount() / seconds);
+        out.printf("Latency  p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms  mean %.2f ms%n",
+            millis(total.getValueAtPercentile(50)), millis(total.getValueAtPercentile(90)),
+            millis(total.getValueAtPercentile(99)), millis(total.getValueAtPercentile(99.9)),
+            millis(total.getMaxValue()), total.getMean() / 1000.0);
+        out.printf("Timeouts %d  late responses %d  disconnects %d  connect failures %d%n",
+            timeouts.sum(), lateResponses.sum(), disconnects.sum(), connectFailures.sum());
+        out.println("Responses by request MTI " + mtis);
+        out.println("Response codes " + codes);
+    }
+
+    private static void count(Map<String, LongAdder> counts, String key) {
+        counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> sorted(Map<String, LongAdder> counts) {
+        Map<String, Long> sorted = new TreeMap<>();
+        counts.forEach((key, count) -> sorted.put(key, count.sum()));
+        return sorted;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,185 @@
+package com.kevshake.gateway.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.kevshake.gateway.Iso8583MasterServerBase1Application;
+
+/**
+ * Localhost load test of the gateway
+ * <pre>
+ * run        start the stub bank, the gateway (in this JVM, bank route pointed at the stub bank)
+ *            and the terminals, then print the report
+ * bank       start only the stub bank, until the process is stopped
+ * terminals  run the terminals against a gateway that is already running
+ *
+ * mvn -Ploadtest compile exec:exec -Dloadtest.args="run --terminals 2000 --duration 60"
+ * </pre>
+ * Options, with defaults:
+ * <pre>
+ * --host 127.0.0.1 --pos-port 8000 --bank-port 9001
+ * --terminals 1000 --connect-rate 500 (per second) --mix 0200:80,0400:10,0800:10
+ * --think-ms 0 --timeout-ms 30000 --warmup 10 --duration 60 (seconds) --client-threads CPU cores
+ * --bank-latency-ms 20 --bank-jitter-ms 10 --bank-error-rate 0.02 --bank-error-codes 05,51,91
+ * --bank-drop-rate 0
+ * </pre>
+ * In run mode, arguments after "--" are passed to the gateway, e.g. -- --server.port=18080
+ */
+public final class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+        Map.entry("host", "127.0.0.1"),
+        Map.entry("pos-port", "8000"),
+        Map.entry("bank-port", "9001"),
+        Map.entry("terminals", "1000"),
+        Map.entry("connect-rate", "500"),
+        Map.entry("mix", "0200:80,0400:10,0800:10"),
+        Map.entry("think-ms", "0"),
+        Map.entry("timeout-ms", "30000"),
+        Map.entry("warmup", "10"),
+        Map.entry("duration", "60"),
+        Map.entry("client-threads", String.valueOf(Runtime.getRuntime().availableProcessors())),
+        Map.entry("bank-latency-ms", "20"),
+        Map.entry("bank-jitter-ms", "10"),
+        Map.entry("bank-error-rate", "0.02"),
+        Map.entry("bank-error-codes", "05,51,91"),
+        Map.entry("bank-drop-rate", "0"));
+
+    // Seconds between progress lines
+    private static final int PROGRESS_INTERVAL = 5;
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage("No command given");
+        }
+        String command = args[0];
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        List<String> gatewayArgs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                gatewayArgs.addAll(List.of(args).subList(i + 1, args.length));
+                break;
+            }
+            String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+            if (name == null || !DEFAULTS.containsKey(name)) {
+                usage("Unknown option " + args[i]);
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+
+        LoadTest loadTest = new LoadTest(options);
+        switch (command) {
+            case "run": loadTest.run(gatewayArgs); break;
+            case "bank": loadTest.bankOnly(); break;
+            case "terminals": loadTest.terminals(); break;
+            default: usage("Unknown command " + command);
+        }
+        System.exit(0);
+    }
+
+    private void run(List<String> gatewayArgs) throws Exception {
+        StubBank bank = stubBank();
+        bank.start();
+
+        List<String> args = new ArrayList<>();
+        args.add("--iso8583.pos.port=" + integer("pos-port"));
+        args.add("--iso8583.bank.host=127.0.0.1");
+        args.add("--iso8583.bank.port=" + integer("bank-port"));
+        args.addAll(gatewayArgs);
+        ConfigurableApplicationContext gateway = SpringApplication.run(Iso8583MasterServerBase1Application.class,
+            args.toArray(new String[0]));
+
+        // Bank sessions connect in the background
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bank.getSessionCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        try {
+            drive(bank);
+        } finally {
+            gateway.close();
+            bank.stop();
+        }
+    }
+
+    private void bankOnly() throws Exception {
+        StubBank bank = stubBank();
+        bank.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(bank)));
+        while (true) {
+            Thread.sleep(PROGRESS_INTERVAL * 1000L);
+            System.out.println(bank);
+        }
+    }
+
+    private void terminals() throws Exception {
+        drive(null);
+    }
+
+    /**
+     * Connect the terminals, warm up, measure and print the report
+     */
+    private void drive(StubBank bank) throws Exception {
+        LoadReport report = new LoadReport();
+        TerminalSimulator simulator = new TerminalSimulator(options.get("host"), integer("pos-port"),
+            integer("terminals"), integer("connect-rate"), options.get("mix"), integer("think-ms"),
+            integer("timeout-ms"), integer("client-threads"), report);
+        simulator.start();
+        if (simulator.getConnectedCount() == 0) {
+            System.err.println("No terminal could connect to " + options.get("host") + ":" + integer("pos-port"));
+            simulator.stop(0);
+            return;
+        }
+
+        Thread.sleep(integer("warmup") * 1000L);
+        report.startMeasurement();
+        long end = System.currentTimeMillis() + integer("duration") * 1000L;
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(PROGRESS_INTERVAL * 1000L, Math.max(1, end - System.currentTimeMillis())));
+            report.printProgress(System.out, simulator.getConnectedCount());
+        }
+
+        report.printSummary(System.out);
+        if (bank != null) {
+            System.out.println(bank);
+        }
+        simulator.stop(Math.min(integer("timeout-ms"), 2000));
+    }
+
+    private StubBank stubBank() {
+        return new StubBank(integer("bank-port"), integer("bank-latency-ms"), integer("bank-jitter-ms"),
+            Double.parseDouble(options.get("bank-error-rate")), options.get("bank-error-codes").split(","),
+            Double.parseDouble(options.get("bank-drop-rate")));
+    }
+
+    private int integer(String name) {
+        try {
+            return Integer.parseInt(options.get(name));
+        } catch (NumberFormatException e) {
+            usage("Invalid value for --" + name + ": " + options.get(name));
+            return 0;
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: LoadTest run|bank|terminals [--option value]... [-- gateway arguments]");
+        System.err.println("Options: " + new TreeSet<>(DEFAULTS.keySet()));
+        System.exit(2);
+    }
+}
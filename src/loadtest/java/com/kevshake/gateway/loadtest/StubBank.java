@@ -0,0 +1,173 @@
+package com.kevshake.gateway.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kevshake.gateway.components.AsciiLengthFrameDecoder;
+import com.kevshake.gateway.components.IsoMessageDecoder;
+import com.kevshake.gateway.components.IsoMessageEncoder;
+import com.kevshake.gateway.components.NettyTransport;
+import com.kevshake.gateway.packagers.BankPackager;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+
+/**
+ * Bank host stand-in for load tests
+ * Accepts the gateway's bank sessions on localhost, reads ASCII length framed BankPackager
+ * messages and answers each request with the matching response MTI and the request fields,
+ * after a configurable latency. A share of financial requests can be declined with one of
+ * the configured response codes or left unanswered to exercise the gateway's timeouts;
+ * network management messages are always approved
+ */
+public class StubBank {
+    private static final Logger log = LoggerFactory.getLogger(StubBank.class);
+
+    private final int port;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double errorRate;
+    private final String[] errorCodes;
+    private final double dropRate;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel listener;
+
+    public StubBank(int port, long latencyMs, long jitterMs, double errorRate, String[] errorCodes, double dropRate) {
+        this.port = port;
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+        this.errorCodes = errorCodes;
+        this.dropRate = dropRate;
+    }
+
+    public void start() throws InterruptedException {
+        NettyTransport transport = NettyTransport.select("auto");
+        bossGroup = transport.newEventLoopGroup(1, "stub-bank-boss");
+        workerGroup = transport.newEventLoopGroup(2, "stub-bank-worker");
+
+        ISOPackager packager = new BankPackager();
+        IsoMessageDecoder decoder = new IsoMessageDecoder(packager);
+        IsoMessageEncoder encoder = new IsoMessageEncoder(packager, IsoMessageEncoder.LengthHeader.ASCII);
+        BankHandler handler = new BankHandler();
+
+        listener = new ServerBootstrap()
+            .group(bossGroup, workerGroup)
+            .channel(transport.serverChannelClass())
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline()
+                        .addLast(new AsciiLengthFrameDecoder(9999))
+                        .addLast(decoder)
+                        .addLast(encoder)
+                        .addLast(handler);
+                }
+            })
+            .bind("127.0.0.1", port).sync().channel();
+        log.info("Stub bank listening on 127.0.0.1:{} (latency {} ms +/- {} ms, decline rate {}, drop rate {})",
+            port, latencyMs, jitterMs, errorRate, dropRate);
+    }
+
+    public void stop() throws InterruptedException {
+        if (listener != null) {
+            listener.close().sync();
+        }
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    public int getSessionCount() { return sessions.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("Stub bank: %d sessions, %d requests, %d declined, %d unanswered",
+            sessions.get(), requests.sum(), declined.sum(), dropped.sum());
+    }
+
+    /**
+     * Response for a request, or null when the request is to go unanswered
+     */
+    private ISOMsg respond(ISOMsg request) throws ISOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean networkManagement = request.getMTI().startsWith("08");
+        if (!networkManagement && random.nextDouble() < dropRate) {
+            dropped.increment();
+            return null;
+        }
+
+        ISOMsg response = (ISOMsg) request.clone();
+        response.setResponseMTI();
+        response.unset(52);
+        if (!networkManagement && random.nextDouble() < errorRate) {
+            declined.increment();
+            response.set(39, errorCodes[random.nextInt(errorCodes.length)]);
+        } else {
+            response.set(39, "00");
+            if (!networkManagement) {
+                response.set(38, String.format("%06d", random.nextInt(1000000)));
+            }
+        }
+        return response;
+    }
+
+    @ChannelHandler.Sharable
+    private class BankHandler extends SimpleChannelInboundHandler<ISOMsg> {
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            sessions.incrementAndGet();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            sessions.decrementAndGet();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ISOMsg request) throws ISOException {
+            requests.increment();
+            ISOMsg response = respond(request);
+            if (response == null) {
+                return;
+            }
+            long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0);
+            if (delay <= 0) {
+                ctx.writeAndFlush(response);
+            } else {
+                ctx.executor().schedule(() -> ctx.writeAndFlush(response), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("Stub bank session error: {}", cause.toString());
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.kevshake.gateway.loadtest;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kevshake.gateway.components.IsoMessageDecoder;
+import com.kevshake.gateway.components.IsoMessageEncoder;
+import com.kevshake.gateway.components.NettyTransport;
+import com.kevshake.gateway.packagers.POSPackager;
+import com.kevshake.gateway.security.TDES;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * POS terminal simulator for load tests
+ * Opens one connection per terminal to the gateway's POS port with the same framing as the
+ * listener (2 byte binary length, POSPackager). Like a real terminal each connection has one
+ * request outstanding: the next is sent when the response arrives (after an optional think
+ * time) or when the request times out. Requests are drawn from an MTI mix; 0200 carries a PIN
+ * block under the default terminal key, and 0400 reverses the terminal's last approved 0200
+ * through its RRN and original data elements, falling back to a 0200 when there is none
+ */
+public class TerminalSimulator {
+    private static final Logger log = LoggerFactory.getLogger(TerminalSimulator.class);
+
+    // Luhn-valid test cards of the schemes in the BIN table
+    private static final String[] PANS = {
+        "4761739001010010", "5555555555554444", "378282246310005", "6011111111111117"
+    };
+    private static final String TERMINAL_KEY = "9E4F7FF1F831F1132CD9B6C740B0134C";
+    private static final DateTimeFormatter TRANSMISSION = DateTimeFormatter.ofPattern("MMddHHmmss");
+
+    private final String host;
+    private final int port;
+    private final int terminals;
+    private final int connectRate;
+    private final long thinkMs;
+    private final long timeoutMs;
+    private final int threads;
+    private final LoadReport report;
+
+    private final String[] mixMtis;
+    private final int[] mixWeights;
+    private final byte[][] pinBlocks = new byte[PANS.length][];
+    private final ISOPackager packager = new POSPackager();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final List<Channel> channels = new ArrayList<>();
+
+    private volatile boolean running;
+    private EventLoopGroup group;
+
+    /**
+     * @param mix request MTIs with relative weights, e.g. "0200:80,0400:10,0800:10"
+     */
+    public TerminalSimulator(String host, int port, int terminals, int connectRate, String mix,
+            long thinkMs, long timeoutMs, int threads, LoadReport report) {
+        this.host = host;
+        this.port = port;
+        this.terminals = terminals;
+        this.connectRate = Math.max(1, connectRate);
+        this.thinkMs = thinkMs;
+        this.timeoutMs = timeoutMs;
+        this.threads = threads;
+        this.report = report;
+
+        String[] entries = mix.split(",");
+        mixMtis = new String[entries.length];
+        mixWeights = new int[entries.length];
+        int cumulative = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            mixMtis[i] = entry[0];
+            if (!mixMtis[i].matches("0200|0400|0800")) {
+                throw new IllegalArgumentException("Unsupported MTI in mix: " + mixMtis[i]);
+            }
+            cumulative += entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+            mixWeights[i] = cumulative;
+        }
+
+        for (int i = 0; i < PANS.length; i++) {
+            pinBlocks[i] = HexFormat.of().parseHex(TDES.TDES_Encrypt(TDES.format0Encode("1234", PANS[i]), TERMINAL_KEY, false));
+        }
+    }
+
+    /**
+     * Connect every terminal, at most connectRate new connections per second
+     */
+    public void start() throws InterruptedException {
+        running = true;
+        NettyTransport transport = NettyTransport.select("auto");
+        group = transport.newEventLoopGroup(threads, "pos-terminal");
+        Bootstrap bootstrap = new Bootstrap()
+            .group(group)
+            .channel(transport.socketChannelClass())
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
+            .remoteAddress(host, port);
+        IsoMessageDecoder decoder = new IsoMessageDecoder(packager);
+        IsoMessageEncoder encoder = new IsoMessageEncoder(packager, IsoMessageEncoder.LengthHeader.BINARY);
+
+        int batch = Math.max(1, connectRate / 10);
+        List<ChannelFuture> connects = new ArrayList<>(terminals);
+        for (int i = 0; i < terminals && running; i++) {
+            String terminalId = String.format("LT%06d", i + 1);
+            ChannelFuture connect = bootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                            .addLast(new LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2))
+                            .addLast(decoder)
+                            .addLast(encoder)
+                            .addLast(new Terminal(terminalId));
+                    }
+                })
+                .connect();
+            connect.addListener(f -> {
+                if (!f.isSuccess()) {
+                    report.recordConnectFailure();
+                }
+            });
+            connects.add(connect);
+            if ((i + 1) % batch == 0) {
+                Thread.sleep(100);
+            }
+        }
+        for (ChannelFuture connect : connects) {
+            connect.awaitUninterruptibly();
+            if (connect.isSuccess()) {
+                channels.add(connect.channel());
+            }
+        }
+        log.info("{} of {} terminals connected to {}:{}", channels.size(), terminals, host, port);
+    }
+
+    public int getConnectedCount() { return connected.get(); }
+
+    /**
+     * Stop sending, give outstanding requests up to drainMs to complete and disconnect
+     */
+    public void stop(long drainMs) throws InterruptedException {
+        running = false;
+        Thread.sleep(drainMs);
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    private String nextMti() {
+        int pick = ThreadLocalRandom.current().nextInt(mixWeights[mixWeights.length - 1]);
+        for (int i = 0; i < mixWeights.length; i++) {
+            if (pick < mixWeights[i]) {
+                return mixMtis[i];
+            }
+        }
+        return mixMtis[mixMtis.length - 1];
+    }
+
+    /**
+     * One simulated terminal; all its state is used on its channel's event loop only
+     */
+    private final class Terminal extends SimpleChannelInboundHandler<ISOMsg> {
+        private final String terminalId;
+        private int stan;
+        private ISOMsg lastApproved;
+        private String lastApprovedRrn;
+        private ISOMsg pending;
+        private long sentAt;
+        private ScheduledFuture<?> timeout;
+        private ChannelHandlerContext ctx;
+
+        Terminal(String terminalId) {
+            this.terminalId = terminalId;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            this.ctx = ctx;
+            connected.incrementAndGet();
+            // Spread the first requests so terminals do not send in lockstep
+            ctx.executor().schedule(this::sendNext, ThreadLocalRandom.current().nextLong(100), TimeUnit.MILLISECONDS);
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            connected.decrementAndGet();
+            if (running) {
+                report.recordDisconnect();
+            }
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ISOMsg response) {
+            if (pending == null || !Objects.equals(response.getString(11), pending.getString(11))) {
+                report.recordLateResponse();
+                return;
+            }
+            timeout.cancel(false);
+            String mti = pending.getString(0);
+            String responseCode = response.getString(39);
+            report.recordResponse(mti, responseCode, System.nanoTime() - sentAt);
+            if ("0200".equals(mti) && "00".equals(responseCode) && response.hasField(37)) {
+                lastApproved = pending;
+                lastApprovedRrn = response.getString(37);
+            } else if ("0400".equals(mti)) {
+                lastApproved = null;
+            }
+            pending = null;
+
+            if (thinkMs > 0) {
+                ctx.executor().schedule(this::sendNext, thinkMs, TimeUnit.MILLISECONDS);
+            } else {
+                sendNext();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("Terminal {} error: {}", terminalId, cause.toString());
+            ctx.close();
+        }
+
+        private void onTimeout() {
+            pending = null;
+            report.recordTimeout();
+            sendNext();
+        }
+
+        private void sendNext() {
+            if (!running || !ctx.channel().isActive()) {
+                return;
+            }
+            try {
+                pending = nextRequest();
+            } catch (ISOException e) {
+                log.error("Could not build request for terminal {}", terminalId, e);
+                return;
+            }
+            sentAt = System.nanoTime();
+            ctx.writeAndFlush(pending);
+            timeout = ctx.executor().schedule(this::onTimeout, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        private ISOMsg nextRequest() throws ISOException {
+            stan = stan % 999999 + 1;
+            String mti = nextMti();
+            LocalDateTime now = LocalDateTime.now();
+            ISOMsg msg = new ISOMsg();
+            msg.setPackager(packager);
+            msg.set(7, now.format(TRANSMISSION));
+            msg.set(11, String.format("%06d", stan));
+            msg.set(12, now.format(DateTimeFormatter.ofPattern("HHmmss")));
+            msg.set(13, now.format(DateTimeFormatter.ofPattern("MMdd")));
+            msg.set(41, terminalId);
+
+            if ("0800".equals(mti)) {
+                msg.setMTI("0800");
+                msg.set(3, "990002");
+                return msg;
+            }
+            if ("0400".equals(mti) && lastApproved != null) {
+                msg.setMTI("0400");
+                for (int field : new int[] { 2, 3, 4, 14, 22, 25, 42, 49 }) {
+                    if (lastApproved.hasField(field)) {
+                        msg.set(field, lastApproved.getString(field));
+                    }
+                }
+                msg.set(37, lastApprovedRrn);
+                msg.set(90, "0200" + lastApproved.getString(11) + lastApproved.getString(7)
+                    + "00000000000" + "00000000000");
+                return msg;
+            }
+
+            int card = ThreadLocalRandom.current().nextInt(PANS.length);
+            msg.setMTI("0200");
+            msg.set(2, PANS[card]);
+            msg.set(3, "000000");
+            msg.set(4, String.format("%012d", 100 + ThreadLocalRandom.current().nextInt(100000)));
+            msg.set(14, "2712");
+            msg.set(22, "051");
+            msg.set(25, "00");
+            msg.set(35, PANS[card] + "D27121011234567");
+            msg.set(42, "LOADTESTMERCH01");
+            msg.set(49, "404");
+            msg.set(52, pinBlocks[card]);
+            return msg;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.kevshake.gateway.components;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+//Frame decoder for jPOS ASCIIChannel framing: 4 ASCII digits of length, then the message
+//Emits a retained slice of each message without its header; zero length frames are skipped
+public class AsciiLengthFrameDecoder extends ByteToMessageDecoder {
+    private static final int HEADER_LENGTH = 4;
+
+    private final int maxFrameLength;
+
+    public AsciiLengthFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (in.readableBytes() >= HEADER_LENGTH) {
+            int start = in.readerIndex();
+            int length = 0;
+            for (int i = 0; i < HEADER_LENGTH; i++) {
+                int digit = in.getByte(start + i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new CorruptedFrameException("Invalid ASCII length header at offset " + start);
+                }
+                length = length * 10 + digit;
+            }
+            if (length > maxFrameLength) {
+                throw new TooLongFrameException("Frame length " + length + " exceeds " + maxFrameLength);
+            }
+            if (in.readableBytes() < HEADER_LENGTH + length) {
+                return;
+            }
+
+            in.skipBytes(HEADER_LENGTH);
+            if (length > 0) {
+                out.add(in.readRetainedSlice(length));
+                return;
+            }
+        }
+    }
+}
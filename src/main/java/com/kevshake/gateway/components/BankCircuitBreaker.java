@@ -0,0 +1,242 @@
+package com.kevshake.gateway.components;
+
+import java.net.ConnectException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Circuit breaker for the bank route
+ * Trips when the failure rate or the latency percentile over the last window of bank calls
+ * crosses its threshold. While open, requests are answered at once with a stand-in response
+ * code instead of burning retries; the link is probed with 0800 echo tests (990002) and the
+ * circuit closes again after a successful probe
+ */
+@Component
+public class BankCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(BankCircuitBreaker.class);
+
+    /**
+     * Breaker state
+     */
+    public enum State {
+        CLOSED,     // Requests flow to the bank
+        OPEN,       // Requests are answered with the stand-in response code
+        HALF_OPEN   // An echo probe is in flight
+    }
+
+    /**
+     * Raised when a request is rejected because the circuit is open
+     */
+    public static class CircuitOpenException extends ConnectException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    @Autowired
+    private BankCommunicationConfig config;
+
+    @Autowired
+    private BankClient bankClient;
+
+    @Autowired
+    private MaskedLogger maskedLogger;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private volatile State state = State.CLOSED;
+    private final AtomicInteger probeStan = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder trips = new LongAdder();
+
+    // Sliding window of the last calls, guarded by this
+    private boolean[] failed;
+    private boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.bank.circuit.state", this, cb -> cb.getState().ordinal())
+            .description("Bank circuit state: 0 closed, 1 open, 2 half open")
+            .register(registry);
+        FunctionCounter.builder("gateway.bank.circuit.trips", this, BankCircuitBreaker::getTripCount)
+            .register(registry);
+        FunctionCounter.builder("gateway.bank.circuit.rejected", this, BankCircuitBreaker::getRejectedCount)
+            .description("Requests answered with the stand-in response code")
+            .register(registry);
+    }
+
+    /**
+     * Check whether a request may be sent to the bank
+     */
+    public boolean allowRequest() {
+        if (!settings().isEnabled() || state == State.CLOSED) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Record a bank call that received a response
+     */
+    public void onSuccess(long latencyNanos) {
+        BankCommunicationConfig.Bank.CircuitBreaker cb = settings();
+        record(false, TimeUnit.NANOSECONDS.toMillis(latencyNanos) > cb.getSlowCallThresholdMs());
+    }
+
+    /**
+     * Record a bank call that timed out or failed on the link
+     */
+    public void onFailure() {
+        record(true, false);
+    }
+
+    /**
+     * Build the stand-in answer for a request rejected while the circuit is open
+     */
+    public ISOMsg standInResponse(ISOMsg request) throws ISOException {
+        ISOMsg response = (ISOMsg) request.clone();
+        response.setResponseMTI();
+        response.unset(35);
+        response.unset(52);
+        response.unset(55);
+        response.set(39, settings().getStandInResponseCode());
+        return response;
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        BankCommunicationConfig.Bank.CircuitBreaker cb = settings();
+        if (!cb.isEnabled()) {
+            return;
+        }
+
+        String reason = null;
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                return;
+            }
+            int size = Math.max(1, cb.getWindowSize());
+            if (failed == null || failed.length != size) {
+                resetWindow(size);
+            }
+
+            if (calls == size) {
+                // Evict the oldest outcome
+                if (failed[next]) failures--;
+                if (slow[next]) slowCalls--;
+            } else {
+                calls++;
+            }
+            failed[next] = failure;
+            slow[next] = slowCall;
+            if (failure) failures++;
+            if (slowCall) slowCalls++;
+            next = (next + 1) % size;
+
+            if (calls >= cb.getMinimumCalls()) {
+                double failureRate = failures * 100.0 / calls;
+                // The percentile latency exceeds the threshold once more than (100 - p)% of calls are slow
+                double slowRate = slowCalls * 100.0 / calls;
+                if (failureRate >= cb.getFailureRateThreshold()) {
+                    reason = String.format("failure rate %.0f%% over last %d calls", failureRate, calls);
+                } else if (slowRate > 100.0 - cb.getLatencyPercentile()) {
+                    reason = String.format("p%.0f latency above %dms over last %d calls",
+                        cb.getLatencyPercentile(), cb.getSlowCallThresholdMs(), calls);
+                }
+            }
+            if (reason != null) {
+                state = State.OPEN;
+            }
+        }
+
+        if (reason != null) {
+            trips.increment();
+            log.warn("Bank circuit opened: {}", reason);
+            maskedLogger.log(LogEvent.CIRCUIT_OPEN, "Circuit opened ({}), answering with RC {}", reason, cb.getStandInResponseCode());
+            scheduleProbe(cb.getOpenDurationMs());
+        }
+    }
+
+    private void resetWindow(int size) {
+        failed = new boolean[size];
+        slow = new boolean[size];
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void scheduleProbe(long delayMs) {
+        bankClient.getTimer().newTimeout(t -> probe(), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Half-open: send an echo test straight through the bank client
+     */
+    private void probe() {
+        BankCommunicationConfig.Bank.CircuitBreaker cb = settings();
+        state = State.HALF_OPEN;
+
+        ISOMsg echo;
+        try {
+            echo = echoRequest();
+        } catch (ISOException e) {
+            log.error("Unable to build echo probe", e);
+            state = State.OPEN;
+            scheduleProbe(cb.getProbeIntervalMs());
+            return;
+        }
+
+        bankClient.send(echo, cb.getProbeTimeoutMs()).whenComplete((response, error) -> {
+            if (error == null) {
+                synchronized (this) {
+                    resetWindow(Math.max(1, cb.getWindowSize()));
+                    state = State.CLOSED;
+                }
+                log.info("Bank circuit closed after successful echo probe");
+                maskedLogger.log(LogEvent.CIRCUIT_CLOSED, "Echo probe succeeded, bank route restored");
+            } else {
+                state = State.OPEN;
+                maskedLogger.log(LogEvent.CIRCUIT_PROBE_FAILED, "Echo probe failed: {}", error.getMessage());
+                scheduleProbe(cb.getProbeIntervalMs());
+            }
+        });
+    }
+
+    private ISOMsg echoRequest() throws ISOException {
+        ISOMsg echo = new ISOMsg("0800");
+        echo.set(3, TransactionProcessor.ProcessingCodes.ECHO_TEST);
+        echo.set(7, LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMddHHmmss")));
+        echo.set(11, String.format("%06d", Math.floorMod(probeStan.incrementAndGet(), 1000000)));
+        return echo;
+    }
+
+    private BankCommunicationConfig.Bank.CircuitBreaker settings() {
+        return config.getBank().getCircuitBreaker();
+    }
+
+    // Metrics accessors
+    public State getState() { return state; }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getTripCount() { return trips.sum(); }
+}
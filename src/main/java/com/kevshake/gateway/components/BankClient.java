@@ -0,0 +1,220 @@
+package com.kevshake.gateway.components;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOPackager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Non-blocking Netty client for the bank link
+ * Keeps a pool of iso8583.bank.max-connections persistent sessions using ASCIIChannel
+ * framing and the bank packager. Each request goes to the healthy session with the fewest
+ * requests in flight; responses are matched by the iso8583.bank.match-key fields
+ */
+@Component
+public class BankClient {
+    private static final Logger log = LoggerFactory.getLogger(BankClient.class);
+
+    @Autowired
+    private BankCommunicationConfig config;
+
+    @Autowired
+    private MaskedLogger maskedLogger;
+
+    @Autowired
+    @Qualifier("bankPackager")
+    private ISOPackager bankPackager;
+
+    @Autowired
+    private GatewayMetrics metrics;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private EventLoopGroup group;
+    private HashedWheelTimer timer;
+    private List<BankConnection> connections = Collections.emptyList();
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    @PostConstruct
+    public void start() {
+        BankCommunicationConfig.Bank bank = config.getBank();
+        NettyTransport transport = NettyTransport.select(bank.getTransport());
+        int[] keyFields = parseKeyFields(bank.getMatchKey());
+
+        group = transport.newEventLoopGroup(bank.getEventLoopThreads(), "bank-io");
+        timer = new HashedWheelTimer(new DefaultThreadFactory("bank-timer", true), 10, TimeUnit.MILLISECONDS);
+
+        Bootstrap bootstrap = new Bootstrap()
+            .group(group)
+            .channel(transport.socketChannelClass())
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, bank.getConnectTimeoutMs())
+            .remoteAddress(bank.getHost(), bank.getPort());
+
+        IsoMessageDecoder decoder = new IsoMessageDecoder(bankPackager, metrics.getBankDecodeTimer());
+        IsoMessageEncoder encoder = new IsoMessageEncoder(bankPackager, IsoMessageEncoder.LengthHeader.ASCII,
+            metrics.getBankEncodeTimer());
+
+        int size = Math.max(1, bank.getMaxConnections());
+        List<BankConnection> pool = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            String name = "bank-" + i;
+            BankConnection connection = new BankConnection(name, bootstrap,
+                () -> new AsciiLengthFrameDecoder(9999), decoder, encoder, keyFields, timer, maskedLogger,
+                bank.getReconnectDelayMs(), bank.getReconnectMaxDelayMs(), metrics.bankRoundTripTimer(name));
+            pool.add(connection);
+            // Failed connects are retried in the background
+            connection.connect();
+        }
+        connections = Collections.unmodifiableList(pool);
+
+        Gauge.builder("gateway.bank.in_flight", this, BankClient::getOutstandingCount)
+            .description("Bank requests awaiting a response")
+            .register(registry);
+        Gauge.builder("gateway.channels", this, BankClient::getConnectedCount)
+            .description("Open channels")
+            .tag("link", "bank")
+            .register(registry);
+
+        log.info("Bank client started with {} connections to {}:{} over {} transport, match key {}",
+            size, bank.getHost(), bank.getPort(), transport, Arrays.toString(keyFields));
+    }
+
+    /**
+     * Send a request to the bank without blocking the caller
+     *
+     * @return future completed with the matching response, or exceptionally on timeout or I/O error
+     */
+    public CompletableFuture<ISOMsg> send(ISOMsg msg) {
+        return send(msg, config.getBank().getTimeout());
+    }
+
+    /**
+     * Send a request to the bank with an explicit response timeout
+     */
+    public CompletableFuture<ISOMsg> send(ISOMsg msg, long timeoutMs) {
+        BankConnection connection = selectConnection();
+        if (connection == null) {
+            CompletableFuture<ISOMsg> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ConnectException("No bank connection available"));
+            return failed;
+        }
+        return connection.send(msg, timeoutMs);
+    }
+
+    /**
+     * Pick the connected session with the fewest requests in flight
+     * The scan starts at a rotating index so ties are spread across sessions
+     */
+    private BankConnection selectConnection() {
+        List<BankConnection> pool = connections;
+        int size = pool.size();
+        if (size == 0) {
+            return null;
+        }
+
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+        BankConnection best = null;
+        int bestOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            BankConnection candidate = pool.get((start + i) % size);
+            if (candidate.getState() != BankConnection.State.UP) {
+                continue;
+            }
+            int outstanding = candidate.getOutstandingCount();
+            if (outstanding < bestOutstanding) {
+                best = candidate;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+
+    public boolean isConnected() {
+        for (BankConnection connection : connections) {
+            if (connection.getState() == BankConnection.State.UP) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getConnectedCount() {
+        int up = 0;
+        for (BankConnection connection : connections) {
+            if (connection.getState() == BankConnection.State.UP) {
+                up++;
+            }
+        }
+        return up;
+    }
+
+    public int getOutstandingCount() {
+        int outstanding = 0;
+        for (BankConnection connection : connections) {
+            outstanding += connection.getOutstandingCount();
+        }
+        return outstanding;
+    }
+
+    /**
+     * Sessions in the pool, for per-connection state, in-flight counts and latency histograms
+     */
+    public List<BankConnection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Timer shared by request timeouts
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (BankConnection connection : connections) {
+            log.info("Bank connection {} stats: {}", connection.getName(), connection.getLatencyHistogram());
+            connection.close();
+        }
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    static int[] parseKeyFields(String matchKey) {
+        return Arrays.stream(matchKey.split(","))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .mapToInt(Integer::parseInt)
+            .toArray();
+    }
+}
@@ -14,12 +14,27 @@ public class BankCommunicationConfig {
     
     private Pos pos = new Pos();
     private Bank bank = new Bank();
+    private Processing processing = new Processing();
     
     public static class Pos {
         private int port = 5878;
         private String channelType = "NACC";
         private String packager = "org.jpos.iso.packager.ISO87APackager";
         
+        // Netty transport and socket tuning
+        private String transport = "auto";            // auto (epoll when available), epoll, nio
+        private int bossThreads = 1;
+        private int workerThreads = 0;                // 0 = CPU cores * 2
+        private int soBacklog = 1024;
+        private boolean tcpNoDelay = true;
+        private boolean soKeepAlive = true;
+        private int soRcvBuf = 0;                     // 0 = OS default
+        private int soSndBuf = 0;                     // 0 = OS default
+        private int writeBufferLowWaterMark = 32 * 1024;
+        private int writeBufferHighWaterMark = 64 * 1024;
+        private String allocator = "pooled";          // pooled, unpooled
+        private boolean lazyUnpack = true;            // Decode request fields on first access
+        
         // Getters and setters
         public int getPort() { return port; }
         public void setPort(int port) { this.port = port; }
@@ -29,6 +44,42 @@ public class BankCommunicationConfig {
         
         public String getPackager() { return packager; }
         public void setPackager(String packager) { this.packager = packager; }
+        
+        public String getTransport() { return transport; }
+        public void setTransport(String transport) { this.transport = transport; }
+        
+        public int getBossThreads() { return bossThreads; }
+        public void setBossThreads(int bossThreads) { this.bossThreads = bossThreads; }
+        
+        public int getWorkerThreads() { return workerThreads; }
+        public void setWorkerThreads(int workerThreads) { this.workerThreads = workerThreads; }
+        
+        public int getSoBacklog() { return soBacklog; }
+        public void setSoBacklog(int soBacklog) { this.soBacklog = soBacklog; }
+        
+        public boolean isTcpNoDelay() { return tcpNoDelay; }
+        public void setTcpNoDelay(boolean tcpNoDelay) { this.tcpNoDelay = tcpNoDelay; }
+        
+        public boolean isSoKeepAlive() { return soKeepAlive; }
+        public void setSoKeepAlive(boolean soKeepAlive) { this.soKeepAlive = soKeepAlive; }
+        
+        public int getSoRcvBuf() { return soRcvBuf; }
+        public void setSoRcvBuf(int soRcvBuf) { this.soRcvBuf = soRcvBuf; }
+        
+        public int getSoSndBuf() { return soSndBuf; }
+        public void setSoSndBuf(int soSndBuf) { this.soSndBuf = soSndBuf; }
+        
+        public int getWriteBufferLowWaterMark() { return writeBufferLowWaterMark; }
+        public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) { this.writeBufferLowWaterMark = writeBufferLowWaterMark; }
+        
+        public int getWriteBufferHighWaterMark() { return writeBufferHighWaterMark; }
+        public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) { this.writeBufferHighWaterMark = writeBufferHighWaterMark; }
+        
+        public String getAllocator() { return allocator; }
+        public void setAllocator(String allocator) { this.allocator = allocator; }
+        
+        public boolean isLazyUnpack() { return lazyUnpack; }
+        public void setLazyUnpack(boolean lazyUnpack) { this.lazyUnpack = lazyUnpack; }
     }
     
     public static class Bank {
@@ -38,12 +89,66 @@ public class BankCommunicationConfig {
         private String packager = "org.jpos.iso.packager.ISO87BPackager";
         private int timeout = 30000;
         private int maxConnections = 5;
+        private String transport = "auto";            // auto (epoll when available), epoll, nio
+        private int eventLoopThreads = 2;
+        private int connectTimeoutMs = 5000;
+        private String matchKey = "11,37,41,42";      // Fields pairing responses with requests (as in 31_bank_mux.xml)
+        private long reconnectDelayMs = 1000;
+        private long reconnectMaxDelayMs = 30000;
         private Retry retry = new Retry();
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        
+        public static class CircuitBreaker {
+            private boolean enabled = true;
+            private int windowSize = 50;                  // Bank calls in the sliding window
+            private int minimumCalls = 20;                // Calls required before the breaker can trip
+            private double failureRateThreshold = 50.0;   // Percent of failed calls that opens the circuit
+            private double latencyPercentile = 99.0;      // Opens when this percentile exceeds slowCallThresholdMs
+            private long slowCallThresholdMs = 5000;
+            private long openDurationMs = 30000;          // Time open before the first echo probe
+            private long probeIntervalMs = 5000;          // Time between failed probes
+            private long probeTimeoutMs = 5000;
+            private String standInResponseCode = "91";    // 91 issuer inoperative, 96 system malfunction
+            
+            // Getters and setters
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+            
+            public int getWindowSize() { return windowSize; }
+            public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+            
+            public int getMinimumCalls() { return minimumCalls; }
+            public void setMinimumCalls(int minimumCalls) { this.minimumCalls = minimumCalls; }
+            
+            public double getFailureRateThreshold() { return failureRateThreshold; }
+            public void setFailureRateThreshold(double failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+            
+            public double getLatencyPercentile() { return latencyPercentile; }
+            public void setLatencyPercentile(double latencyPercentile) { this.latencyPercentile = latencyPercentile; }
+            
+            public long getSlowCallThresholdMs() { return slowCallThresholdMs; }
+            public void setSlowCallThresholdMs(long slowCallThresholdMs) { this.slowCallThresholdMs = slowCallThresholdMs; }
+            
+            public long getOpenDurationMs() { return openDurationMs; }
+            public void setOpenDurationMs(long openDurationMs) { this.openDurationMs = openDurationMs; }
+            
+            public long getProbeIntervalMs() { return probeIntervalMs; }
+            public void setProbeIntervalMs(long probeIntervalMs) { this.probeIntervalMs = probeIntervalMs; }
+            
+            public long getProbeTimeoutMs() { return probeTimeoutMs; }
+            public void setProbeTimeoutMs(long probeTimeoutMs) { this.probeTimeoutMs = probeTimeoutMs; }
+            
+            public String getStandInResponseCode() { return standInResponseCode; }
+            public void setStandInResponseCode(String standInResponseCode) { this.standInResponseCode = standInResponseCode; }
+        }
         
         public static class Retry {
             private int maxAttempts = 3;
             private int delayMs = 5000;
             private double backoffMultiplier = 2.0;
+            private double jitter = 0.2;                  // +/- fraction applied to each delay
+            private long deadlineMs = 60000;              // Total budget for all attempts of one transaction
+            private boolean repeatMti = true;             // Resend advices/reversals as 0221/0401/0421
             
             // Getters and setters
             public int getMaxAttempts() { return maxAttempts; }
@@ -54,6 +159,15 @@ public class BankCommunicationConfig {
             
             public double getBackoffMultiplier() { return backoffMultiplier; }
             public void setBackoffMultiplier(double backoffMultiplier) { this.backoffMultiplier = backoffMultiplier; }
+            
+            public double getJitter() { return jitter; }
+            public void setJitter(double jitter) { this.jitter = jitter; }
+            
+            public long getDeadlineMs() { return deadlineMs; }
+            public void setDeadlineMs(long deadlineMs) { this.deadlineMs = deadlineMs; }
+            
+            public boolean isRepeatMti() { return repeatMti; }
+            public void setRepeatMti(boolean repeatMti) { this.repeatMti = repeatMti; }
         }
         
         // Getters and setters
@@ -75,8 +189,60 @@ public class BankCommunicationConfig {
         public int getMaxConnections() { return maxConnections; }
         public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
         
+        public String getTransport() { return transport; }
+        public void setTransport(String transport) { this.transport = transport; }
+        
+        public int getEventLoopThreads() { return eventLoopThreads; }
+        public void setEventLoopThreads(int eventLoopThreads) { this.eventLoopThreads = eventLoopThreads; }
+        
+        public int getConnectTimeoutMs() { return connectTimeoutMs; }
+        public void setConnectTimeoutMs(int connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+        
+        public String getMatchKey() { return matchKey; }
+        public void setMatchKey(String matchKey) { this.matchKey = matchKey; }
+        
+        public long getReconnectDelayMs() { return reconnectDelayMs; }
+        public void setReconnectDelayMs(long reconnectDelayMs) { this.reconnectDelayMs = reconnectDelayMs; }
+        
+        public long getReconnectMaxDelayMs() { return reconnectMaxDelayMs; }
+        public void setReconnectMaxDelayMs(long reconnectMaxDelayMs) { this.reconnectMaxDelayMs = reconnectMaxDelayMs; }
+        
         public Retry getRetry() { return retry; }
         public void setRetry(Retry retry) { this.retry = retry; }
+        
+        public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+        public void setCircuitBreaker(CircuitBreaker circuitBreaker) { this.circuitBreaker = circuitBreaker; }
+    }
+    
+    /**
+     * Executor stage that runs message processing off the Netty event loops
+     */
+    public static class Processing {
+        private boolean enabled = true;
+        private String executorType = "auto";     // auto (virtual threads when available), virtual, pool
+        private int threads = 0;                  // 0 = availableProcessors * 4
+        private int queueCapacity = 10000;
+        private int batchSize = 16;
+        private long shutdownTimeoutMs = 5000;
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getExecutorType() { return executorType; }
+        public void setExecutorType(String executorType) { this.executorType = executorType; }
+        
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+        
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        
+        public long getShutdownTimeoutMs() { return shutdownTimeoutMs; }
+        public void setShutdownTimeoutMs(long shutdownTimeoutMs) { this.shutdownTimeoutMs = shutdownTimeoutMs; }
     }
     
     // Main getters and setters
@@ -85,4 +251,7 @@ public class BankCommunicationConfig {
     
     public Bank getBank() { return bank; }
     public void setBank(Bank bank) { this.bank = bank; }
+    
+    public Processing getProcessing() { return processing; }
+    public void setProcessing(Processing processing) { this.processing = processing; }
 }
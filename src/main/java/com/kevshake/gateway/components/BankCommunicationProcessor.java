@@ -3,10 +3,13 @@ package com.kevshake.gateway.components;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOComponent;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOPackager;
-import org.jpos.iso.channel.ASCIIChannel;
+import org.jpos.iso.ISOUtil;
 import com.kevshake.gateway.packagers.BankPackager;
+import com.kevshake.gateway.packagers.FrameField;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -17,18 +20,17 @@ import com.kevshake.gateway.service.BankResponseCodeService;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import java.io.IOException;
-import java.net.SocketException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Service for handling outgoing communication to bank processors
- * Sends transaction messages to bank using ASCIIChannel and separate packager
+ * Sends transaction messages to bank over the multiplexed BankClient using a separate packager
  */
 @Service
 public class BankCommunicationProcessor {
@@ -49,39 +51,68 @@ public class BankCommunicationProcessor {
     @Autowired
     private BankResponseCodeService bankResponseCodeService;
     
+    @Autowired
+    private BankClient bankClient;
+    
+    @Autowired
+    private BankRetryScheduler retryScheduler;
+    
+    @Autowired
+    private BankCircuitBreaker circuitBreaker;
+    
     @Value("${iso8583.security.pin.enable-transposition:true}")
     private boolean enablePinTransposition;
     
-    private ASCIIChannel bankChannel;
-    private ISOPackager bankPackager;
+    private static final DateTimeFormatter TRANSMISSION_DATE_TIME = DateTimeFormatter.ofPattern("MMddHHmmss");
+    
+    /** Fields forwarded from the POS request; MTI, 7 and 37 are set here and 52 is re-encrypted */
+    private static final int[] FORWARDED_FIELDS = {
+        2,   // PAN
+        3,   // Processing Code
+        4,   // Amount
+        11,  // STAN
+        12,  // Local Time
+        13,  // Local Date
+        14,  // Expiration Date
+        22,  // POS Entry Mode
+        25,  // POS Capture Code
+        35,  // Track 2 Data
+        41,  // Terminal ID
+        42,  // Merchant ID
+        43,  // Merchant Name/Location
+        49,  // Currency Code
+        52   // PIN Data, transposed to the bank key by processBankPinTransposition
+    };
+    
+    private final ISOPackager bankPackager = new BankPackager();
     private ExecutorService executorService;
-    private boolean isConnected = false;
     
     @PostConstruct
     public void initialize() {
         try {
-            // Initialize bank packager
-            bankPackager = new BankPackager();
-            
             // Initialize executor service for async processing
             executorService = Executors.newFixedThreadPool(config.getBank().getMaxConnections());
             
-            // Initialize bank channel
-            initializeBankChannel();
-            
             logger.info("Bank Communication Processor initialized successfully");
-            maskedLogger.logSystemEvent("BANK_PROCESSOR_INIT", "Bank communication processor started");
+            maskedLogger.log(LogEvent.BANK_PROCESSOR_INIT, "Bank communication processor started");
             
         } catch (Exception e) {
             logger.error("Failed to initialize Bank Communication Processor", e);
-            maskedLogger.logError("BANK_PROCESSOR_INIT", "Initialization failed", e);
+            maskedLogger.log(LogEvent.BANK_PROCESSOR_INIT_FAILED, e, "Initialization failed");
         }
     }
     
     /**
      * Process outgoing transaction to bank
+     * The message is prepared on the executor; sending and retries run asynchronously
+     * and the future completes with null if the bank could not be reached.
+     * While the bank circuit is open the stand-in response is returned immediately
      */
     public CompletableFuture<ISOMsg> processTransactionToBank(ISOMsg originalMsg) {
+        if (!circuitBreaker.allowRequest()) {
+            return CompletableFuture.completedFuture(standInResponse(originalMsg));
+        }
+        
         return CompletableFuture.supplyAsync(() -> {
             try {
                 // Create bank message from original POS message
@@ -93,71 +124,91 @@ public class BankCommunicationProcessor {
                 // Log outgoing transaction
                 maskedLogger.logOutgoingTransaction(bankMsg, "BANK");
                 
-                // Send to bank and get response
-                ISOMsg response = sendToBankWithRetry(bankMsg);
-                
-                // Log bank response
-                if (response != null) {
-                    maskedLogger.logIncomingTransaction(response, "BANK_RESPONSE");
-                    
-                    String responseCode = response.getString(39);
-                    String stan = response.getString(11);
-                    String terminalId = response.getString(41);
-                    
-                    // Log bank response with detailed narration using bank-specific service
-                    bankResponseCodeService.logBankResponseCode(responseCode, 
-                        "Bank response received", stan);
-                    
-                    // Log formatted bank response message
-                    String bankResponseMessage = bankResponseCodeService.formatBankResponseMessage(responseCode, terminalId, stan);
-                    BankResponseCodeService.BankResponseCodeInfo bankCodeInfo = bankResponseCodeService.getBankResponseCodeInfo(responseCode);
-                    
-                    // Log based on bank response severity
-                    switch (bankCodeInfo.getSeverity()) {
-                        case ERROR:
-                            logger.error("BANK ERROR RESPONSE: {}", bankResponseMessage);
-                            maskedLogger.logError("BANK_ERROR_RESPONSE", bankResponseMessage, null);
-                            
-                            // Log recommended action for error responses
-                            logger.error("RECOMMENDED ACTION: {}", bankCodeInfo.getRecommendedAction());
-                            break;
-                        case WARN:
-                            logger.warn("BANK WARNING RESPONSE: {}", bankResponseMessage);
-                            maskedLogger.logSystemEvent("BANK_WARNING_RESPONSE", bankResponseMessage);
-                            
-                            // Log recommended action for warning responses
-                            logger.warn("RECOMMENDED ACTION: {}", bankCodeInfo.getRecommendedAction());
-                            break;
-                        default:
-                            logger.info("BANK SUCCESS RESPONSE: {}", bankResponseMessage);
-                            maskedLogger.logSystemEvent("BANK_SUCCESS_RESPONSE", bankResponseMessage);
-                            break;
-                    }
-                    
-                    // Generate detailed analysis for non-success responses
-                    if (bankResponseCodeService.isBankErrorResponse(responseCode)) {
-                        String transactionAmount = originalMsg.getString(4);
-                        String analysis = bankResponseCodeService.generateBankResponseAnalysis(responseCode, transactionAmount, "Unknown");
-                        logger.debug("BANK RESPONSE ANALYSIS:\n{}", analysis);
-                    }
-                    
-                    maskedLogger.logTransactionResult(stan, responseCode, "Bank response received");
-                }
-                
-                return response;
-                
-            } catch (Exception e) {
-                logger.error("Error processing transaction to bank", e);
-                maskedLogger.logError("BANK_TRANSACTION", "Transaction processing failed", e);
-                return null;
+                return bankMsg;
+            } catch (ISOException e) {
+                throw new CompletionException(e);
+            }
+        }, executorService)
+        .thenCompose(retryScheduler::send)
+        // Responses complete on the bank I/O threads; keep the logging off them
+        .thenApplyAsync(response -> {
+            logBankResponse(originalMsg, response);
+            return response;
+        }, executorService)
+        .exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof BankCircuitBreaker.CircuitOpenException) {
+                return standInResponse(originalMsg);
             }
-        }, executorService);
+            logger.error("Error processing transaction to bank: {}", cause.getMessage());
+            maskedLogger.log(LogEvent.BANK_TRANSACTION_FAILED, cause, "Transaction processing failed");
+            return null;
+        });
+    }
+    
+    /**
+     * Stand-in answer used while the bank route is unavailable
+     */
+    private ISOMsg standInResponse(ISOMsg originalMsg) {
+        try {
+            ISOMsg response = circuitBreaker.standInResponse(originalMsg);
+            maskedLogger.log(LogEvent.TRANSACTION_RESULT, "STAN: {} - Response: {} - Bank circuit open - stand-in response",
+                originalMsg.getString(11), response.getString(39));
+            return response;
+        } catch (ISOException e) {
+            maskedLogger.log(LogEvent.BANK_STAND_IN_FAILED, e, "Failed to build stand-in response");
+            return null;
+        }
+    }
+    
+    /**
+     * Log the bank response with its response code narration
+     */
+    private void logBankResponse(ISOMsg originalMsg, ISOMsg response) {
+        if (response != null) {
+            maskedLogger.logIncomingTransaction(response, "BANK_RESPONSE");
+            
+            String responseCode = response.getString(39);
+            String stan = response.getString(11);
+            String terminalId = response.getString(41);
+            
+            // Log bank response with detailed narration using bank-specific service
+            bankResponseCodeService.logBankResponseCode(responseCode, 
+                "Bank response received", stan);
+            
+            // Log the bank response narration at a level matching its severity;
+            // warnings and errors carry the recommended action
+            String description = bankResponseCodeService.getBankResponseDescription(responseCode);
+            switch (bankResponseCodeService.getBankResponseSeverity(responseCode)) {
+                case ERROR:
+                    maskedLogger.log(LogEvent.BANK_ERROR_RESPONSE, "Bank Response [{}]: {} | Terminal: {} | STAN: {} | Action: {}",
+                        responseCode, description, terminalId, stan, bankResponseCodeService.getRecommendedAction(responseCode));
+                    break;
+                case WARN:
+                    maskedLogger.log(LogEvent.BANK_WARNING_RESPONSE, "Bank Response [{}]: {} | Terminal: {} | STAN: {} | Action: {}",
+                        responseCode, description, terminalId, stan, bankResponseCodeService.getRecommendedAction(responseCode));
+                    break;
+                default:
+                    maskedLogger.log(LogEvent.BANK_SUCCESS_RESPONSE, "Bank Response [{}]: {} | Terminal: {} | STAN: {}",
+                        responseCode, description, terminalId, stan);
+                    break;
+            }
+            
+            // Detailed analysis for non-success responses, only built when DEBUG is on
+            if (bankResponseCodeService.isBankErrorResponse(responseCode)) {
+                maskedLogger.log(LogEvent.BANK_RESPONSE_ANALYSIS, () -> bankResponseCodeService.generateBankResponseAnalysis(
+                    responseCode, originalMsg.getString(4), "Unknown"));
+            }
+            
+            maskedLogger.log(LogEvent.TRANSACTION_RESULT, "STAN: {} - Response: {} - Bank response received", stan, responseCode);
+        }
     }
     
     /**
      * Create bank message from POS transaction
+     * Needs no other collaborators, so it can also be called on an instance built outside Spring
      */
-    private ISOMsg createBankMessage(ISOMsg posMsg) throws ISOException {
+    public ISOMsg createBankMessage(ISOMsg posMsg) throws ISOException {
         ISOMsg bankMsg = new ISOMsg();
         bankMsg.setPackager(bankPackager);
         
@@ -167,22 +218,10 @@ public class BankCommunicationProcessor {
         String bankMti = convertMtiForBank(posMti);
         bankMsg.setMTI(bankMti);
         
-        // Copy essential fields
-        copyFieldIfPresent(posMsg, bankMsg, 2);   // PAN
-        copyFieldIfPresent(posMsg, bankMsg, 3);   // Processing Code
-        copyFieldIfPresent(posMsg, bankMsg, 4);   // Amount
-        copyFieldIfPresent(posMsg, bankMsg, 7);   // Transmission Date Time
-        copyFieldIfPresent(posMsg, bankMsg, 11);  // STAN
-        copyFieldIfPresent(posMsg, bankMsg, 12);  // Local Time
-        copyFieldIfPresent(posMsg, bankMsg, 13);  // Local Date
-        copyFieldIfPresent(posMsg, bankMsg, 14);  // Expiration Date
-        copyFieldIfPresent(posMsg, bankMsg, 22);  // POS Entry Mode
-        copyFieldIfPresent(posMsg, bankMsg, 25);  // POS Capture Code
-        copyFieldIfPresent(posMsg, bankMsg, 35);  // Track 2 Data
-        copyFieldIfPresent(posMsg, bankMsg, 41);  // Terminal ID
-        copyFieldIfPresent(posMsg, bankMsg, 42);  // Merchant ID
-        copyFieldIfPresent(posMsg, bankMsg, 43);  // Merchant Name/Location
-        copyFieldIfPresent(posMsg, bankMsg, 49);  // Currency Code
+        // Copy essential fields; unchanged fields of a lazily unpacked message go to the bank as received
+        for (int fieldNumber : FORWARDED_FIELDS) {
+            copyFieldIfPresent(posMsg, bankMsg, fieldNumber);
+        }
         
         // Add bank-specific fields
         bankMsg.set(37, generateRRN());  // Retrieval Reference Number
@@ -210,105 +249,21 @@ public class BankCommunicationProcessor {
         }
     }
     
-    /**
-     * Send message to bank with retry logic
-     */
-    private ISOMsg sendToBankWithRetry(ISOMsg msg) {
-        BankCommunicationConfig.Bank.Retry retryConfig = config.getBank().getRetry();
-        int attempts = 0;
-        long delay = retryConfig.getDelayMs();
-        
-        while (attempts < retryConfig.getMaxAttempts()) {
-            try {
-                attempts++;
-                
-                // Ensure connection is established
-                if (!isConnected) {
-                    connectToBank();
-                }
-                
-                // Send message and wait for response
-                bankChannel.send(msg);
-                ISOMsg response = bankChannel.receive();
-                
-                if (response != null) {
-                    maskedLogger.logBankCommunication("SEND_SUCCESS", 
-                        String.format("Message sent successfully on attempt %d", attempts));
-                    return response;
-                }
-                
-            } catch (Exception e) {
-                logger.warn("Bank communication attempt {} failed: {}", attempts, e.getMessage());
-                maskedLogger.logBankCommunication("SEND_RETRY", 
-                    String.format("Attempt %d failed: %s", attempts, e.getMessage()));
-                
-                // Disconnect and retry
-                disconnect();
-                
-                if (attempts < retryConfig.getMaxAttempts()) {
-                    try {
-                        Thread.sleep(delay);
-                        delay = (long) (delay * retryConfig.getBackoffMultiplier());
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
-        }
-        
-        maskedLogger.logBankCommunication("SEND_FAILED", 
-            String.format("All %d attempts failed", attempts));
-        return null;
-    }
-    
-    /**
-     * Initialize bank channel connection
-     */
-    private void initializeBankChannel() {
-        try {
-            BankCommunicationConfig.Bank bankConfig = config.getBank();
-            bankChannel = new ASCIIChannel(bankConfig.getHost(), bankConfig.getPort(), bankPackager);
-            bankChannel.setTimeout(bankConfig.getTimeout());
-        } catch (SocketException e) {
-            logger.error("Error initializing bank channel", e);
-            maskedLogger.logError("BANK_CHANNEL_INIT", "Failed to initialize bank channel", e);
-        }
-    }
-    
-    /**
-     * Connect to bank
-     */
-    private void connectToBank() throws IOException, SocketException {
-        if (!isConnected) {
-            bankChannel.connect();
-            isConnected = true;
-            maskedLogger.logBankCommunication("CONNECT", "Connected to bank successfully");
-        }
-    }
-    
-    /**
-     * Disconnect from bank
-     */
-    private void disconnect() {
-        if (isConnected) {
-            try {
-                bankChannel.disconnect();
-                maskedLogger.logBankCommunication("DISCONNECT", "Disconnected from bank");
-            } catch (Exception e) {
-                logger.warn("Error disconnecting from bank", e);
-            } finally {
-                isConnected = false;
-            }
-        }
-    }
-    
     /**
      * Copy field from source to destination if present
+     * The bank message runs on the executor while the handler still uses the POS message, so it
+     * gets its own components. An unchanged lazily unpacked field becomes a new lazy field over
+     * the same received bytes: it is not decoded here and is forwarded as received
      */
     private void copyFieldIfPresent(ISOMsg source, ISOMsg destination, int fieldNumber) {
         try {
-            if (source.hasField(fieldNumber)) {
+            ISOComponent field = source.getComponent(fieldNumber);
+            ISOComponent copy = field instanceof FrameField ? ((FrameField) field).copy() : null;
+            if (copy != null) {
+                destination.set(copy);
+            } else if (field instanceof ISOBinaryField) {
+                destination.set(fieldNumber, source.getBytes(fieldNumber));
+            } else if (field != null) {
                 destination.set(fieldNumber, source.getString(fieldNumber));
             }
         } catch (Exception e) {
@@ -320,21 +275,21 @@ public class BankCommunicationProcessor {
      * Generate Retrieval Reference Number
      */
     private String generateRRN() {
-        return String.format("%012d", System.currentTimeMillis() % 1000000000000L);
+        return ISOUtil.zeropad(System.currentTimeMillis() % 1000000000000L, 12);
     }
     
     /**
      * Get current transmission date time
      */
     private String getCurrentTransmissionDateTime() {
-        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMddHHmmss"));
+        return LocalDateTime.now().format(TRANSMISSION_DATE_TIME);
     }
     
     /**
      * Check if bank is connected
      */
     public boolean isBankConnected() {
-        return isConnected && bankChannel != null && bankChannel.isConnected();
+        return bankClient.isConnected();
     }
     
     /**
@@ -342,8 +297,10 @@ public class BankCommunicationProcessor {
      */
     public String getBankConnectionStatus() {
         if (isBankConnected()) {
-            return String.format("Connected to %s:%d", 
-                config.getBank().getHost(), config.getBank().getPort());
+            return String.format("Connected to %s:%d (%d/%d sessions up, %d in flight)", 
+                config.getBank().getHost(), config.getBank().getPort(),
+                bankClient.getConnectedCount(), bankClient.getConnections().size(),
+                bankClient.getOutstandingCount());
         } else {
             return "Disconnected";
         }
@@ -353,9 +310,6 @@ public class BankCommunicationProcessor {
     public void shutdown() {
         logger.info("Shutting down Bank Communication Processor");
         
-        // Disconnect from bank
-        disconnect();
-        
         // Shutdown executor service
         if (executorService != null) {
             executorService.shutdown();
@@ -369,7 +323,7 @@ public class BankCommunicationProcessor {
             }
         }
         
-        maskedLogger.logSystemEvent("BANK_PROCESSOR_SHUTDOWN", "Bank communication processor stopped");
+        maskedLogger.log(LogEvent.BANK_PROCESSOR_SHUTDOWN, "Bank communication processor stopped");
     }
     
     /**
@@ -390,14 +344,15 @@ public class BankCommunicationProcessor {
                 return;
             }
             
-            String gatewayPinBlock = bankMsg.getString(52);
-            String pan = bankMsg.getString(2);
+            byte[] gatewayPinBlock = bankMsg.getComponent(52) instanceof ISOBinaryField
+                ? bankMsg.getBytes(52) : ISOUtil.hex2byte(bankMsg.getString(52));
+            byte[] pan = bankMsg.getBytes(2);
             String merchantId = bankMsg.getString(42); // Use merchant ID to determine bank
             
             // Validate required fields
-            if (pan == null || pan.isEmpty()) {
+            if (pan == null || pan.length == 0) {
                 logger.warn("Cannot transpose PIN for bank: PAN (field 2) is missing");
-                maskedLogger.logError("BANK_PIN_TRANSPOSE", "PAN missing for bank PIN transposition", null);
+                maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_SKIPPED, "PAN missing for bank PIN transposition");
                 return;
             }
             
@@ -407,26 +362,25 @@ public class BankCommunicationProcessor {
             // Validate PIN block
             if (!pinTranspositionService.validatePinBlock(gatewayPinBlock, pan)) {
                 logger.warn("Invalid PIN block format for bank transposition");
-                maskedLogger.logError("BANK_PIN_TRANSPOSE", "Invalid PIN block format for bank", null);
+                maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_SKIPPED, "Invalid PIN block format for bank");
                 return;
             }
             
             logger.debug("Starting PIN transposition to bank key for bank: {}", bankId);
             
             // Transpose PIN from gateway zonal key to bank key
-            String bankPinBlock = pinTranspositionService.transposePinToBankKey(
+            byte[] bankPinBlock = pinTranspositionService.transposePinToBankKey(
                 gatewayPinBlock, pan, bankId);
             
             // Update message with bank PIN block
             bankMsg.set(52, bankPinBlock);
             
             logger.debug("Bank PIN transposition completed for bank: {}", bankId);
-            maskedLogger.logSystemEvent("BANK_PIN_TRANSPOSE_SUCCESS", 
-                String.format("PIN transposed to bank key for bank: %s", bankId));
+            maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_SUCCESS, "PIN transposed to bank key for bank: {}", bankId);
             
         } catch (Exception e) {
             logger.error("Error during bank PIN transposition", e);
-            maskedLogger.logError("BANK_PIN_TRANSPOSE_ERROR", "Bank PIN transposition failed", e);
+            maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_ERROR, e, "Bank PIN transposition failed");
             throw new RuntimeException("Bank PIN transposition failed", e);
         }
     }
@@ -0,0 +1,378 @@
+package com.kevshake.gateway.components;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * One multiplexed connection to the bank
+ * Any number of requests may be outstanding at once; each response is paired with its
+ * request by the match key (like QMUX) instead of by arrival order.
+ * A lost or failed connection is re-established in the background with exponential backoff
+ */
+public class BankConnection {
+
+    /**
+     * Health of the connection
+     */
+    public enum State {
+        CONNECTING,
+        UP,
+        DOWN,
+        CLOSED
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(BankConnection.class);
+
+    private final String name;
+    private final Bootstrap bootstrap;
+    private final int[] keyFields;
+    private final Timer timer;
+    private final MaskedLogger maskedLogger;
+    private final long reconnectDelayMs;
+    private final long reconnectMaxDelayMs;
+    private final Map<String, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final io.micrometer.core.instrument.Timer roundTripTimer;
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private volatile Channel channel;
+    private volatile State state = State.DOWN;
+    private Future<Channel> connecting;
+    private long nextReconnectDelayMs;
+    private volatile boolean closed;
+
+    /**
+     * @param name connection name used in logs
+     * @param bootstrap bootstrap with group, channel type, options and remote address set
+     * @param frameDecoder creates the frame decoder for each new channel
+     * @param decoder shared ISO message decoder for the bank packager
+     * @param encoder shared ISO message encoder for the bank packager
+     * @param keyFields fields that identify a request/response pair
+     * @param timer timer for per-request timeouts
+     * @param reconnectDelayMs first reconnect delay, doubled after each failed attempt
+     * @param reconnectMaxDelayMs upper bound for the reconnect delay
+     * @param roundTripTimer Micrometer timer for request to response latency, or null
+     */
+    public BankConnection(String name, Bootstrap bootstrap, Supplier<ChannelHandler> frameDecoder,
+                          IsoMessageDecoder decoder, IsoMessageEncoder encoder, int[] keyFields,
+                          Timer timer, MaskedLogger maskedLogger, long reconnectDelayMs, long reconnectMaxDelayMs,
+                          io.micrometer.core.instrument.Timer roundTripTimer) {
+        this.name = name;
+        this.roundTripTimer = roundTripTimer;
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.reconnectMaxDelayMs = reconnectMaxDelayMs;
+        this.nextReconnectDelayMs = reconnectDelayMs;
+        this.keyFields = keyFields;
+        this.timer = timer;
+        this.maskedLogger = maskedLogger;
+        this.bootstrap = bootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                ch.pipeline()
+                    .addLast(frameDecoder.get())
+                    .addLast(decoder)
+                    .addLast(encoder)
+                    .addLast(new ResponseHandler());
+            }
+        });
+    }
+
+    /**
+     * Send a request and complete the future with the matching response
+     * The future fails with TimeoutException if no response arrives within timeoutMs,
+     * with ConnectException if the connection is not up, or with the I/O error
+     * if the request could not be written; callers are never blocked by reconnects
+     */
+    public CompletableFuture<ISOMsg> send(ISOMsg msg, long timeoutMs) {
+        CompletableFuture<ISOMsg> future = new CompletableFuture<>();
+
+        String key;
+        try {
+            key = matchKey(msg);
+        } catch (ISOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Channel ch = channel;
+        if (state != State.UP || ch == null || !ch.isActive()) {
+            // Nothing was written, so the caller may safely retry even non-idempotent requests
+            future.completeExceptionally(new ConnectException(name + " is not connected"));
+            return future;
+        }
+
+        PendingRequest request = new PendingRequest(key, future);
+        if (pending.putIfAbsent(key, request) != null) {
+            future.completeExceptionally(new ISOException("Request with key " + key + " already outstanding on " + name));
+            return future;
+        }
+        request.timeout = timer.newTimeout(t -> fail(request,
+            new TimeoutException("No bank response within " + timeoutMs + "ms for key " + key)),
+            timeoutMs, TimeUnit.MILLISECONDS);
+
+        write(ch, msg, request);
+        return future;
+    }
+
+    /**
+     * Connect if not already connected or connecting
+     */
+    public synchronized Future<Channel> connect() {
+        EventExecutor executor = bootstrap.config().group().next();
+        Channel ch = channel;
+        if (ch != null && ch.isActive()) {
+            return executor.newSucceededFuture(ch);
+        }
+        if (closed) {
+            return executor.newFailedFuture(new ClosedChannelException());
+        }
+        if (connecting != null && !connecting.isDone()) {
+            return connecting;
+        }
+
+        Promise<Channel> promise = executor.newPromise();
+        connecting = promise;
+        state = State.CONNECTING;
+        bootstrap.connect().addListener((ChannelFuture f) -> {
+            if (f.isSuccess()) {
+                channel = f.channel();
+                connected();
+                log.info("Bank connection {} established to {}", name, f.channel().remoteAddress());
+                maskedLogger.log(LogEvent.CONNECT, "{} connected to bank", name);
+                promise.setSuccess(f.channel());
+            } else {
+                log.warn("Bank connection {} failed: {}", name, f.cause().getMessage());
+                maskedLogger.log(LogEvent.CONNECT_FAILED, "{} failed to connect: {}", name, f.cause().getMessage());
+                promise.setFailure(f.cause());
+                scheduleReconnect();
+            }
+        });
+        return promise;
+    }
+
+    private synchronized void connected() {
+        nextReconnectDelayMs = reconnectDelayMs;
+        state = closed ? State.CLOSED : State.UP;
+    }
+
+    /**
+     * Retry the connection in the background, backing off up to reconnectMaxDelayMs
+     */
+    private synchronized void scheduleReconnect() {
+        if (closed) {
+            state = State.CLOSED;
+            return;
+        }
+        state = State.DOWN;
+        long delay = nextReconnectDelayMs;
+        nextReconnectDelayMs = Math.min(nextReconnectDelayMs * 2, reconnectMaxDelayMs);
+        reconnects.incrementAndGet();
+        bootstrap.config().group().schedule(() -> {
+            connect();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close the connection and fail every outstanding request
+     */
+    public void close() {
+        closed = true;
+        state = State.CLOSED;
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+        failAll(new ClosedChannelException());
+    }
+
+    public boolean isConnected() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    public int getOutstandingCount() {
+        return pending.size();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Request to response latency of requests completed on this connection
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Build the key that pairs a response with its request
+     * Starts with the MTI version and class so 0200/0210 match but 0200/0400 do not
+     */
+    String matchKey(ISOMsg msg) throws ISOException {
+        String mti = msg.getMTI();
+        StringBuilder key = new StringBuilder(64).append(mti, 0, Math.min(2, mti.length()));
+        for (int field : keyFields) {
+            key.append('|');
+            String value = msg.getString(field);
+            if (value != null) {
+                key.append(value.trim());
+            }
+        }
+        return key.toString();
+    }
+
+    private void write(Channel ch, ISOMsg msg, PendingRequest request) {
+        ch.writeAndFlush(msg).addListener((ChannelFuture f) -> {
+            if (!f.isSuccess()) {
+                fail(request, f.cause());
+            }
+        });
+    }
+
+    private void complete(ISOMsg response) {
+        String key;
+        try {
+            key = matchKey(response);
+        } catch (ISOException e) {
+            log.warn("Bank response without MTI on {}: {}", name, e.getMessage());
+            return;
+        }
+
+        PendingRequest request = pending.remove(key);
+        if (request == null) {
+            // Late response after timeout, or a message the bank originated
+            maskedLogger.log(LogEvent.UNHANDLED, "{} received response with no outstanding request, key {}", name, key);
+            return;
+        }
+        request.timeout.cancel();
+        long nanos = System.nanoTime() - request.startNanos;
+        latency.record(nanos);
+        if (roundTripTimer != null) {
+            roundTripTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+        request.future.complete(response);
+    }
+
+    private void fail(PendingRequest request, Throwable cause) {
+        if (pending.remove(request.key, request)) {
+            Timeout timeout = request.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        for (PendingRequest request : pending.values()) {
+            fail(request, cause);
+        }
+    }
+
+    /**
+     * Outstanding request waiting for its response
+     */
+    private static final class PendingRequest {
+        final String key;
+        final CompletableFuture<ISOMsg> future;
+        final long startNanos = System.nanoTime();
+        volatile Timeout timeout;
+
+        PendingRequest(String key, CompletableFuture<ISOMsg> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Per-channel handler completing requests as responses arrive
+     */
+    private final class ResponseHandler extends SimpleChannelInboundHandler<ISOMsg> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ISOMsg msg) {
+            complete(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            log.warn("Bank connection {} closed", name);
+            maskedLogger.log(LogEvent.DISCONNECT, "{} disconnected from bank", name);
+            failAll(new ClosedChannelException());
+            if (ctx.channel() == channel) {
+                scheduleReconnect();
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (cause instanceof IOException) {
+                log.error("Bank connection {} I/O error, closing", name, cause);
+                ctx.close();
+                return;
+            }
+            if (isFramingError(cause)) {
+                // The bad header stays in the frame decoder and every later read fails on it;
+                // closing lets the reconnect rebuild the link
+                log.error("Bank connection {} framing error, closing", name, cause);
+                maskedLogger.log(LogEvent.CONNECTION_ERROR, cause, "{} lost framing, reconnecting", name);
+                ctx.close();
+                return;
+            }
+            // A single undecodable response must not drop every request in flight on the link
+            log.error("Bank connection {} error", name, cause);
+            maskedLogger.log(LogEvent.CONNECTION_ERROR, cause, "{} failed to process message", name);
+        }
+
+        private boolean isFramingError(Throwable cause) {
+            for (Throwable t = cause; t != null; t = t.getCause() == t ? null : t.getCause()) {
+                if (t instanceof CorruptedFrameException || t instanceof TooLongFrameException) {
+                    return true;
+                }
+                if (!(t instanceof DecoderException)) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
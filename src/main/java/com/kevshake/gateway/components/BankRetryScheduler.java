@@ -0,0 +1,213 @@
+package com.kevshake.gateway.components;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Asynchronous retries for bank requests
+ * Attempts are rescheduled on the bank client's HashedWheelTimer with jittered exponential
+ * backoff inside a per-transaction deadline, so no thread is parked between attempts.
+ * Whether a failed attempt may be repeated depends on the MTI (see RetryPolicy)
+ */
+@Component
+public class BankRetryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(BankRetryScheduler.class);
+
+    @Autowired
+    private BankCommunicationConfig config;
+
+    @Autowired
+    private BankClient bankClient;
+
+    @Autowired
+    private MaskedLogger maskedLogger;
+
+    @Autowired
+    private BankCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private GatewayMetrics metrics;
+
+    /**
+     * How a request may be retried after a failed attempt
+     */
+    public enum RetryPolicy {
+        /**
+         * Financial and authorization requests (0100, 0200) are not idempotent: once the request
+         * may have reached the bank, repeating it risks a double debit. Only retried when it
+         * never left the gateway; otherwise the acquirer must reverse it
+         */
+        NOT_SENT_ONLY,
+
+        /**
+         * Advices and reversals (0120, 0220, 0400, 0420) must be delivered; every failure is
+         * retried and repeats are flagged with the repeat MTI (e.g. 0401)
+         */
+        REPEAT,
+
+        /**
+         * Network management (0800) has no side effects and is retried as is
+         */
+        ALWAYS;
+
+        public static RetryPolicy forMti(String mti) {
+            if (mti == null) {
+                return NOT_SENT_ONLY;
+            }
+            switch (mti) {
+                case "0120":
+                case "0121":
+                case "0220":
+                case "0221":
+                case "0400":
+                case "0401":
+                case "0420":
+                case "0421":
+                    return REPEAT;
+                case "0800":
+                    return ALWAYS;
+                default:
+                    return NOT_SENT_ONLY;
+            }
+        }
+
+        /**
+         * Check whether the failure allows another attempt under this policy
+         */
+        public boolean mayRetry(Throwable cause) {
+            return this != NOT_SENT_ONLY || cause instanceof ConnectException;
+        }
+    }
+
+    /**
+     * Send a request with retries
+     *
+     * @return future completed with the bank response, or exceptionally with the last failure
+     *         once attempts, policy or deadline budget are exhausted
+     */
+    public CompletableFuture<ISOMsg> send(ISOMsg msg) {
+        CompletableFuture<ISOMsg> result = new CompletableFuture<>();
+        BankCommunicationConfig.Bank.Retry retry = config.getBank().getRetry();
+
+        RetryPolicy policy;
+        try {
+            policy = RetryPolicy.forMti(msg.getMTI());
+        } catch (ISOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retry.getDeadlineMs());
+        attempt(msg, policy, 1, retry.getDelayMs(), deadline, result);
+        return result;
+    }
+
+    private void attempt(ISOMsg msg, RetryPolicy policy, int attempt, long delayMs, long deadline,
+                         CompletableFuture<ISOMsg> result) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        long timeoutMs = Math.min(config.getBank().getTimeout(), remainingMs);
+        if (timeoutMs <= 0) {
+            result.completeExceptionally(new TimeoutException("Deadline exhausted before attempt " + attempt));
+            return;
+        }
+
+        if (!circuitBreaker.allowRequest()) {
+            // Fast fail: no further attempts while the bank route is open
+            giveUp(msg, policy, attempt - 1, new BankCircuitBreaker.CircuitOpenException("Bank circuit is open"), result);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        bankClient.send(msg, timeoutMs).whenComplete((response, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess(System.nanoTime() - startNanos);
+                maskedLogger.log(LogEvent.SEND_SUCCESS, "Message sent successfully on attempt {}", attempt);
+                result.complete(response);
+                return;
+            }
+
+            Throwable cause = unwrap(error);
+            circuitBreaker.onFailure();
+            BankCommunicationConfig.Bank.Retry retry = config.getBank().getRetry();
+            log.warn("Bank communication attempt {} failed: {}", attempt, cause.getMessage());
+
+            if (attempt >= retry.getMaxAttempts() || !policy.mayRetry(cause)) {
+                giveUp(msg, policy, attempt, cause, result);
+                return;
+            }
+
+            long waitMs = jitter(delayMs, retry.getJitter());
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs) >= deadline) {
+                giveUp(msg, policy, attempt, new TimeoutException("Deadline budget of "
+                    + retry.getDeadlineMs() + "ms exhausted: " + cause.getMessage()), result);
+                return;
+            }
+
+            ISOMsg next;
+            try {
+                next = policy == RetryPolicy.REPEAT && retry.isRepeatMti() ? asRepeat(msg) : msg;
+            } catch (ISOException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            metrics.incrementBankRetries();
+            maskedLogger.log(LogEvent.SEND_RETRY, "Attempt {} failed: {}, retrying in {}ms", attempt, cause.getMessage(), waitMs);
+            long nextDelayMs = (long) (delayMs * retry.getBackoffMultiplier());
+            bankClient.getTimer().newTimeout(
+                t -> attempt(next, policy, attempt + 1, nextDelayMs, deadline, result),
+                waitMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void giveUp(ISOMsg msg, RetryPolicy policy, int attempts, Throwable cause,
+                        CompletableFuture<ISOMsg> result) {
+        metrics.incrementBankSendFailures();
+        maskedLogger.log(LogEvent.SEND_FAILED, "Giving up after {} attempt(s): {}", attempts, cause.getMessage());
+        if (policy == RetryPolicy.NOT_SENT_ONLY && !(cause instanceof ConnectException)) {
+            // The bank may have approved the request; only a reversal can settle it safely
+            maskedLogger.log(LogEvent.REVERSAL_REQUIRED, "Outcome unknown for MTI {} STAN {}, not repeated", msg.getString(0), msg.getString(11));
+        }
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * Copy of the message flagged as a repeat (last MTI digit 1), leaving the original untouched
+     */
+    private static ISOMsg asRepeat(ISOMsg msg) throws ISOException {
+        String mti = msg.getMTI();
+        if (mti.length() != 4 || mti.charAt(3) != '0') {
+            return msg;
+        }
+        ISOMsg repeat = (ISOMsg) msg.clone();
+        repeat.setMTI(mti.substring(0, 3) + "1");
+        return repeat;
+    }
+
+    private static long jitter(long delayMs, double jitter) {
+        if (jitter <= 0 || delayMs <= 0) {
+            return delayMs;
+        }
+        double factor = 1.0 - jitter + ThreadLocalRandom.current().nextDouble() * 2 * jitter;
+        return Math.max(0, (long) (delayMs * factor));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
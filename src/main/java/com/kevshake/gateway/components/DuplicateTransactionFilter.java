@@ -0,0 +1,272 @@
+package com.kevshake.gateway.components;
+
+import java.util.Arrays;
+
+/**
+ * Time-windowed duplicate transaction detection
+ * A transaction is identified by terminal ID (field 41), STAN (field 11) and local
+ * date/time (fields 13 and 12), packed into two longs so no String or record is kept per entry.
+ * Entries are held in open-addressing tables, one per time generation; the oldest generation
+ * is cleared and reused as time moves on, so memory follows the transaction rate over the
+ * window rather than the day. Keys are spread over independently locked shards
+ */
+public class DuplicateTransactionFilter {
+
+    private static final int SHARDS = 16;             // power of two
+    private static final int GENERATIONS = 4;         // generations covering the window
+    private static final int INITIAL_CAPACITY = 1024; // slots per generation table, power of two
+
+    // Set in every packed transaction value so that 0 marks an empty slot
+    private static final long PRESENT = 1L << 62;
+
+    private final long generationMillis;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    /**
+     * @param windowMillis how long a transaction is remembered; entries are kept for
+     *        at least this long and at most a quarter longer
+     */
+    public DuplicateTransactionFilter(long windowMillis) {
+        if (windowMillis < GENERATIONS) {
+            throw new IllegalArgumentException("Duplicate window too short: " + windowMillis + " ms");
+        }
+        this.generationMillis = windowMillis / GENERATIONS;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Record a transaction and report whether it was already seen within the window
+     * Check and record are one atomic step, so of two concurrent copies exactly one passes
+     *
+     * @return true if the transaction is a duplicate; false if it is new or its STAN,
+     *         date or time is not numeric and it cannot be identified
+     */
+    public boolean checkAndRecord(String terminalId, String stan, String localDate, String localTime) {
+        long transaction = packTransaction(stan, localDate, localTime);
+        if (transaction == 0) {
+            return false;
+        }
+        return checkAndRecord(packTerminalId(terminalId), transaction, System.currentTimeMillis());
+    }
+
+    /**
+     * Record a transaction seen at the given time, e.g. when replaying the transaction journal
+     */
+    public void record(String terminalId, String stan, String localDate, String localTime, long timestamp) {
+        long transaction = packTransaction(stan, localDate, localTime);
+        if (transaction != 0) {
+            checkAndRecord(packTerminalId(terminalId), transaction, timestamp);
+        }
+    }
+
+    boolean checkAndRecord(long terminal, long transaction, long now) {
+        long hash = hash(terminal, transaction);
+        Shard shard = shards[(int) (hash >>> 60) & (SHARDS - 1)];
+        synchronized (shard) {
+            return shard.checkAndRecord(terminal, transaction, (int) hash, now / generationMillis);
+        }
+    }
+
+    /**
+     * Number of transactions currently remembered
+     */
+    public int getSize() {
+        long generation = System.currentTimeMillis() / generationMillis;
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.size(generation);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Pack field 41 into a long: 8 ISO-8859-1 characters fit exactly, anything else is hashed
+     */
+    static long packTerminalId(String terminalId) {
+        if (terminalId == null) {
+            return 0;
+        }
+        long packed = 0;
+        if (terminalId.length() <= 8) {
+            for (int i = 0; i < terminalId.length(); i++) {
+                char c = terminalId.charAt(i);
+                if (c > 0xFF) {
+                    return hashTerminalId(terminalId);
+                }
+                packed = (packed << 8) | c;
+            }
+            return packed;
+        }
+        return hashTerminalId(terminalId);
+    }
+
+    private static long hashTerminalId(String terminalId) {
+        long hash = 0;
+        for (int i = 0; i < terminalId.length(); i++) {
+            hash = hash * 31 + terminalId.charAt(i);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Pack STAN (6 digits) and MMDDhhmmss (10 digits) into one long
+     *
+     * @return the packed value, or 0 if a field is not numeric
+     */
+    static long packTransaction(String stan, String localDate, String localTime) {
+        long stanValue = digits(stan, 6);
+        long date = digits(localDate, 4);
+        long time = digits(localTime, 6);
+        if (stanValue < 0 || date < 0 || time < 0) {
+            return 0;
+        }
+        // MMDDhhmmss is below 2^31 and STAN below 2^20
+        return PRESENT | (date * 1_000_000L + time) << 20 | stanValue;
+    }
+
+    /**
+     * Decimal value of a field of at most maxDigits digits, 0 when absent, -1 when malformed
+     */
+    private static long digits(String field, int maxDigits) {
+        if (field == null) {
+            return 0;
+        }
+        if (field.isEmpty() || field.length() > maxDigits) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < field.length(); i++) {
+            int digit = field.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static long hash(long terminal, long transaction) {
+        return mix(terminal * 0x9E3779B97F4A7C15L ^ transaction);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * One lock's worth of generation tables; slot i holds generation epochs[i]
+     */
+    private static final class Shard {
+        private final Table[] tables = new Table[GENERATIONS + 1];
+        private final long[] epochs = new long[GENERATIONS + 1];
+
+        Shard() {
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new Table();
+                epochs[i] = Long.MIN_VALUE;
+            }
+        }
+
+        boolean checkAndRecord(long terminal, long transaction, int hash, long generation) {
+            for (int i = 0; i < tables.length; i++) {
+                if (isLive(epochs[i], generation) && tables[i].contains(terminal, transaction, hash)) {
+                    return true;
+                }
+            }
+            int current = (int) Math.floorMod(generation, (long) tables.length);
+            if (epochs[current] != generation) {
+                // The slot held a generation that has left the window
+                tables[current].clear();
+                epochs[current] = generation;
+            }
+            tables[current].add(terminal, transaction, hash);
+            return false;
+        }
+
+        int size(long generation) {
+            int size = 0;
+            for (int i = 0; i < tables.length; i++) {
+                if (isLive(epochs[i], generation)) {
+                    size += tables[i].size;
+                }
+            }
+            return size;
+        }
+
+        private static boolean isLive(long epoch, long generation) {
+            return epoch <= generation && epoch >= generation - GENERATIONS;
+        }
+    }
+
+    /**
+     * Open-addressing set of (terminal, transaction) pairs with linear probing
+     */
+    private static final class Table {
+        private long[] terminals = new long[INITIAL_CAPACITY];
+        private long[] transactions = new long[INITIAL_CAPACITY];
+        private int size;
+
+        boolean contains(long terminal, long transaction, int hash) {
+            int mask = transactions.length - 1;
+            for (int i = hash & mask; transactions[i] != 0; i = (i + 1) & mask) {
+                if (transactions[i] == transaction && terminals[i] == terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long terminal, long transaction, int hash) {
+            if ((size + 1) * 2 > transactions.length) {
+                resize(transactions.length * 2);
+            }
+            insert(terminal, transaction, hash);
+            size++;
+        }
+
+        private void insert(long terminal, long transaction, int hash) {
+            int mask = transactions.length - 1;
+            int i = hash & mask;
+            while (transactions[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            terminals[i] = terminal;
+            transactions[i] = transaction;
+        }
+
+        private void resize(int capacity) {
+            long[] oldTerminals = terminals;
+            long[] oldTransactions = transactions;
+            terminals = new long[capacity];
+            transactions = new long[capacity];
+            for (int i = 0; i < oldTransactions.length; i++) {
+                if (oldTransactions[i] != 0) {
+                    insert(oldTerminals[i], oldTransactions[i], (int) hash(oldTerminals[i], oldTransactions[i]));
+                }
+            }
+        }
+
+        /**
+         * Empty the table for reuse, shrinking it when the last generation was much smaller
+         */
+        void clear() {
+            int needed = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size * 2 - 1)) << 1);
+            if (transactions.length > needed * 4) {
+                terminals = new long[needed];
+                transactions = new long[needed];
+            } else {
+                Arrays.fill(transactions, 0);
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.kevshake.gateway.components;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.kevshake.gateway.service.ResponseCodeService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Micrometer meters recorded on the transaction path
+ * Timers and counters are created up front with fixed tags, so recording never builds a meter;
+ * components with their own statistics (processing stage, bank client, circuit breaker,
+ * terminal key cache) register gauges over their getters. Everything is scraped from
+ * /actuator/prometheus on the HTTP server (server.port)
+ */
+@Component
+public class GatewayMetrics {
+
+    // MTIs the POS handler processes; anything else is tagged "other"
+    private static final String[] HANDLED_MTIS = { "0100", "0200", "0220", "0400", "0420", "0800" };
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ResponseCodeService responseCodeService;
+
+    private Timer posDecode;
+    private Timer posEncode;
+    private Timer bankDecode;
+    private Timer bankEncode;
+    private Timer cardValidation;
+    private Timer pinTranslation;
+    private Timer bankPinTranslation;
+    private Counter bankRetries;
+    private Counter bankSendFailures;
+    private Map<String, Timer> handlerTimers;
+    private Timer otherHandlerTimer;
+    private final Map<String, Counter> responseCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        posDecode = codecTimer("gateway.message.decode", "pos");
+        posEncode = codecTimer("gateway.message.encode", "pos");
+        bankDecode = codecTimer("gateway.message.decode", "bank");
+        bankEncode = codecTimer("gateway.message.encode", "bank");
+
+        cardValidation = Timer.builder("gateway.card.validation")
+            .description("Card number validation (BIN lookup and Luhn check)")
+            .register(registry);
+        pinTranslation = Timer.builder("gateway.pin.translation")
+            .description("PIN block translation")
+            .tag("to", "gateway")
+            .register(registry);
+        bankPinTranslation = Timer.builder("gateway.pin.translation")
+            .description("PIN block translation")
+            .tag("to", "bank")
+            .register(registry);
+
+        bankRetries = Counter.builder("gateway.bank.retries")
+            .description("Bank sends repeated after a failed attempt")
+            .register(registry);
+        bankSendFailures = Counter.builder("gateway.bank.send.failures")
+            .description("Bank sends given up after the last attempt")
+            .register(registry);
+
+        Map<String, Timer> timers = new HashMap<>();
+        for (String mti : HANDLED_MTIS) {
+            timers.put(mti, handlerTimer(mti));
+        }
+        handlerTimers = Map.copyOf(timers);
+        otherHandlerTimer = handlerTimer("other");
+    }
+
+    public Timer getPosDecodeTimer() { return posDecode; }
+    public Timer getPosEncodeTimer() { return posEncode; }
+    public Timer getBankDecodeTimer() { return bankDecode; }
+    public Timer getBankEncodeTimer() { return bankEncode; }
+
+    /**
+     * Round-trip timer for one bank session
+     * Published as a histogram so p50/p95/p99 can be computed across sessions with
+     * histogram_quantile; buckets span 1 ms to the 30 s bank timeout
+     */
+    public Timer bankRoundTripTimer(String connection) {
+        return Timer.builder("gateway.bank.roundtrip")
+            .description("Bank request to matching response")
+            .tag("connection", connection)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(30))
+            .register(registry);
+    }
+
+    public void recordHandler(String mti, long nanos) {
+        Timer timer = mti != null ? handlerTimers.get(mti) : null;
+        (timer != null ? timer : otherHandlerTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCardValidation(long nanos) {
+        cardValidation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPinTranslation(long nanos) {
+        pinTranslation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBankPinTranslation(long nanos) {
+        bankPinTranslation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void incrementBankRetries() {
+        bankRetries.increment();
+    }
+
+    public void incrementBankSendFailures() {
+        bankSendFailures.increment();
+    }
+
+    /**
+     * Count a response sent to a terminal, tagged with its code and ResponseCodeService category
+     */
+    public void recordResponse(String responseCode) {
+        String code = isResponseCode(responseCode) ? responseCode : "invalid";
+        Counter counter = responseCounters.get(code);
+        if (counter == null) {
+            counter = responseCounters.computeIfAbsent(code, c -> Counter.builder("gateway.responses")
+                .description("Responses sent to POS terminals")
+                .tag("code", c)
+                .tag("category", responseCodeService.getResponseCategory(c).name())
+                .register(registry));
+        }
+        counter.increment();
+    }
+
+    private Timer codecTimer(String name, String link) {
+        return Timer.builder(name)
+            .description("Time to unpack or pack one ISO8583 message")
+            .tag("link", link)
+            .register(registry);
+    }
+
+    private Timer handlerTimer(String mti) {
+        return Timer.builder("gateway.handler")
+            .description("POS message handling on the processing stage, per MTI")
+            .tag("mti", mti)
+            .register(registry);
+    }
+
+    /**
+     * Two upper case letters or digits; anything else would let a peer create unbounded tag values
+     */
+    private static boolean isResponseCode(String code) {
+        return code != null && code.length() == 2 && isCodeChar(code.charAt(0)) && isCodeChar(code.charAt(1));
+    }
+
+    private static boolean isCodeChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z');
+    }
+}
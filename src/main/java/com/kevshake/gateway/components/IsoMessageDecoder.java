@@ -1,19 +1,52 @@
 package com.kevshake.gateway.components;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import org.jpos.iso.ISOBasePackager;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOPackager;
+
+import com.kevshake.gateway.packagers.ByteBufUnpacker;
+
+import io.micrometer.core.instrument.Timer;
+
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 //Decoder: Convert bytes to ISOMsg
-public class IsoMessageDecoder extends ByteToMessageDecoder {
-    @SuppressWarnings("unused")
-	private final ISOPackager packager;
+//Receives complete frames from LengthFieldBasedFrameDecoder and unpacks them in place
+@ChannelHandler.Sharable
+public class IsoMessageDecoder extends MessageToMessageDecoder<ByteBuf> {
+    private final ISOPackager packager;
+    private final ByteBufUnpacker unpacker;
+    private final Timer timer;
+    private final boolean lazy;
 
     public IsoMessageDecoder(ISOPackager packager) {
+        this(packager, null);
+    }
+
+    /**
+     * @param timer records the unpack time of each frame, or null
+     */
+    public IsoMessageDecoder(ISOPackager packager, Timer timer) {
+        this(packager, timer, false);
+    }
+
+    /**
+     * @param timer records the unpack time of each frame, or null
+     * @param lazy decode fields on first access (see ByteBufUnpacker.unpackLazy)
+     */
+    public IsoMessageDecoder(ISOPackager packager, Timer timer, boolean lazy) {
         this.packager = packager;
+        this.timer = timer;
+        this.lazy = lazy;
+        this.unpacker = packager instanceof ISOBasePackager
+                ? new ByteBufUnpacker((ISOBasePackager) packager)
+                : null;
     }
 
     @Override
@@ -21,16 +54,32 @@ public class IsoMessageDecoder extends ByteToMessageDecoder {
         if (in.readableBytes() < 2) {
             return;
         }
-        
-        byte[] buffer = new byte[in.readableBytes()];
-        in.readBytes(buffer);
-        
+
+        long start = timer != null ? System.nanoTime() : 0;
         try {
-            ISOMsg msg = new ISOMsg();
-            msg.unpack(buffer);
-            out.add(msg);
+            out.add(unpack(in));
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
         } catch (Exception e) {
             ctx.fireExceptionCaught(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Unpack a single frame using the configured packager
+     */
+    private ISOMsg unpack(ByteBuf in) throws Exception {
+        if (unpacker != null) {
+            return lazy ? unpacker.unpackLazy(in) : unpacker.unpack(in);
+        }
+
+        // Packager without a field table - fall back to a copy and jPOS unpack
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+        byte[] buffer = ByteBufUtil.getBytes(in);
+        in.skipBytes(in.readableBytes());
+        msg.unpack(buffer);
+        return msg;
+    }
+}
@@ -1,28 +1,131 @@
 package com.kevshake.gateway.components;
 
+import java.util.concurrent.TimeUnit;
+
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOException;
 import org.jpos.iso.ISOMsg;
 import org.jpos.iso.ISOPackager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kevshake.gateway.packagers.ByteBufPacker;
 
+import io.micrometer.core.instrument.Timer;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 //Encoder: Convert ISOMsg to bytes
+//Writes the length header (2-byte binary for POS terminals, 4-digit ASCII for the bank link)
+//followed by the packed message, into a single exactly-sized pooled direct buffer
+@ChannelHandler.Sharable
 public class IsoMessageEncoder extends MessageToByteEncoder<ISOMsg> {
-    @SuppressWarnings("unused")
-	private final ISOPackager packager;
+
+    private static final Logger log = LoggerFactory.getLogger(IsoMessageEncoder.class);
+
+    /**
+     * Length header written in front of each message
+     */
+    public enum LengthHeader {
+        BINARY(ByteBufPacker.LENGTH_HEADER_SIZE),       // LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2)
+        ASCII(ByteBufPacker.ASCII_LENGTH_HEADER_SIZE);  // jPOS ASCIIChannel
+
+        private final int size;
+
+        LengthHeader(int size) {
+            this.size = size;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    private final ISOPackager packager;
+    private final ByteBufPacker packer;
+    private final LengthHeader lengthHeader;
+    private final Timer timer;
 
     public IsoMessageEncoder(ISOPackager packager) {
+        this(packager, LengthHeader.BINARY);
+    }
+
+    public IsoMessageEncoder(ISOPackager packager, LengthHeader lengthHeader) {
+        this(packager, lengthHeader, null);
+    }
+
+    /**
+     * @param timer records the pack time of each message, or null
+     */
+    public IsoMessageEncoder(ISOPackager packager, LengthHeader lengthHeader, Timer timer) {
+        super(ISOMsg.class, true);
         this.packager = packager;
+        this.lengthHeader = lengthHeader;
+        this.timer = timer;
+        this.packer = packager instanceof ISOBasePackager
+                ? new ByteBufPacker((ISOBasePackager) packager)
+                : null;
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ISOMsg msg, boolean preferDirect) throws Exception {
+        int size = lengthHeader.getSize();
+        try {
+            size += packer != null ? packer.packedSize(msg) : 0;
+        } catch (Exception e) {
+            // Sizing failed; encode() will report the packing error
+        }
+        return ctx.alloc().directBuffer(size);
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, ISOMsg msg, ByteBuf out) {
+        long start = timer != null ? System.nanoTime() : 0;
         try {
-            byte[] packed = msg.pack();
-            out.writeBytes(packed);
+            if (packer != null) {
+                if (lengthHeader == LengthHeader.ASCII) {
+                    packer.packWithAsciiLengthHeader(msg, out);
+                } else {
+                    packer.packWithLengthHeader(msg, out);
+                }
+            } else {
+                msg.setPackager(packager);
+                byte[] packed = msg.pack();
+                writeLengthHeader(packed.length, out);
+                out.writeBytes(packed);
+            }
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
         } catch (Exception e) {
+            // Never send a partially packed frame; the packing error names the field that failed
+            log.warn("Dropping {} message that could not be packed: {}", mti(msg), e.getMessage());
+            out.clear();
             ctx.fireExceptionCaught(e);
         }
     }
+
+    private static String mti(ISOMsg msg) {
+        try {
+            return msg.getMTI();
+        } catch (ISOException e) {
+            return "unknown";
+        }
+    }
+
+    private void writeLengthHeader(int length, ByteBuf out) throws ISOException {
+        if (lengthHeader == LengthHeader.ASCII) {
+            if (length > 9999) {
+                throw new ISOException("Packed message too long for 4-digit ASCII length header: " + length);
+            }
+            out.writeByte('0' + length / 1000)
+                .writeByte('0' + length / 100 % 10)
+                .writeByte('0' + length / 10 % 10)
+                .writeByte('0' + length % 10);
+        } else {
+            out.writeShort(length);
+        }
+    }
 }
@@ -11,12 +11,15 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 
 @Component
@@ -35,6 +38,9 @@ public class IsoServer {
     
     @Autowired
     private IsoServerHandler serverHandler;
+    
+    @Autowired
+    private GatewayMetrics metrics;
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
@@ -44,32 +50,45 @@ public class IsoServer {
     public void startServer() {
         // Start server in a separate thread to avoid blocking Spring startup
         new Thread(() -> {
-            bossGroup = new NioEventLoopGroup(1);
-            workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2);
+            BankCommunicationConfig.Pos pos = config.getPos();
+            NettyTransport transport = NettyTransport.select(pos.getTransport());
+            if (transport == NettyTransport.NIO && "epoll".equalsIgnoreCase(pos.getTransport())) {
+                log.warn("Epoll transport requested but not available, using NIO: {}",
+                    String.valueOf(NettyTransport.epollUnavailabilityCause()));
+            }
+
+            bossGroup = transport.newEventLoopGroup(pos.getBossThreads(), "iso8583-boss");
+            workerGroup = transport.newEventLoopGroup(pos.getWorkerThreads(), "iso8583-worker");
+            
+            // Codecs are stateless and build their field tables once, so share them across channels
+            IsoMessageDecoder decoder = new IsoMessageDecoder(posPackager, metrics.getPosDecodeTimer(),
+                pos.isLazyUnpack());
+            IsoMessageEncoder encoder = new IsoMessageEncoder(posPackager, IsoMessageEncoder.LengthHeader.BINARY,
+                metrics.getPosEncodeTimer());
 
             ServerBootstrap b = new ServerBootstrap()
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) {
                         ch.pipeline()
                             .addLast(new LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2))
-                            .addLast(new IsoMessageDecoder(posPackager)) // POS packager for incoming
-                            .addLast(new IsoMessageEncoder(posPackager)) // POS packager for responses
+                            .addLast(decoder)                            // POS packager for incoming
+                            .addLast(encoder)                            // POS packager for responses
                             .addLast(serverHandler);                     // Business logic handler
                     }
                 });
+            applySocketOptions(b, pos);
 
             try {
                 int port = config.getPos().getPort();
                 serverFuture = b.bind(port);
                 serverFuture.sync();
                 
-                log.info("ISO8583 POS Server started on port {} with {} channel", 
-                    port, config.getPos().getChannelType());
-                maskedLogger.logSystemEvent("SERVER_START", 
-                    String.format("POS Server started on port %d", port));
+                log.info("ISO8583 POS Server started on port {} with {} channel over {} transport", 
+                    port, config.getPos().getChannelType(), transport);
+                maskedLogger.log(LogEvent.SERVER_START, "POS Server started on port {}", port);
                 
                 serverFuture.channel().closeFuture().sync();
                 
@@ -78,13 +97,39 @@ public class IsoServer {
                 log.error("Server startup interrupted", e);
             } catch (Exception e) {
                 log.error("Error starting ISO8583 server", e);
-                maskedLogger.logError("SERVER_START", "Failed to start server", e);
+                maskedLogger.log(LogEvent.SERVER_START_FAILED, e, "Failed to start server");
             } finally {
                 shutdown();
             }
         }, "ISO8583-Server").start();
     }
     
+    /**
+     * Apply the socket options from iso8583.pos to the listening and accepted channels
+     */
+    public static void applySocketOptions(ServerBootstrap b, BankCommunicationConfig.Pos pos) {
+        ByteBufAllocator allocator = "unpooled".equalsIgnoreCase(pos.getAllocator())
+            ? UnpooledByteBufAllocator.DEFAULT
+            : PooledByteBufAllocator.DEFAULT;
+
+        b.option(ChannelOption.SO_BACKLOG, pos.getSoBacklog())
+            .option(ChannelOption.ALLOCATOR, allocator)
+            .childOption(ChannelOption.ALLOCATOR, allocator)
+            .childOption(ChannelOption.TCP_NODELAY, pos.isTcpNoDelay())
+            .childOption(ChannelOption.SO_KEEPALIVE, pos.isSoKeepAlive())
+            .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                new WriteBufferWaterMark(pos.getWriteBufferLowWaterMark(), pos.getWriteBufferHighWaterMark()));
+
+        if (pos.getSoRcvBuf() > 0) {
+            // Set on the listener too so the TCP window scale is negotiated with the accepted sockets
+            b.option(ChannelOption.SO_RCVBUF, pos.getSoRcvBuf())
+                .childOption(ChannelOption.SO_RCVBUF, pos.getSoRcvBuf());
+        }
+        if (pos.getSoSndBuf() > 0) {
+            b.childOption(ChannelOption.SO_SNDBUF, pos.getSoSndBuf());
+        }
+    }
+    
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down ISO8583 Server");
@@ -101,6 +146,6 @@ public class IsoServer {
             workerGroup.shutdownGracefully();
         }
         
-        maskedLogger.logSystemEvent("SERVER_STOP", "POS Server stopped");
+        maskedLogger.log(LogEvent.SERVER_STOP, "POS Server stopped");
     }
 }
\ No newline at end of file
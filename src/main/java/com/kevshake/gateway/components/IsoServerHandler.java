@@ -1,8 +1,11 @@
 package com.kevshake.gateway.components;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import org.jpos.iso.ISOBinaryField;
 import org.jpos.iso.ISOMsg;
+import org.jpos.iso.ISOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,14 +14,21 @@ import org.springframework.stereotype.Component;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.kevshake.gateway.security.PinTranspositionService;
 import com.kevshake.gateway.security.CardValidationService;
 import com.kevshake.gateway.service.TerminalManagementService;
 import com.kevshake.gateway.service.ResponseCodeService;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
 //Handler: Process messages
+//One instance is shared by every POS channel; per-message work runs on the ProcessingStage
 @Component
+@ChannelHandler.Sharable
 public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
     private static final Logger log = LoggerFactory.getLogger(IsoServerHandler.class);
     
@@ -43,6 +53,15 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
     @Autowired
     private ResponseCodeService responseCodeService;
     
+    @Autowired
+    private ProcessingStage processingStage;
+    
+    @Autowired
+    private GatewayMetrics metrics;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
     @Value("${iso8583.security.pin.enable-transposition:true}")
     private boolean enablePinTransposition;
     
@@ -52,22 +71,59 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
     @Value("${iso8583.terminal.enable-key-change:true}")
     private boolean enableKeyChange;
     
+    // Open POS terminal connections
+    private final AtomicInteger posChannels = new AtomicInteger();
+    
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.channels", posChannels, AtomicInteger::get)
+            .description("Open channels")
+            .tag("link", "pos")
+            .register(meterRegistry);
+    }
+    
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        posChannels.incrementAndGet();
+        super.channelActive(ctx);
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        posChannels.decrementAndGet();
+        super.channelInactive(ctx);
+    }
+    
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ISOMsg msg) {
+        // Validation, PIN translation, DB lookups and logging must not block the event loop
+        if (!processingStage.submit(ctx.channel(), () -> processMessage(ctx, msg))) {
+            log.warn("Processing queue full ({} messages), rejecting STAN: {}", 
+                processingStage.getQueueDepth(), msg.getString(11));
+            sendErrorResponse(ctx, msg, "91"); // Issuer or switch inoperative
+        }
+    }
+    
+    /**
+     * Process a single message; called on the processing stage in arrival order per channel
+     */
+    private void processMessage(ChannelHandlerContext ctx, ISOMsg msg) {
+        long start = System.nanoTime();
+        // Get MTI (Message Type Indicator)
+        String mti = msg.getString(0);
         try {
-            // Get MTI (Message Type Indicator)
-            String mti = msg.getString(0);
             log.info("Received message with MTI: {}", mti);
             
             // Log incoming transaction with masked logging
             maskedLogger.logIncomingTransaction(msg, "POS_TERMINAL");
             
+            // Validation runs once per message; later stages read the result from the context
+            MessageContext context = new MessageContext(msg);
+            
             // Validate card number using Luhn algorithm
-            if (!validateCardNumber(msg)) {
-                String terminalId = msg.getString(41);
-                String stan = msg.getString(11);
-                log.warn("Card validation failed for terminal: {} STAN: {}", terminalId, stan);
-                responseCodeService.logResponseCode("14", "Card validation failed - Luhn algorithm check", stan);
+            if (!validateCardNumber(context)) {
+                log.warn("Card validation failed for terminal: {} STAN: {}", context.getTerminalId(), context.getStan());
+                responseCodeService.logResponseCode("14", "Card validation failed - Luhn algorithm check", context.getStan());
                 sendErrorResponse(ctx, msg, "14"); // Invalid card number
                 return;
             }
@@ -76,11 +132,11 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             processPinTransposition(msg);
             
             // Process transaction and forward to bank if needed
-            processAndForwardTransaction(ctx, msg);
+            processAndForwardTransaction(ctx, context);
             
             switch (mti) {
                 case "0200": // Authorization Request
-                    handleAuthorizationRequest(ctx, msg);
+                    handleAuthorizationRequest(ctx, context);
                     break;
                 case "0220": // Authorization Advice
                     handleAuthorizationAdvice(ctx, msg);
@@ -95,7 +151,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                     handleNetworkManagement(ctx, msg);
                     break;
                 case "0100": // Authorization Request (ATM/POS)
-                    handlePosAuthorization(ctx, msg);
+                    handlePosAuthorization(ctx, context);
                     break;
                 default:
                     log.warn("Unsupported MTI: {}", mti);
@@ -104,21 +160,24 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
         } catch (Exception e) {
             log.error("Error processing message", e);
             handleError(ctx, msg, e);
+        } finally {
+            metrics.recordHandler(mti, System.nanoTime() - start);
         }
     }
     
     /**
      * Process transaction and forward to bank if required
      */
-    private void processAndForwardTransaction(ChannelHandlerContext ctx, ISOMsg msg) {
+    private void processAndForwardTransaction(ChannelHandlerContext ctx, MessageContext context) {
         try {
+            ISOMsg msg = context.getMessage();
             String mti = msg.getString(0);
-            String stan = msg.getString(11);
+            String stan = context.getStan();
             
             // Determine if transaction should be forwarded to bank
             if (shouldForwardToBank(mti)) {
-                maskedLogger.logSystemEvent("BANK_FORWARD", 
-                    String.format("Forwarding transaction STAN: %s to bank", stan));
+                maskedLogger.log(LogEvent.BANK_FORWARD, "Forwarding transaction STAN: {} card: {} ({}) to bank", 
+                    stan, context.getMaskedPan(), context.getCardType().getDisplayName());
                 
                 // Forward to bank asynchronously
                 CompletableFuture<ISOMsg> bankResponse = bankProcessor.processTransactionToBank(msg);
@@ -126,17 +185,15 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                 // Handle bank response (this will be processed asynchronously)
                 bankResponse.thenAccept(response -> {
                     if (response != null) {
-                        maskedLogger.logSystemEvent("BANK_RESPONSE", 
-                            String.format("Received bank response for STAN: %s", stan));
+                        maskedLogger.log(LogEvent.BANK_RESPONSE, "Received bank response for STAN: {}", stan);
                         // Bank response can be used for additional processing or logging
                     } else {
-                        maskedLogger.logSystemEvent("BANK_TIMEOUT", 
-                            String.format("Bank timeout for STAN: %s", stan));
+                        maskedLogger.log(LogEvent.BANK_TIMEOUT, "Bank timeout for STAN: {}", stan);
                     }
                 });
             }
         } catch (Exception e) {
-            maskedLogger.logError("BANK_FORWARD", "Error forwarding transaction to bank", e);
+            maskedLogger.log(LogEvent.BANK_FORWARD_ERROR, e, "Error forwarding transaction to bank");
         }
     }
     
@@ -156,8 +213,9 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
         }
     }
 
-    private void handleAuthorizationRequest(ChannelHandlerContext ctx, ISOMsg msg) {
+    private void handleAuthorizationRequest(ChannelHandlerContext ctx, MessageContext context) {
         log.info("Processing Authorization Request");
+        ISOMsg msg = context.getMessage();
         
         try {
             // Extract key fields
@@ -169,7 +227,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             String localDate = msg.getString(13);    // Local Transaction Date
             
             log.info("PAN: {}, Processing Code: {}, Amount: {}, STAN: {}", 
-                    maskPan(pan), processingCode, amount, stan);
+                    context.getMaskedPan(), processingCode, amount, stan);
             
             // Business logic based on processing code
             String responseCode = processTransaction(processingCode, amount, pan);
@@ -190,9 +248,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             response.set(37, generateRRN()); // Retrieval Reference Number
             response.set(38, generateAuthCode()); // Authorization Code (if approved)
             
-            // Log outgoing response with masked logging
-            maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
-            ctx.writeAndFlush(response);
+            sendResponse(ctx, response);
             
         } catch (Exception e) {
             log.error("Error handling authorization request", e);
@@ -200,8 +256,9 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
         }
     }
 
-    private void handlePosAuthorization(ChannelHandlerContext ctx, ISOMsg msg) {
+    private void handlePosAuthorization(ChannelHandlerContext ctx, MessageContext context) {
         log.info("Processing POS Authorization Request");
+        ISOMsg msg = context.getMessage();
         
         try {
             String processingCode = msg.getString(3);
@@ -222,9 +279,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                 response.set(38, generateAuthCode());
             }
             
-            // Log outgoing response with masked logging
-            maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
-            ctx.writeAndFlush(response);
+            sendResponse(ctx, response);
             
         } catch (Exception e) {
             log.error("Error handling POS authorization", e);
@@ -250,9 +305,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             copyRequestFields(msg, response);
             response.set(39, reversalSuccessful ? "00" : "12"); // Approved or Invalid Transaction
             
-            // Log outgoing response with masked logging
-            maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
-            ctx.writeAndFlush(response);
+            sendResponse(ctx, response);
             
         } catch (Exception e) {
             log.error("Error handling reversal request", e);
@@ -338,9 +391,7 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                     response.set(39, "12"); // Invalid Transaction
             }
             
-            // Log outgoing response with masked logging
-            maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
-            ctx.writeAndFlush(response);
+            sendResponse(ctx, response);
             
         } catch (Exception e) {
             log.error("Error handling network management", e);
@@ -381,9 +432,8 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                 // Log success response
                 responseCodeService.logResponseCode("00", "Key change successful", request.getString(11));
                 
-                maskedLogger.logSystemEvent("KEY_CHANGE_SUCCESS", 
-                    String.format("Terminal %s key change completed - Key ID: %s, Masked: %s", 
-                                terminalId, result.getTerminalKey().getKeyId(), maskedKey));
+                maskedLogger.log(LogEvent.KEY_CHANGE_SUCCESS, "Terminal {} key change completed - Key ID: {}, Masked: {}", 
+                                terminalId, result.getTerminalKey().getKeyId(), maskedKey);
                                 
             } else {
                 // Key change failed
@@ -396,16 +446,14 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                     String.format("Key change failed for terminal %s: %s", terminalId, result.getMessage()), 
                     request.getString(11));
                 
-                maskedLogger.logError("KEY_CHANGE_FAILED", 
-                    String.format("Terminal %s key change failed: %s", terminalId, result.getMessage()), null);
+                maskedLogger.log(LogEvent.KEY_CHANGE_FAILED, "Terminal {} key change failed: {}", terminalId, result.getMessage());
             }
 
         } catch (Exception e) {
             log.error("Error processing key change for Terminal {}: {}", terminalId, e.getMessage(), e);
             response.set(39, "96"); // System error
             
-            maskedLogger.logError("KEY_CHANGE_ERROR", 
-                String.format("Key change error for Terminal %s", terminalId), e);
+            maskedLogger.log(LogEvent.KEY_CHANGE_ERROR, e, "Key change error for Terminal {}", terminalId);
         }
     }
 
@@ -561,6 +609,15 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
         }
     }
 
+    /**
+     * Log a response, count its response code and write it to the terminal
+     */
+    private void sendResponse(ChannelHandlerContext ctx, ISOMsg response) {
+        maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
+        metrics.recordResponse(response.getString(39));
+        ctx.writeAndFlush(response);
+    }
+    
     private void sendErrorResponse(ChannelHandlerContext ctx, ISOMsg request, String responseCode) {
         try {
             String requestMti = request.getString(0);
@@ -572,34 +629,27 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             copyRequestFields(request, response);
             response.set(39, responseCode);
             
-            // Log error response with detailed narration
-            String responseMessage = responseCodeService.formatResponseMessage(responseCode, terminalId, stan);
+            // Log error response with detailed narration, at a level matching its severity
             ResponseCodeService.ResponseCodeInfo codeInfo = responseCodeService.getResponseCodeInfo(responseCode);
-            
-            // Log based on severity
+            LogEvent event;
             switch (codeInfo.getSeverity()) {
                 case ERROR:
-                    log.error("ERROR RESPONSE: {}", responseMessage);
-                    maskedLogger.logError("ERROR_RESPONSE", responseMessage, null);
+                    event = LogEvent.ERROR_RESPONSE;
                     break;
                 case WARN:
-                    log.warn("WARNING RESPONSE: {}", responseMessage);
-                    maskedLogger.logSystemEvent("WARNING_RESPONSE", responseMessage);
+                    event = LogEvent.WARNING_RESPONSE;
                     break;
                 default:
-                    log.info("RESPONSE: {}", responseMessage);
-                    maskedLogger.logSystemEvent("RESPONSE", responseMessage);
+                    event = LogEvent.RESPONSE;
                     break;
             }
+            maskedLogger.log(event, "Response [{}]: {} | MTI: {} | Terminal: {} | STAN: {}", 
+                responseCode, codeInfo.getDescription(), requestMti, terminalId, stan);
             
             // Log response code details for analysis
-            responseCodeService.logResponseCode(responseCode, 
-                String.format("Error response for MTI %s from terminal %s", requestMti, terminalId), 
-                stan);
+            responseCodeService.logResponseCode(responseCode, "Error response", stan);
             
-            // Log outgoing error response with masked logging
-            maskedLogger.logOutgoingTransaction(response, "POS_TERMINAL");
-            ctx.writeAndFlush(response);
+            sendResponse(ctx, response);
             
         } catch (Exception e) {
             log.error("Error sending error response", e);
@@ -627,11 +677,6 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
         return String.format("%06d", (int) (Math.random() * 1000000));
     }
 
-    private String maskPan(String pan) {
-        if (pan == null || pan.length() < 8) return "****";
-        return pan.substring(0, 4) + "****" + pan.substring(pan.length() - 4);
-    }
-    
     /**
      * Process PIN transposition from POS Terminal key to Gateway Zonal key
      * This is called for all incoming transactions that contain PIN data (field 52)
@@ -651,14 +696,16 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             }
             
             // Get required fields for PIN transposition
-            String encryptedPinBlock = msg.getString(52);
-            String pan = msg.getString(2); // Primary Account Number
+            // Field 52 is binary on the POS side; a hex value set by earlier processing is decoded
+            byte[] encryptedPinBlock = msg.getComponent(52) instanceof ISOBinaryField
+                ? msg.getBytes(52) : ISOUtil.hex2byte(msg.getString(52));
+            byte[] pan = msg.getBytes(2); // Primary Account Number
             String terminalId = msg.getString(41); // Terminal ID
             
             // Validate required fields
-            if (pan == null || pan.isEmpty()) {
+            if (pan == null || pan.length == 0) {
                 log.warn("Cannot transpose PIN: PAN (field 2) is missing");
-                maskedLogger.logError("PIN_TRANSPOSE", "PAN missing for PIN transposition", null);
+                maskedLogger.log(LogEvent.PIN_TRANSPOSE_SKIPPED, "PAN missing for PIN transposition");
                 return;
             }
             
@@ -670,26 +717,25 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             // Validate PIN block
             if (!pinTranspositionService.validatePinBlock(encryptedPinBlock, pan)) {
                 log.warn("Invalid PIN block format, skipping transposition");
-                maskedLogger.logError("PIN_TRANSPOSE", "Invalid PIN block format", null);
+                maskedLogger.log(LogEvent.PIN_TRANSPOSE_SKIPPED, "Invalid PIN block format");
                 return;
             }
             
             log.debug("Starting PIN transposition for terminal: {}", terminalId);
             
             // Transpose PIN from terminal key to gateway zonal key
-            String transposedPinBlock = pinTranspositionService.transposePinToGatewayKey(
+            byte[] transposedPinBlock = pinTranspositionService.transposePinToGatewayKey(
                 encryptedPinBlock, pan, terminalId);
             
             // Update the message with transposed PIN block
             msg.set(52, transposedPinBlock);
             
             log.debug("PIN transposition completed successfully for terminal: {}", terminalId);
-            maskedLogger.logSystemEvent("PIN_TRANSPOSE_SUCCESS", 
-                String.format("PIN transposed successfully for terminal: %s", terminalId));
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_SUCCESS, "PIN transposed successfully for terminal: {}", terminalId);
             
         } catch (Exception e) {
             log.error("Error during PIN transposition", e);
-            maskedLogger.logError("PIN_TRANSPOSE_ERROR", "PIN transposition failed", e);
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_ERROR, e, "PIN transposition failed");
             
             // For security reasons, we might want to reject the transaction if PIN transposition fails
             // This depends on business requirements
@@ -713,10 +759,11 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                 return;
             }
             
-            String gatewayPinBlock = msg.getString(52);
-            String pan = msg.getString(2);
+            byte[] gatewayPinBlock = msg.getComponent(52) instanceof ISOBinaryField
+                ? msg.getBytes(52) : ISOUtil.hex2byte(msg.getString(52));
+            byte[] pan = msg.getBytes(2);
             
-            if (pan == null || pan.isEmpty()) {
+            if (pan == null || pan.length == 0) {
                 log.warn("Cannot transpose PIN for bank: PAN is missing");
                 return;
             }
@@ -724,29 +771,28 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
             log.debug("Starting PIN transposition to bank key for bank: {}", bankId);
             
             // Transpose PIN from gateway zonal key to bank key
-            String bankPinBlock = pinTranspositionService.transposePinToBankKey(
+            byte[] bankPinBlock = pinTranspositionService.transposePinToBankKey(
                 gatewayPinBlock, pan, bankId);
             
             // Update message with bank PIN block
             msg.set(52, bankPinBlock);
             
             log.debug("Bank PIN transposition completed for bank: {}", bankId);
-            maskedLogger.logSystemEvent("BANK_PIN_TRANSPOSE_SUCCESS", 
-                String.format("PIN transposed to bank key for bank: %s", bankId));
+            maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_SUCCESS, "PIN transposed to bank key for bank: {}", bankId);
             
         } catch (Exception e) {
             log.error("Error during bank PIN transposition for bank: {}", bankId, e);
-            maskedLogger.logError("BANK_PIN_TRANSPOSE_ERROR", 
-                String.format("Bank PIN transposition failed for bank: %s", bankId), e);
+            maskedLogger.log(LogEvent.BANK_PIN_TRANSPOSE_ERROR, e, "Bank PIN transposition failed for bank: {}", bankId);
             throw new RuntimeException("Bank PIN transposition failed", e);
         }
     }
     
     /**
      * Validate card number using Luhn algorithm
-     * This is called for all incoming transactions to ensure card number validity
+     * This is called for all incoming transactions to ensure card number validity;
+     * the result is stored in the message context for the later stages
      */
-    private boolean validateCardNumber(ISOMsg msg) {
+    private boolean validateCardNumber(MessageContext context) {
         try {
             // Check if card validation is enabled
             if (!enableCardValidation) {
@@ -754,52 +800,36 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
                 return true; // Skip validation if disabled
             }
             
+            ISOMsg msg = context.getMessage();
+            
             // Check if message contains PAN (field 2)
             if (!msg.hasField(2)) {
                 log.warn("Message does not contain PAN (field 2)");
-                maskedLogger.logError("CARD_VALIDATION", "PAN missing for card validation", null);
+                maskedLogger.log(LogEvent.CARD_PAN_MISSING, "PAN missing for card validation");
                 return false;
             }
             
-            String pan = msg.getString(2);
-            String stan = msg.getString(11); // System Trace Audit Number for logging
-            String terminalId = msg.getString(41); // Terminal ID
-            
-            // Create transaction ID for logging
-            String transactionId = String.format("%s-%s", 
-                terminalId != null ? terminalId : "UNKNOWN", 
-                stan != null ? stan : "000000");
-            
+            String transactionId = context.getTransactionId();
             log.debug("Validating card number for transaction: {}", transactionId);
             
-            // Validate card using Luhn algorithm and card type detection
-            boolean isValid = cardValidationService.validateCardForTransaction(pan, transactionId);
+            // Validate card using Luhn algorithm and card type detection; the service logs the outcome
+            long start = System.nanoTime();
+            CardValidationService.CardValidationResult result = 
+                cardValidationService.validateCard(msg.getString(2), transactionId);
+            metrics.recordCardValidation(System.nanoTime() - start);
+            context.setCardResult(result);
             
-            if (isValid) {
+            if (result.isValid()) {
                 log.debug("Card validation successful for transaction: {}", transactionId);
-                
-                // Get additional card information for enhanced logging
-                CardValidationService.CardValidationResult result = cardValidationService.validateCard(pan);
-                maskedLogger.logSystemEvent("CARD_VALIDATION_SUCCESS", 
-                    String.format("Transaction %s - Card validated: %s (%s)", 
-                    transactionId, result.getMaskedPan(), result.getCardType().getDisplayName()));
-                
                 return true;
             } else {
                 log.warn("Card validation failed for transaction: {}", transactionId);
-                
-                // Get detailed validation result for error logging
-                CardValidationService.CardValidationResult result = cardValidationService.validateCard(pan);
-                maskedLogger.logError("CARD_VALIDATION_FAILED", 
-                    String.format("Transaction %s - Invalid card: %s - %s", 
-                    transactionId, result.getMaskedPan(), result.getErrorMessage()), null);
-                
                 return false;
             }
             
         } catch (Exception e) {
             log.error("Error during card validation", e);
-            maskedLogger.logError("CARD_VALIDATION_ERROR", "Card validation processing error", e);
+            maskedLogger.log(LogEvent.CARD_VALIDATION_ERROR, e, "Card validation processing error");
             
             // For security reasons, reject transaction if validation fails due to error
             return false;
@@ -810,48 +840,46 @@ public class IsoServerHandler extends SimpleChannelInboundHandler<ISOMsg> {
      * Validate card number for specific transaction types
      * Some transaction types may have different validation requirements
      */
-    private boolean validateCardForTransactionType(ISOMsg msg, String mti) {
-        // Basic card validation first
-        if (!validateCardNumber(msg)) {
+    private boolean validateCardForTransactionType(MessageContext context, String mti) {
+        // Basic card validation first, unless it already ran for this message
+        if (context.getCardResult() == null && !validateCardNumber(context)) {
             return false;
         }
         
-        try {
-            String pan = msg.getString(2);
-            CardValidationService.CardValidationResult result = cardValidationService.validateCard(pan);
-            
-            // Additional validation based on transaction type
-            switch (mti) {
-                case "0100": // Authorization Request (ATM/POS)
-                case "0200": // Financial Request
-                    // For financial transactions, ensure card type is supported
-                    if (result.getCardType() == CardValidationService.CardType.UNKNOWN) {
-                        log.warn("Unsupported card type for financial transaction: {}", result.getMaskedPan());
-                        maskedLogger.logError("CARD_TYPE_UNSUPPORTED", 
-                            String.format("Unsupported card type for transaction: %s", result.getMaskedPan()), null);
-                        return false;
-                    }
-                    break;
-                    
-                case "0400": // Reversal Request
-                    // For reversals, basic validation is sufficient
-                    break;
-                    
-                case "0800": // Network Management
-                    // Network management may not require card validation
-                    return true;
-                    
-                default:
-                    // Unknown MTI - apply standard validation
-                    break;
-            }
-            
-            return true;
-            
-        } catch (Exception e) {
-            log.error("Error in transaction-specific card validation", e);
+        CardValidationService.CardValidationResult result = context.getCardResult();
+        if (result == null) {
+            return true; // Card validation is disabled
+        }
+        if (!result.isValid()) {
             return false;
         }
+        
+        // Additional validation based on transaction type
+        switch (mti) {
+            case "0100": // Authorization Request (ATM/POS)
+            case "0200": // Financial Request
+                // For financial transactions, ensure card type is supported
+                if (result.getCardType() == CardValidationService.CardType.UNKNOWN) {
+                    log.warn("Unsupported card type for financial transaction: {}", result.getMaskedPan());
+                    maskedLogger.log(LogEvent.CARD_TYPE_UNSUPPORTED, "Unsupported card type for transaction: {}", result.getMaskedPan());
+                    return false;
+                }
+                break;
+                
+            case "0400": // Reversal Request
+                // For reversals, basic validation is sufficient
+                break;
+                
+            case "0800": // Network Management
+                // Network management may not require card validation
+                return true;
+                
+            default:
+                // Unknown MTI - apply standard validation
+                break;
+        }
+        
+        return true;
     }
 
     // Removed - replaced with MaskedLogger functionality
@@ -0,0 +1,112 @@
+package com.kevshake.gateway.components;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+/**
+ * Event codes written by MaskedLogger
+ * Each code has a fixed level and goes either to the transaction log or to the bank
+ * communication log; the code is attached as a marker and printed before the message.
+ * Per-message progress events are DEBUG, so at the default INFO level their arguments
+ * are never formatted
+ */
+public enum LogEvent {
+    // Server and component lifecycle
+    SERVER_START(Level.INFO),
+    SERVER_START_FAILED(Level.ERROR),
+    SERVER_STOP(Level.INFO),
+    Q2_START(Level.INFO),
+    Q2_START_FAILED(Level.ERROR),
+    Q2_STOP(Level.INFO),
+    Q2_STOP_FAILED(Level.ERROR),
+    PROCESSING_STAGE_START(Level.INFO),
+    PROCESSING_STAGE_STOP(Level.INFO),
+    BANK_PROCESSOR_INIT(Level.INFO),
+    BANK_PROCESSOR_INIT_FAILED(Level.ERROR),
+    BANK_PROCESSOR_SHUTDOWN(Level.INFO),
+
+    // Transaction flow
+    BANK_FORWARD(Level.DEBUG),
+    BANK_FORWARD_ERROR(Level.ERROR),
+    BANK_RESPONSE(Level.DEBUG),
+    BANK_TIMEOUT(Level.WARN),
+    BANK_TRANSACTION_FAILED(Level.ERROR),
+    BANK_STAND_IN_FAILED(Level.ERROR),
+    TRANSACTION_RESULT(Level.INFO),
+    RESPONSE(Level.INFO),
+    WARNING_RESPONSE(Level.WARN),
+    ERROR_RESPONSE(Level.ERROR),
+
+    // Card validation
+    CARD_VALIDATION_SUCCESS(Level.DEBUG),
+    CARD_VALIDATION_FAILED(Level.WARN),
+    CARD_VALIDATION_ERROR(Level.ERROR),
+    CARD_PAN_MISSING(Level.ERROR),
+    CARD_TYPE_UNSUPPORTED(Level.ERROR),
+    TXN_CARD_VALIDATION_SUCCESS(Level.DEBUG),
+    TXN_CARD_VALIDATION_FAILED(Level.WARN),
+    LUHN_TEST_SUCCESS(Level.INFO),
+    LUHN_TEST_FAILED(Level.WARN),
+
+    // PIN handling
+    PIN_TRANSPOSE_START(Level.DEBUG),
+    PIN_TRANSPOSE_SUCCESS(Level.DEBUG),
+    PIN_TRANSPOSE_SKIPPED(Level.ERROR),
+    PIN_TRANSPOSE_ERROR(Level.ERROR),
+    PIN_TRANSPOSE_BANK_START(Level.DEBUG),
+    PIN_TRANSPOSE_BANK_SUCCESS(Level.DEBUG),
+    PIN_TRANSPOSE_BANK_ERROR(Level.ERROR),
+    BANK_PIN_TRANSPOSE_SUCCESS(Level.DEBUG),
+    BANK_PIN_TRANSPOSE_SKIPPED(Level.ERROR),
+    BANK_PIN_TRANSPOSE_ERROR(Level.ERROR),
+    PIN_VERIFY_SUCCESS(Level.DEBUG),
+    PIN_VERIFY_FAILED(Level.WARN),
+    PIN_VERIFY_ERROR(Level.ERROR),
+    KCV_GENERATION_ERROR(Level.ERROR),
+
+    // Terminal key management
+    KEY_CHANGE_SUCCESS(Level.INFO),
+    KEY_CHANGE_FAILED(Level.ERROR),
+    KEY_CHANGE_ERROR(Level.ERROR),
+
+    // Bank communication log
+    CONNECT(Level.INFO, true),
+    CONNECT_FAILED(Level.WARN, true),
+    DISCONNECT(Level.WARN, true),
+    CONNECTION_ERROR(Level.ERROR, true),
+    UNHANDLED(Level.WARN, true),
+    SEND_SUCCESS(Level.DEBUG, true),
+    SEND_RETRY(Level.WARN, true),
+    SEND_FAILED(Level.ERROR, true),
+    REVERSAL_REQUIRED(Level.WARN, true),
+    CIRCUIT_OPEN(Level.WARN, true),
+    CIRCUIT_CLOSED(Level.INFO, true),
+    CIRCUIT_PROBE_FAILED(Level.WARN, true),
+    BANK_SUCCESS_RESPONSE(Level.INFO, true),
+    BANK_WARNING_RESPONSE(Level.WARN, true),
+    BANK_ERROR_RESPONSE(Level.ERROR, true),
+    BANK_RESPONSE_ANALYSIS(Level.DEBUG, true);
+
+    private final Level level;
+    private final boolean bank;
+    private final Marker marker;
+
+    LogEvent(Level level) {
+        this(level, false);
+    }
+
+    LogEvent(Level level, boolean bank) {
+        this.level = level;
+        this.bank = bank;
+        this.marker = MarkerManager.getMarker(name());
+    }
+
+    public Level getLevel() { return level; }
+    public Marker getMarker() { return marker; }
+
+    /**
+     * True for events written to the bank communication log
+     */
+    public boolean isBankCommunication() { return bank; }
+}
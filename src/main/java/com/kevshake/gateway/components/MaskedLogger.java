@@ -3,192 +3,152 @@ package com.kevshake.gateway.components;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jpos.iso.ISOMsg;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 /**
  * Utility class for masked logging of ISO8583 messages
- * Ensures sensitive data is masked in logs for security compliance
+ * Ensures sensitive data is masked in logs for security compliance.
+ * Each message is logged as one line rendered by MaskedRecordFormatter into a pooled
+ * StringBuilder; Log4j2 async loggers (log4j2.component.properties) write it to the appenders.
+ * Messages also go to the binary TransactionEventLog when it is enabled.
+ * Other events are logged by LogEvent code, at the level the code defines, with parameterized
+ * or supplier variants so nothing is formatted for events the configured level drops
  */
 @Component
 public class MaskedLogger {
     private static final Logger logger = LogManager.getLogger(MaskedLogger.class);
     
-    // Fields that should be masked in logs for security
-    private static final Set<Integer> SENSITIVE_FIELDS = new HashSet<>(Arrays.asList(
-        2,   // PAN (Primary Account Number)
-        14,  // Expiration Date
-        35,  // Track 2 Data
-        45,  // Track 1 Data
-        55,  // EMV Data
-        120, // Additional POS Data
-        126  // Private Use Fields
-    ));
-    
-    // Fields that should be partially masked (show first/last few characters)
-    private static final Set<Integer> PARTIALLY_MASKED_FIELDS = new HashSet<>(Arrays.asList(
-        37,  // Retrieval Reference Number
-        41,  // Terminal ID
-        42   // Merchant ID
-    ));
+    @Autowired
+    private TransactionEventLog eventLog;
+    private static final Logger bankLogger = LogManager.getLogger("com.kevshake.gateway.components.BankCommunicationProcessor");
+    
+    // Builders larger than this are not returned to the pool
+    private static final int MAX_POOLED_CAPACITY = 16 * 1024;
+    
+    // Reusable line builders; works the same on pooled and virtual processing threads
+    private final AtomicReferenceArray<StringBuilder> builders = 
+        new AtomicReferenceArray<>(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
     
     /**
      * Log incoming transaction with masked sensitive fields
      */
     public void logIncomingTransaction(ISOMsg msg, String source) {
-        try {
-            logger.info("=== INCOMING TRANSACTION FROM {} ===", source);
-            logger.info("MTI: {}", msg.getString(0));
-            logMaskedFields(msg);
-            logger.info("=== END INCOMING TRANSACTION ===");
-        } catch (Exception e) {
-            logger.error("Error logging incoming transaction", e);
-        }
+        eventLog.append(true, source, msg);
+        logMessage("IN", source, msg);
     }
     
     /**
      * Log outgoing transaction with masked sensitive fields
      */
     public void logOutgoingTransaction(ISOMsg msg, String destination) {
+        eventLog.append(false, destination, msg);
+        logMessage("OUT", destination, msg);
+    }
+    
+    private void logMessage(String direction, String peer, ISOMsg msg) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = acquireBuilder();
         try {
-            logger.info("=== OUTGOING TRANSACTION TO {} ===", destination);
-            logger.info("MTI: {}", msg.getString(0));
-            logMaskedFields(msg);
-            logger.info("=== END OUTGOING TRANSACTION ===");
+            MaskedRecordFormatter.format(line, direction, peer, msg);
+            // The async logger copies the text before this builder is reused
+            logger.info(line);
         } catch (Exception e) {
-            logger.error("Error logging outgoing transaction", e);
+            logger.error("Error logging {} transaction", direction, e);
+        } finally {
+            releaseBuilder(line);
         }
     }
     
-    /**
-     * Log transaction processing result
-     */
-    public void logTransactionResult(String stan, String responseCode, String description) {
-        logger.info("Transaction STAN: {} - Response: {} - {}", stan, responseCode, description);
-    }
-    
-    /**
-     * Log bank communication event
-     */
-    public void logBankCommunication(String event, String details) {
-        Logger bankLogger = LogManager.getLogger("com.kevshake.gateway.components.BankCommunicationProcessor");
-        bankLogger.info("Bank Communication - {}: {}", event, details);
-    }
-    
-    /**
-     * Log all message fields with appropriate masking
-     */
-    private void logMaskedFields(ISOMsg msg) {
-        try {
-            for (int i = 1; i <= 128; i++) {
-                if (msg.hasField(i)) {
-                    String value = msg.getString(i);
-                    String maskedValue = maskFieldValue(i, value);
-                    logger.info("Field {}: {}", String.format("%03d", i), maskedValue);
-                }
+    private StringBuilder acquireBuilder() {
+        int mask = builders.length() - 1;
+        int start = System.identityHashCode(Thread.currentThread());
+        for (int i = 0; i < 4; i++) {
+            StringBuilder builder = builders.getAndSet((start + i) & mask, null);
+            if (builder != null) {
+                return builder;
             }
-        } catch (Exception e) {
-            logger.error("Error logging masked fields", e);
         }
+        return new StringBuilder(512);
     }
     
-    /**
-     * Mask field value based on field type and security requirements
-     */
-    private String maskFieldValue(int fieldNumber, String value) {
-        if (value == null || value.isEmpty()) {
-            return "null";
+    private void releaseBuilder(StringBuilder builder) {
+        if (builder.capacity() > MAX_POOLED_CAPACITY) {
+            return;
         }
-        
-        if (SENSITIVE_FIELDS.contains(fieldNumber)) {
-            return maskSensitiveField(fieldNumber, value);
-        } else if (PARTIALLY_MASKED_FIELDS.contains(fieldNumber)) {
-            return maskPartialField(value);
-        } else {
-            return value; // No masking needed
+        builder.setLength(0);
+        int mask = builders.length() - 1;
+        int start = System.identityHashCode(Thread.currentThread());
+        for (int i = 0; i < 4; i++) {
+            if (builders.compareAndSet((start + i) & mask, null, builder)) {
+                return;
+            }
         }
     }
     
     /**
-     * Completely mask sensitive fields
+     * Whether an event would be written at the configured level
      */
-    private String maskSensitiveField(int fieldNumber, String value) {
-        switch (fieldNumber) {
-            case 2: // PAN - show first 4 and last 4 digits
-                return maskPan(value);
-            case 14: // Expiration Date - mask completely
-                return "****";
-            case 35: // Track 2 Data - mask completely except separator
-                return maskTrack2Data(value);
-            default:
-                return "*".repeat(Math.min(value.length(), 20)); // Mask with asterisks
-        }
+    public boolean isEnabled(LogEvent event) {
+        return target(event).isEnabled(event.getLevel(), event.getMarker());
     }
     
     /**
-     * Partially mask fields (show first/last few characters)
+     * Log an event with a constant message
      */
-    private String maskPartialField(String value) {
-        if (value.length() <= 4) {
-            return "*".repeat(value.length());
-        } else if (value.length() <= 8) {
-            return value.substring(0, 2) + "*".repeat(value.length() - 4) + value.substring(value.length() - 2);
-        } else {
-            return value.substring(0, 3) + "*".repeat(value.length() - 6) + value.substring(value.length() - 3);
-        }
+    public void log(LogEvent event, String message) {
+        target(event).log(event.getLevel(), event.getMarker(), message);
     }
     
     /**
-     * Mask PAN showing first 4 and last 4 digits
+     * Log an event; {} placeholders in the pattern are only filled in if the event is enabled
      */
-    private String maskPan(String pan) {
-        if (pan == null || pan.length() < 8) {
-            return "****";
-        }
-        return pan.substring(0, 4) + "*".repeat(pan.length() - 8) + pan.substring(pan.length() - 4);
+    public void log(LogEvent event, String pattern, Object arg) {
+        target(event).log(event.getLevel(), event.getMarker(), pattern, arg);
+    }
+    
+    public void log(LogEvent event, String pattern, Object arg1, Object arg2) {
+        target(event).log(event.getLevel(), event.getMarker(), pattern, arg1, arg2);
+    }
+    
+    public void log(LogEvent event, String pattern, Object arg1, Object arg2, Object arg3) {
+        target(event).log(event.getLevel(), event.getMarker(), pattern, arg1, arg2, arg3);
+    }
+    
+    public void log(LogEvent event, String pattern, Object arg1, Object arg2, Object arg3, Object arg4) {
+        target(event).log(event.getLevel(), event.getMarker(), pattern, arg1, arg2, arg3, arg4);
+    }
+    
+    public void log(LogEvent event, String pattern, Object... args) {
+        target(event).log(event.getLevel(), event.getMarker(), pattern, args);
     }
     
     /**
-     * Mask Track 2 data while preserving structure
+     * Log an event whose text is costly to build; the supplier is only called if the event is enabled
      */
-    private String maskTrack2Data(String track2) {
-        if (track2 == null || track2.isEmpty()) {
-            return "****";
-        }
-        
-        // Find separator (usually '=' or 'D')
-        int separatorIndex = -1;
-        for (int i = 0; i < track2.length(); i++) {
-            char c = track2.charAt(i);
-            if (c == '=' || c == 'D' || c == 'd') {
-                separatorIndex = i;
-                break;
-            }
-        }
-        
-        if (separatorIndex > 0) {
-            String pan = track2.substring(0, separatorIndex);
-            String remaining = track2.substring(separatorIndex);
-            return maskPan(pan) + remaining.charAt(0) + "*".repeat(remaining.length() - 1);
-        } else {
-            return "*".repeat(Math.min(track2.length(), 20));
+    public void log(LogEvent event, Supplier<String> details) {
+        Logger target = target(event);
+        if (target.isEnabled(event.getLevel(), event.getMarker())) {
+            target.log(event.getLevel(), event.getMarker(), details.get());
         }
     }
     
     /**
-     * Log system events
+     * Log an event with the exception that caused it, if any
      */
-    public void logSystemEvent(String event, String details) {
-        logger.info("System Event - {}: {}", event, details);
+    public void log(LogEvent event, Throwable error, String pattern, Object... args) {
+        target(event).atLevel(event.getLevel())
+            .withMarker(event.getMarker())
+            .withThrowable(error)
+            .log(pattern, args);
     }
     
-    /**
-     * Log errors with context
-     */
-    public void logError(String operation, String context, Exception e) {
-        logger.error("Error in {} - Context: {} - Error: {}", operation, context, e.getMessage(), e);
+    private static Logger target(LogEvent event) {
+        return event.isBankCommunication() ? bankLogger : logger;
     }
 }
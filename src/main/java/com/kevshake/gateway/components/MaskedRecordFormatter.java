@@ -0,0 +1,259 @@
+package com.kevshake.gateway.components;
+
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOMsg;
+
+import com.kevshake.gateway.packagers.FrameField;
+
+/**
+ * Renders an ISO8583 message as one masked log line, e.g.
+ * <pre>
+ * IN POS_TERMINAL MTI=0200 002=4761********0010 003=000000 011=000123 041=TER**001
+ * </pre>
+ * Fields are read as components, without the String copies getString makes of binary fields.
+ * Masking is chosen from a per-field policy table and written straight into the caller's
+ * StringBuilder; no per-field Strings are created for text fields. Fields of a lazily unpacked
+ * message that have not been read yet are masked from their received bytes and stay undecoded
+ */
+final class MaskedRecordFormatter {
+
+    // Masking policies
+    static final byte CLEAR = 0;
+    static final byte PAN = 1;        // first 4 and last 4 digits
+    static final byte HIDDEN = 2;     // asterisks, at most 20
+    static final byte EXPIRY = 3;     // always ****
+    static final byte TRACK = 4;      // PAN masked, separator kept, rest hidden
+    static final byte PARTIAL = 5;    // first and last 2 or 3 characters
+
+    private static final int MAX_FIELD = 128;
+    private static final byte[] POLICY = new byte[MAX_FIELD + 1];
+    private static final String[] LABELS = new String[MAX_FIELD + 1];
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[1024]);
+
+    static {
+        POLICY[2] = PAN;          // Primary Account Number
+        POLICY[14] = EXPIRY;      // Expiration Date
+        POLICY[35] = TRACK;       // Track 2 Data
+        POLICY[45] = HIDDEN;      // Track 1 Data
+        POLICY[52] = HIDDEN;      // PIN Data
+        POLICY[55] = HIDDEN;      // EMV Data
+        POLICY[120] = HIDDEN;     // Additional POS Data
+        POLICY[126] = HIDDEN;     // Private Use Fields
+        POLICY[37] = PARTIAL;     // Retrieval Reference Number
+        POLICY[41] = PARTIAL;     // Terminal ID
+        POLICY[42] = PARTIAL;     // Merchant ID
+
+        for (int i = 0; i <= MAX_FIELD; i++) {
+            LABELS[i] = String.format(" %03d=", i);
+        }
+    }
+
+    private MaskedRecordFormatter() {
+    }
+
+    /**
+     * Append the masked line for a message
+     *
+     * @param direction e.g. IN or OUT
+     * @param peer the source or destination, e.g. POS_TERMINAL or BANK
+     */
+    static void format(StringBuilder out, String direction, String peer, ISOMsg msg) {
+        out.append(direction).append(' ').append(peer).append(" MTI=").append(msg.getString(0));
+        int maxField = Math.min(msg.getMaxField(), MAX_FIELD);
+        for (int field = 1; field <= maxField; field++) {
+            ISOComponent component = msg.getComponent(field);
+            if (component == null) {
+                continue;
+            }
+            out.append(LABELS[field]);
+            appendMaskedValue(out, field, component);
+        }
+    }
+
+    /**
+     * Append the value of one field, masked according to its policy
+     */
+    static void appendMaskedValue(StringBuilder out, int field, ISOComponent component) {
+        if (component instanceof FrameField && !((FrameField) component).isMaterialized()) {
+            FrameField frameField = (FrameField) component;
+            if (component instanceof ISOBinaryField) {
+                appendMasked(out, POLICY[field], frameField);
+            } else {
+                appendMasked(out, POLICY[field], new FrameChars(frameField));
+            }
+            return;
+        }
+        Object value;
+        try {
+            value = component.getValue();
+        } catch (Exception e) {
+            value = null;
+        }
+        if (value instanceof String) {
+            appendMasked(out, POLICY[field], (String) value);
+        } else if (value instanceof byte[]) {
+            appendMasked(out, POLICY[field], (byte[]) value);
+        } else {
+            out.append("null");
+        }
+    }
+
+    private static void appendMasked(StringBuilder out, byte policy, CharSequence value) {
+        int length = value.length();
+        if (length == 0) {
+            out.append("null");
+            return;
+        }
+        switch (policy) {
+            case PAN:
+                appendPan(out, value, 0, length);
+                break;
+            case HIDDEN:
+                stars(out, Math.min(length, 20));
+                break;
+            case EXPIRY:
+                out.append("****");
+                break;
+            case TRACK:
+                appendTrack(out, value);
+                break;
+            case PARTIAL:
+                if (length <= 4) {
+                    stars(out, length);
+                } else {
+                    int shown = length <= 8 ? 2 : 3;
+                    append(out, value, 0, shown);
+                    stars(out, length - 2 * shown);
+                    append(out, value, length - shown, length);
+                }
+                break;
+            default:
+                append(out, value, 0, length);
+        }
+    }
+
+    /**
+     * Binary fields are shown in hex unless the policy masks them
+     */
+    private static void appendMasked(StringBuilder out, byte policy, byte[] value) {
+        if (value.length == 0) {
+            out.append("null");
+        } else if (policy == CLEAR) {
+            for (byte b : value) {
+                out.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+            }
+        } else {
+            stars(out, Math.min(value.length * 2, 20));
+        }
+    }
+
+    /**
+     * Binary frame field, as appendMasked(byte[]) without copying the bytes out of the frame
+     */
+    private static void appendMasked(StringBuilder out, byte policy, FrameField value) {
+        int length = value.valueLength();
+        if (length == 0) {
+            out.append("null");
+        } else if (policy == CLEAR) {
+            for (int i = 0; i < length; i++) {
+                byte b = value.valueAt(i);
+                out.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+            }
+        } else {
+            stars(out, Math.min(length * 2, 20));
+        }
+    }
+
+    private static void appendPan(StringBuilder out, CharSequence value, int start, int end) {
+        int length = end - start;
+        if (length < 8) {
+            out.append("****");
+            return;
+        }
+        append(out, value, start, start + 4);
+        stars(out, length - 8);
+        append(out, value, end - 4, end);
+    }
+
+    private static void appendTrack(StringBuilder out, CharSequence track) {
+        int separator = -1;
+        for (int i = 0; i < track.length(); i++) {
+            char c = track.charAt(i);
+            if (c == '=' || c == 'D' || c == 'd') {
+                separator = i;
+                break;
+            }
+        }
+        if (separator > 0) {
+            appendPan(out, track, 0, separator);
+            out.append(track.charAt(separator));
+            stars(out, track.length() - separator - 1);
+        } else {
+            stars(out, Math.min(track.length(), 20));
+        }
+    }
+
+    private static void append(StringBuilder out, CharSequence value, int start, int end) {
+        if (value instanceof FrameChars) {
+            // Copied through a per-thread buffer so appending stays a bulk copy
+            FrameChars chars = (FrameChars) value;
+            int length = end - start;
+            char[] buffer = SCRATCH.get();
+            if (buffer.length < length) {
+                buffer = new char[length];
+                SCRATCH.set(buffer);
+            }
+            chars.field.getChars(chars.start + start, chars.start + end, buffer, 0);
+            out.append(buffer, 0, length);
+        } else {
+            out.append(value, start, end);
+        }
+    }
+
+    private static void stars(StringBuilder out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append('*');
+        }
+    }
+
+    /**
+     * ISO-8859-1 view of a text frame field's received bytes
+     */
+    private static final class FrameChars implements CharSequence {
+        private final FrameField field;
+        private final int start;
+        private final int end;
+
+        FrameChars(FrameField field) {
+            this(field, 0, field.valueLength());
+        }
+
+        private FrameChars(FrameField field, int start, int end) {
+            this.field = field;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (field.valueAt(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new FrameChars(field, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(this).toString();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.kevshake.gateway.components;
+
+import org.jpos.iso.ISOMsg;
+
+import com.kevshake.gateway.security.CardValidationService.CardType;
+import com.kevshake.gateway.security.CardValidationService.CardValidationResult;
+
+/**
+ * Per-message processing context
+ * Created once for each POS message and passed through the handler so the card is validated
+ * a single time; masking, transaction type checks and routing read the stored result
+ */
+final class MessageContext {
+
+    private final ISOMsg msg;
+    private final String terminalId;
+    private final String stan;
+    private final String transactionId;
+    private CardValidationResult cardResult;
+
+    MessageContext(ISOMsg msg) {
+        this.msg = msg;
+        this.terminalId = msg.getString(41);
+        this.stan = msg.getString(11);
+        this.transactionId = (terminalId != null ? terminalId : "UNKNOWN") + "-" + (stan != null ? stan : "000000");
+    }
+
+    ISOMsg getMessage() { return msg; }
+    String getTerminalId() { return terminalId; }
+    String getStan() { return stan; }
+
+    /** Terminal ID and STAN, used to correlate log events */
+    String getTransactionId() { return transactionId; }
+
+    /** Card validation result, null when validation is disabled or has not run */
+    CardValidationResult getCardResult() { return cardResult; }
+
+    void setCardResult(CardValidationResult cardResult) {
+        this.cardResult = cardResult;
+    }
+
+    /** Card type from the validation result, UNKNOWN when the card was not validated */
+    CardType getCardType() {
+        return cardResult != null ? cardResult.getCardType() : CardType.UNKNOWN;
+    }
+
+    /** Masked PAN from the validation result, masked here when the card was not validated */
+    String getMaskedPan() {
+        if (cardResult != null) {
+            return cardResult.getMaskedPan();
+        }
+        String pan = msg.getString(2);
+        if (pan == null || pan.length() < 8) return "****";
+        return pan.substring(0, 4) + "****" + pan.substring(pan.length() - 4);
+    }
+}
@@ -0,0 +1,63 @@
+package com.kevshake.gateway.components;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Netty transport selection
+ * Uses the native epoll transport on Linux when its library loads, otherwise NIO
+ */
+public enum NettyTransport {
+    NIO,
+    EPOLL;
+
+    /**
+     * Resolve the configured transport name
+     *
+     * @param preference auto, epoll or nio
+     * @return EPOLL when requested (or auto) and available, NIO otherwise
+     */
+    public static NettyTransport select(String preference) {
+        if ("nio".equalsIgnoreCase(preference)) {
+            return NIO;
+        }
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+
+    /**
+     * Reason epoll could not be loaded, or null if it is available
+     */
+    public static Throwable epollUnavailabilityCause() {
+        return Epoll.unavailabilityCause();
+    }
+
+    /**
+     * Create an event loop group for this transport
+     *
+     * @param threads number of event loops, 0 for Netty's default (CPU cores * 2)
+     * @param poolName thread name prefix
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, String poolName) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(poolName);
+        return this == EPOLL
+            ? new EpollEventLoopGroup(threads, threadFactory)
+            : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return this == EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return this == EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+}
@@ -0,0 +1,295 @@
+package com.kevshake.gateway.components;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Executor stage between the Netty event loops and the business handlers
+ * Messages are queued per channel and drained by one worker at a time, so responses
+ * keep the order their requests arrived in while the event loop stays free for I/O
+ */
+@Component
+public class ProcessingStage {
+    private static final Logger log = LoggerFactory.getLogger(ProcessingStage.class);
+
+    private static final AttributeKey<ChannelQueue> CHANNEL_QUEUE = AttributeKey.valueOf("iso8583.processingQueue");
+
+    @Autowired
+    private BankCommunicationConfig config;
+
+    @Autowired
+    private MaskedLogger maskedLogger;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private ExecutorService executor;
+    private boolean enabled;
+    private int queueCapacity;
+    private int batchSize;
+
+    // Metrics
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        BankCommunicationConfig.Processing processing = config.getProcessing();
+        enabled = processing.isEnabled();
+        queueCapacity = processing.getQueueCapacity();
+        batchSize = Math.max(1, processing.getBatchSize());
+
+        if (!enabled) {
+            log.info("Processing stage disabled, messages are handled on the Netty event loop");
+            return;
+        }
+
+        executor = createExecutor(processing);
+        registerMetrics();
+        maskedLogger.log(LogEvent.PROCESSING_STAGE_START, "Processing stage started ({}, queue capacity {})", describeExecutor(), queueCapacity);
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("gateway.processing.queue.depth", this, ProcessingStage::getQueueDepth)
+            .description("Messages waiting for a processing worker")
+            .register(registry);
+        FunctionCounter.builder("gateway.processing.rejected", this, ProcessingStage::getRejectedCount)
+            .description("Messages answered with RC 91 because the queue was full")
+            .register(registry);
+        FunctionCounter.builder("gateway.processing.completed", this, ProcessingStage::getCompletedCount)
+            .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(config.getProcessing().getShutdownTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        maskedLogger.log(LogEvent.PROCESSING_STAGE_STOP,
+            "Processing stage stopped - submitted: {}, completed: {}, rejected: {}, avg wait: {}us, max wait: {}us",
+            getSubmittedCount(), getCompletedCount(), getRejectedCount(), getAverageWaitMicros(), getMaxWaitMicros());
+    }
+
+    /**
+     * Queue a task for the channel
+     * Tasks for the same channel run one at a time in submission order
+     *
+     * @param channel channel the message was received on
+     * @param task business processing for the message
+     * @return false if the stage is full or shut down and the task was not accepted
+     */
+    public boolean submit(Channel channel, Runnable task) {
+        if (!enabled) {
+            task.run();
+            return true;
+        }
+
+        if (queueDepth.incrementAndGet() > queueCapacity || executor.isShutdown()) {
+            queueDepth.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+
+        ChannelQueue queue = channel.attr(CHANNEL_QUEUE).get();
+        if (queue == null) {
+            ChannelQueue created = new ChannelQueue();
+            queue = channel.attr(CHANNEL_QUEUE).setIfAbsent(created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        queue.add(new QueuedTask(task));
+        return true;
+    }
+
+    private ExecutorService createExecutor(BankCommunicationConfig.Processing processing) {
+        String type = processing.getExecutorType();
+        if (!"pool".equalsIgnoreCase(type)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            if ("virtual".equalsIgnoreCase(type)) {
+                log.warn("Virtual threads are not available on Java {}, using a thread pool", Runtime.version().feature());
+            }
+        }
+
+        int threads = processing.getThreads() > 0
+            ? processing.getThreads()
+            : Runtime.getRuntime().availableProcessors() * 4;
+
+        // At most one drain task per channel is queued, the message bound is enforced by submit()
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new ProcessingThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively so the
+     * gateway still builds and runs on Java 17
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private String describeExecutor() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return "thread pool of " + ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        }
+        return "virtual threads";
+    }
+
+    private void recordWait(long enqueuedAt) {
+        long wait = System.nanoTime() - enqueuedAt;
+        totalWaitNanos.add(wait);
+        long max = maxWaitNanos.get();
+        while (wait > max && !maxWaitNanos.compareAndSet(max, wait)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    // Metrics accessors
+    public boolean isEnabled() { return enabled; }
+    public int getQueueDepth() { return queueDepth.get(); }
+    public int getQueueCapacity() { return queueCapacity; }
+    public long getSubmittedCount() { return submitted.sum(); }
+    public long getCompletedCount() { return completed.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getMaxWaitMicros() { return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()); }
+
+    public long getAverageWaitMicros() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / count);
+    }
+
+    /**
+     * A submitted task and the time it entered the queue
+     */
+    private static final class QueuedTask {
+        final Runnable task;
+        final long enqueuedAt = System.nanoTime();
+
+        QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Serial queue for one channel; scheduled on the executor only while it has work
+     */
+    private final class ChannelQueue implements Runnable {
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void add(QueuedTask task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                discard();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Drain a bounded batch so busy channels cannot starve the others
+                for (int i = 0; i < batchSize; i++) {
+                    QueuedTask next = tasks.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    queueDepth.decrementAndGet();
+                    recordWait(next.enqueuedAt);
+                    try {
+                        next.task.run();
+                    } catch (Throwable t) {
+                        log.error("Unhandled error in processing stage", t);
+                    } finally {
+                        completed.increment();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void discard() {
+            QueuedTask dropped;
+            while ((dropped = tasks.poll()) != null) {
+                queueDepth.decrementAndGet();
+                rejected.increment();
+                log.warn("Processing stage shut down, dropping queued message");
+            }
+        }
+    }
+
+    private static final class ProcessingThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ISO8583-Processor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
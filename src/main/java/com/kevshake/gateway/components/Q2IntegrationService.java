@@ -34,11 +34,11 @@ public class Q2IntegrationService {
             }
             
             log.info("jPOS Q2 Integration Service started successfully");
-            maskedLogger.logSystemEvent("Q2_START", "Q2 integration service started");
+            maskedLogger.log(LogEvent.Q2_START, "Q2 integration service started");
             
         } catch (Exception e) {
             log.error("Failed to start Q2 Integration Service", e);
-            maskedLogger.logError("Q2_START", "Failed to start Q2 integration", e);
+            maskedLogger.log(LogEvent.Q2_START_FAILED, e, "Failed to start Q2 integration");
         }
     }
     
@@ -55,11 +55,11 @@ public class Q2IntegrationService {
             }
             
             log.info("jPOS Q2 Integration Service stopped");
-            maskedLogger.logSystemEvent("Q2_STOP", "Q2 integration service stopped");
+            maskedLogger.log(LogEvent.Q2_STOP, "Q2 integration service stopped");
             
         } catch (Exception e) {
             log.error("Error stopping Q2 Integration Service", e);
-            maskedLogger.logError("Q2_STOP", "Error stopping Q2 integration", e);
+            maskedLogger.log(LogEvent.Q2_STOP_FAILED, e, "Error stopping Q2 integration");
         }
     }
     
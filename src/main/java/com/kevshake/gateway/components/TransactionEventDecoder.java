@@ -0,0 +1,273 @@
+package com.kevshake.gateway.components;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Command line reader for TransactionEventLog files
+ * Prints the events that match every given filter as masked text lines, in the same form as
+ * the transaction log. Filters are compared against the clear header of each event, so events
+ * that do not match are skipped without decoding their fields.
+ * <pre>
+ * java -cp target/classes com.kevshake.gateway.components.TransactionEventDecoder \
+ *     logs/transaction-events-2025-01-31.bin --tid TERM0001 --rc 05
+ *
+ * Options: --tid ID, --stan NNNNNN, --rc CODE, --mti NNNN, --count (print only the number of matches)
+ * </pre>
+ * From the packaged application use
+ * {@code java -cp app.jar -Dloader.main=com.kevshake.gateway.components.TransactionEventDecoder
+ * org.springframework.boot.loader.launch.PropertiesLauncher <file> ...}
+ */
+public final class TransactionEventDecoder {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final byte[] tid;
+    private final byte[] stan;
+    private final byte[] rc;
+    private final byte[] mti;
+    private final boolean countOnly;
+    private long matches;
+
+    TransactionEventDecoder(String tid, String stan, String rc, String mti, boolean countOnly) {
+        this.tid = bytes(tid);
+        this.stan = bytes(stan);
+        this.rc = bytes(rc);
+        this.mti = bytes(mti);
+        this.countOnly = countOnly;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> files = new ArrayList<>();
+        String tid = null, stan = null, rc = null, mti = null;
+        boolean countOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tid": tid = value(args, ++i); break;
+                case "--stan": stan = value(args, ++i); break;
+                case "--rc": rc = value(args, ++i); break;
+                case "--mti": mti = value(args, ++i); break;
+                case "--count": countOnly = true; break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        usage("Unknown option " + args[i]);
+                    }
+                    files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            usage("No event file given");
+        }
+
+        TransactionEventDecoder decoder = new TransactionEventDecoder(tid, stan, rc, mti, countOnly);
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false, StandardCharsets.ISO_8859_1);
+        for (String file : files) {
+            try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                decoder.decode(in, out);
+            }
+        }
+        if (countOnly) {
+            out.println(decoder.matches);
+        }
+        out.flush();
+    }
+
+    /**
+     * Print the matching events of one file
+     */
+    void decode(InputStream input, PrintStream out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        byte[] magic = new byte[TransactionEventLog.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, TransactionEventLog.MAGIC)) {
+            throw new IOException("Not a transaction event file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != TransactionEventLog.VERSION) {
+            throw new IOException("Unsupported transaction event file version " + version);
+        }
+
+        Inflater inflater = new Inflater();
+        CRC32 crc = new CRC32();
+        byte[] compressed = new byte[0];
+        byte[] block = new byte[0];
+        StringBuilder line = new StringBuilder(512);
+        try {
+            while (true) {
+                int rawLength;
+                int compressedLength;
+                int checksum;
+                try {
+                    rawLength = in.readInt();
+                    compressedLength = in.readInt();
+                    checksum = in.readInt();
+                    if (compressed.length < compressedLength) {
+                        compressed = new byte[compressedLength];
+                    }
+                    in.readFully(compressed, 0, compressedLength);
+                } catch (EOFException e) {
+                    // End of file, or a block cut short by a crash
+                    return;
+                }
+                if (block.length < rawLength) {
+                    block = new byte[rawLength];
+                }
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLength);
+                try {
+                    if (inflater.inflate(block, 0, rawLength) != rawLength) {
+                        throw new IOException("Truncated transaction event block");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt transaction event block", e);
+                }
+                crc.reset();
+                crc.update(block, 0, rawLength);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Transaction event block checksum mismatch");
+                }
+                scanBlock(block, rawLength, out, line);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void scanBlock(byte[] block, int length, PrintStream out, StringBuilder line) {
+        int p = 0;
+        while (p < length) {
+            // Event length varint
+            int eventLength = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[p++];
+                eventLength |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int end = p + eventLength;
+
+            // Header: timestamp, direction, peer, MTI, TID, STAN, RC
+            int q = p + 9;
+            int peer = q;
+            q += 1 + (block[q] & 0xFF);
+            int mtiAt = q;
+            q += 1 + (block[q] & 0xFF);
+            int tidAt = q;
+            q += 1 + (block[q] & 0xFF);
+            int stanAt = q;
+            q += 1 + (block[q] & 0xFF);
+            int rcAt = q;
+            q += 1 + (block[q] & 0xFF);
+
+            if (matches(block, tidAt, tid) && matches(block, stanAt, stan)
+                    && matches(block, rcAt, rc) && matches(block, mtiAt, mti)) {
+                matches++;
+                if (!countOnly) {
+                    line.setLength(0);
+                    render(block, p, peer, mtiAt, q, line);
+                    out.append(line).append('\n');
+                }
+            }
+            p = end;
+        }
+    }
+
+    private static boolean matches(byte[] block, int at, byte[] filter) {
+        if (filter == null) {
+            return true;
+        }
+        int length = block[at] & 0xFF;
+        if (length != filter.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (block[at + 1 + i] != filter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Render an event like the text transaction log: time, direction, peer, MTI and masked fields
+     */
+    private static void render(byte[] block, int start, int peer, int mti, int fields, StringBuilder line) {
+        long timestamp = 0;
+        for (int i = 0; i < 8; i++) {
+            timestamp = (timestamp << 8) | (block[start + i] & 0xFF);
+        }
+        line.append(TIMESTAMP.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())));
+        line.append(block[start + 8] == TransactionEventLog.INCOMING ? " IN " : " OUT ");
+        appendString(block, peer, line);
+        line.append(" MTI=");
+        appendString(block, mti, line);
+
+        int count = block[fields] & 0xFF;
+        int p = fields + 1;
+        for (int i = 0; i < count; i++) {
+            int field = block[p++] & 0xFF;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[p++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            line.append(' ');
+            if (field < 100) {
+                line.append('0');
+            }
+            if (field < 10) {
+                line.append('0');
+            }
+            line.append(field).append('=');
+            for (int j = 0; j < length; j++) {
+                line.append((char) (block[p++] & 0xFF));
+            }
+        }
+    }
+
+    private static void appendString(byte[] block, int at, StringBuilder line) {
+        int length = block[at] & 0xFF;
+        for (int i = 0; i < length; i++) {
+            line.append((char) (block[at + 1 + i] & 0xFF));
+        }
+    }
+
+    private static byte[] bytes(String filter) {
+        return filter != null ? filter.getBytes(StandardCharsets.ISO_8859_1) : null;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            usage("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: TransactionEventDecoder <file>... [--tid ID] [--stan NNNNNN] [--rc CODE] [--mti NNNN] [--count]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,350 @@
+package com.kevshake.gateway.components;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Binary transaction event log
+ * Optional sink for the messages MaskedLogger logs: each message becomes one length-prefixed
+ * event with the fields already masked, and events are deflated in blocks into a daily file
+ * (transaction-events-yyyy-MM-dd.bin). Read it with TransactionEventDecoder.
+ *
+ * File layout: "TXEV", version byte, then blocks of
+ * [raw length int][compressed length int][CRC32 of raw data int][deflated events].
+ * Event layout: [length varint][epoch millis long][direction byte][peer][MTI][TID][STAN][RC]
+ * [field count byte] then [field number byte][length varint][masked value] per field, strings
+ * being a length byte and ISO-8859-1 bytes. TID (field 41), STAN (11) and response code (39)
+ * are kept in clear in the event header so a day can be filtered without inflating field data.
+ *
+ * Callers only copy bytes into the current block; compression and file writes run on one
+ * background thread, which also writes out a partly filled block every flush interval
+ */
+@Component
+public class TransactionEventLog {
+    private static final Logger log = LoggerFactory.getLogger(TransactionEventLog.class);
+
+    static final byte[] MAGIC = { 'T', 'X', 'E', 'V' };
+    static final byte VERSION = 1;
+    static final byte INCOMING = 0;
+    static final byte OUTGOING = 1;
+    static final String FILE_PREFIX = "transaction-events-";
+    static final String FILE_SUFFIX = ".bin";
+
+    private static final int MAX_FIELD = 128;
+    private static final int MAX_EVENT_SIZE = 16 * 1024;
+    private static final int SPARE_BLOCKS = 4;
+
+    @Value("${iso8583.event-log.enabled:false}")
+    private boolean enabled;
+
+    @Value("${iso8583.event-log.directory:logs}")
+    private String directory;
+
+    @Value("${iso8583.event-log.block-size-kb:64}")
+    private int blockSizeKb;
+
+    @Value("${iso8583.event-log.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    // Current block and encoding scratch space, guarded by this
+    private byte[] block;
+    private int blockLength;
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    // Empty blocks ready for reuse; when none is left the writer has fallen behind
+    private BlockingQueue<byte[]> spareBlocks;
+    private ScheduledExecutorService writer;
+
+    // Used on the writer thread only
+    private Deflater deflater;
+    private byte[] compressed;
+    private final CRC32 crc = new CRC32();
+    private OutputStream out;
+    private LocalDate fileDate;
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        int blockSize = Math.max(blockSizeKb * 1024, MAX_EVENT_SIZE * 2);
+        block = new byte[blockSize];
+        spareBlocks = new ArrayBlockingQueue<>(SPARE_BLOCKS);
+        for (int i = 0; i < SPARE_BLOCKS; i++) {
+            spareBlocks.add(new byte[blockSize]);
+        }
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        compressed = new byte[blockSize + blockSize / 1000 + 64];
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transaction-event-log");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::flushPartialBlock, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Binary transaction event log enabled in {} ({} KB blocks)", directory, blockSize / 1024);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append a message as an event; dropped (and counted) if the writer has fallen behind
+     */
+    public void append(boolean incoming, String peer, ISOMsg msg) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (block == null) {
+                droppedEvents.increment();
+                return;
+            }
+            if (block.length - blockLength < MAX_EVENT_SIZE && !swapBlock()) {
+                droppedEvents.increment();
+                return;
+            }
+            int start = blockLength;
+            try {
+                blockLength = encode(block, start, incoming, peer, msg, System.currentTimeMillis(), scratch);
+                events.increment();
+            } catch (RuntimeException e) {
+                blockLength = start;
+                droppedEvents.increment();
+                log.warn("Could not encode transaction event: {}", e.toString());
+            }
+        }
+    }
+
+    public long getEventCount() { return events.sum(); }
+    public long getDroppedEventCount() { return droppedEvents.sum(); }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        byte[] last;
+        int length;
+        synchronized (this) {
+            last = block;
+            length = blockLength;
+            block = null;
+        }
+        writer.execute(() -> writeBlock(last, length));
+        writer.execute(() -> {
+            closeFile();
+            deflater.end();
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hand the current block to the writer and continue in a spare one; called holding the lock
+     */
+    private boolean swapBlock() {
+        byte[] next = spareBlocks.poll();
+        if (next == null) {
+            return false;
+        }
+        byte[] full = block;
+        int length = blockLength;
+        block = next;
+        blockLength = 0;
+        writer.execute(() -> writeBlock(full, length));
+        return true;
+    }
+
+    private void flushPartialBlock() {
+        synchronized (this) {
+            if (block == null || blockLength == 0) {
+                return;
+            }
+            swapBlock();
+        }
+    }
+
+    /**
+     * Compress and write one block, then return it to the spare pool; runs on the writer thread
+     */
+    private void writeBlock(byte[] data, int length) {
+        try {
+            if (length > 0) {
+                crc.reset();
+                crc.update(data, 0, length);
+                deflater.reset();
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    if (compressedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+                }
+                OutputStream stream = stream();
+                byte[] header = new byte[12];
+                putInt(header, 0, length);
+                putInt(header, 4, compressedLength);
+                putInt(header, 8, (int) crc.getValue());
+                stream.write(header);
+                stream.write(compressed, 0, compressedLength);
+                stream.flush();
+            }
+        } catch (IOException e) {
+            log.error("Error writing transaction event block", e);
+            closeFile();
+        } finally {
+            if (data != null) {
+                spareBlocks.offer(data);
+            }
+        }
+    }
+
+    /**
+     * File for today's events, opened or rolled as needed
+     */
+    private OutputStream stream() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (out != null && today.equals(fileDate)) {
+            return out;
+        }
+        closeFile();
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_PREFIX + today + FILE_SUFFIX);
+        boolean created = !Files.exists(file) || Files.size(file) == 0;
+        out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (created) {
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+        fileDate = today;
+        return out;
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Error closing transaction event log: {}", e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Encode one event at the given offset
+     *
+     * @return offset after the event
+     */
+    static int encode(byte[] buffer, int offset, boolean incoming, String peer, ISOMsg msg, long timestamp,
+            StringBuilder masked) {
+        // Reserve three bytes for the event length, enough for MAX_EVENT_SIZE
+        int start = offset + 3;
+        int p = putLong(buffer, start, timestamp);
+        buffer[p++] = incoming ? INCOMING : OUTGOING;
+        p = putShortString(buffer, p, peer);
+        p = putShortString(buffer, p, msg.getString(0));
+        p = putShortString(buffer, p, msg.getString(41));
+        p = putShortString(buffer, p, msg.getString(11));
+        p = putShortString(buffer, p, msg.getString(39));
+
+        int countPosition = p++;
+        int count = 0;
+        int maxField = Math.min(msg.getMaxField(), MAX_FIELD);
+        for (int field = 1; field <= maxField; field++) {
+            ISOComponent component = msg.getComponent(field);
+            if (component == null) {
+                continue;
+            }
+            masked.setLength(0);
+            MaskedRecordFormatter.appendMaskedValue(masked, field, component);
+            if (p + 4 + masked.length() > offset + MAX_EVENT_SIZE) {
+                throw new IllegalArgumentException("event larger than " + MAX_EVENT_SIZE + " bytes");
+            }
+            buffer[p++] = (byte) field;
+            p = putVarint(buffer, p, masked.length());
+            for (int i = 0; i < masked.length(); i++) {
+                buffer[p++] = (byte) masked.charAt(i);
+            }
+            count++;
+        }
+        buffer[countPosition] = (byte) count;
+
+        int length = p - start;
+        buffer[offset] = (byte) (0x80 | (length & 0x7F));
+        buffer[offset + 1] = (byte) (0x80 | ((length >>> 7) & 0x7F));
+        buffer[offset + 2] = (byte) (length >>> 14);
+        return p;
+    }
+
+    private static int putShortString(byte[] buffer, int p, String value) {
+        if (value == null) {
+            buffer[p++] = 0;
+            return p;
+        }
+        int length = Math.min(value.length(), 255);
+        buffer[p++] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            buffer[p++] = (byte) value.charAt(i);
+        }
+        return p;
+    }
+
+    private static int putVarint(byte[] buffer, int p, int value) {
+        while (value >= 0x80) {
+            buffer[p++] = (byte) (0x80 | (value & 0x7F));
+            value >>>= 7;
+        }
+        buffer[p++] = (byte) value;
+        return p;
+    }
+
+    private static int putLong(byte[] buffer, int p, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[p++] = (byte) (value >>> shift);
+        }
+        return p;
+    }
+
+    private static void putInt(byte[] buffer, int p, int value) {
+        buffer[p] = (byte) (value >>> 24);
+        buffer[p + 1] = (byte) (value >>> 16);
+        buffer[p + 2] = (byte) (value >>> 8);
+        buffer[p + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,480 @@
+package com.kevshake.gateway.components;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kevshake.gateway.components.TransactionProcessor.TransactionRecord;
+
+/**
+ * Append-only journal of approved transactions and reversals
+ * Records are written into memory-mapped segment files (journal-00000001.log, ...) of a fixed
+ * size, a new segment being started when a record does not fit. Each record is
+ * [payload length][CRC32][payload]; a zero length or a CRC mismatch marks the end of a segment.
+ *
+ * With sync enabled an append returns once its record is on disk. Appenders do not fsync each
+ * record: the first one waiting becomes the flusher and forces everything written so far, while
+ * the records appended meanwhile are covered by its next force (group commit).
+ *
+ * PANs are journalled truncated to the first six and last four digits
+ */
+public class TransactionJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(TransactionJournal.class);
+
+    /**
+     * Receives the journalled records in append order during {@link #open}
+     */
+    public interface ReplayListener {
+        void transaction(TransactionRecord record);
+        /**
+         * @param terminalId terminal of the reversed transaction, null in records written before
+         * the journal carried it
+         */
+        void reversal(String terminalId, String stan, String date, long timestamp);
+    }
+
+    private static final byte TRANSACTION = 1;
+    private static final byte REVERSAL = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int NULL_STRING = 0xFF;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int retainSegments;
+    private final boolean sync;
+
+    // Guards the current segment and write offset
+    private final Object appendLock = new Object();
+    private Segment current;
+    private int offset;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushDone = flushLock.newCondition();
+    private long durablePosition;
+    private boolean flushing;
+    private long flushCount;
+
+    /**
+     * @param directory directory holding the segment files, created if missing
+     * @param segmentSize bytes per segment file
+     * @param retainSegments segments kept on disk; older ones are deleted when a new one starts
+     * @param sync whether appends wait until their record has been forced to disk
+     */
+    public TransactionJournal(Path directory, int segmentSize, int retainSegments, boolean sync) {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Journal segment size must be at least " + MIN_SEGMENT_SIZE + " bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retainSegments = Math.max(1, retainSegments);
+        this.sync = sync;
+    }
+
+    /**
+     * Replay every retained segment and position the journal after the last valid record
+     *
+     * @return number of records replayed
+     */
+    public int open(ReplayListener listener) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> numbers = segmentNumbers();
+        int records = 0;
+        for (int i = 0; i < numbers.size(); i++) {
+            boolean last = i == numbers.size() - 1;
+            Segment segment = Segment.map(segmentPath(numbers.get(i)), numbers.get(i), segmentSize);
+            int end = replay(segment, listener);
+            records += segment.records;
+            if (last) {
+                if (segment.truncated) {
+                    // Clear a record torn by a crash so it cannot be mistaken for data later
+                    clear(segment.buffer, end);
+                    log.warn("Transaction journal {} ends with an incomplete record at offset {}", segment.path, end);
+                }
+                synchronized (appendLock) {
+                    current = segment;
+                    offset = end;
+                }
+            } else {
+                if (segment.truncated) {
+                    log.warn("Transaction journal {} has an unreadable record at offset {}", segment.path, end);
+                }
+                segment.channel.close();
+            }
+        }
+        synchronized (appendLock) {
+            if (current == null) {
+                current = Segment.map(segmentPath(1), 1, segmentSize);
+                offset = 0;
+            }
+        }
+        durablePosition = position();
+        return records;
+    }
+
+    /**
+     * Journal an approved transaction
+     */
+    public void appendTransaction(TransactionRecord record) throws IOException {
+        Encoder encoder = new Encoder(TRANSACTION, epochMillis(record.getTimestamp()));
+        encoder.string(record.getStan());
+        encoder.string(record.getDate());
+        encoder.string(record.getTime());
+        encoder.string(truncatePan(record.getPan()));
+        encoder.string(record.getAmount());
+        encoder.string(record.getProcessingCode());
+        encoder.string(record.getResponseCode());
+        encoder.string(record.getRrn());
+        encoder.string(record.getMti());
+        encoder.string(record.getTransmissionDateTime());
+        encoder.string(record.getAcquirerId());
+        encoder.string(record.getTerminalId());
+        append(encoder.toByteArray());
+    }
+
+    /**
+     * Journal the reversal of a transaction, identified by its STAN, date and terminal ID
+     * The terminal ID comes last, so reversals journalled without it still decode
+     */
+    public void appendReversal(TransactionRecord record) throws IOException {
+        Encoder encoder = new Encoder(REVERSAL, System.currentTimeMillis());
+        encoder.string(record.getStan());
+        encoder.string(record.getDate());
+        encoder.string(record.getTerminalId());
+        append(encoder.toByteArray());
+    }
+
+    /** Number of forces to disk since the journal was opened */
+    public long getFlushCount() {
+        flushLock.lock();
+        try {
+            return flushCount;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (current != null) {
+                current.buffer.force();
+                current.channel.close();
+                current = null;
+            }
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        if (HEADER_SIZE + payload.length > segmentSize) {
+            throw new IOException("Journal record of " + payload.length + " bytes does not fit in a segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        long end;
+        synchronized (appendLock) {
+            if (current == null) {
+                throw new IOException("Transaction journal is closed");
+            }
+            if (offset + HEADER_SIZE + payload.length > segmentSize) {
+                roll();
+            }
+            MappedByteBuffer buffer = current.buffer;
+            buffer.put(offset + HEADER_SIZE, payload);
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            // The length goes in last so a reader never sees a length without its data
+            buffer.putInt(offset, payload.length);
+            offset += HEADER_SIZE + payload.length;
+            end = position();
+        }
+
+        if (sync) {
+            awaitDurable(end);
+        }
+    }
+
+    /**
+     * Wait until the journal is on disk up to the given position, forcing it if no one else is
+     */
+    private void awaitDurable(long position) throws IOException {
+        flushLock.lock();
+        try {
+            while (durablePosition < position) {
+                if (flushing) {
+                    flushDone.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                long from = durablePosition;
+                long forced;
+                flushLock.unlock();
+                try {
+                    forced = force(from);
+                } finally {
+                    flushLock.lock();
+                    flushing = false;
+                    flushDone.signalAll();
+                }
+                durablePosition = Math.max(durablePosition, forced);
+                flushCount++;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Force the current segment from the given position to its write offset
+     * Earlier segments were forced completely when they were rolled
+     *
+     * @return the position now on disk
+     */
+    private long force(long from) throws IOException {
+        Segment segment;
+        long target;
+        synchronized (appendLock) {
+            if (current == null) {
+                throw new IOException("Transaction journal is closed");
+            }
+            segment = current;
+            target = position();
+        }
+        long start = Math.max(from, segment.base);
+        if (target > start) {
+            segment.buffer.force((int) (start - segment.base), (int) (target - start));
+        }
+        return target;
+    }
+
+    /**
+     * Finish the current segment and start the next; called with appendLock held
+     */
+    private void roll() throws IOException {
+        current.buffer.force();
+        current.channel.close();
+        long next = current.number + 1;
+        current = Segment.map(segmentPath(next), next, segmentSize);
+        offset = 0;
+
+        for (long number : segmentNumbers()) {
+            if (number <= next - retainSegments) {
+                Files.deleteIfExists(segmentPath(number));
+            }
+        }
+        log.info("Transaction journal rolled to {}", current.path);
+    }
+
+    /** Global position of the write offset; called with appendLock held */
+    private long position() {
+        return current.base + offset;
+    }
+
+    /**
+     * Read the records of a segment, stopping at the end of data or at a damaged record
+     *
+     * @return offset after the last valid record
+     */
+    private static int replay(Segment segment, ReplayListener listener) {
+        MappedByteBuffer buffer = segment.buffer;
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                return position;
+            }
+            if (length < 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                segment.truncated = true;
+                return position;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                segment.truncated = true;
+                return position;
+            }
+            decode(buffer.slice(position + HEADER_SIZE, length), listener);
+            segment.records++;
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void decode(ByteBuffer payload, ReplayListener listener) {
+        byte type = payload.get();
+        long timestamp = payload.getLong();
+        if (type == TRANSACTION) {
+            TransactionRecord record = new TransactionRecord();
+            record.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+            record.setStan(string(payload));
+            record.setDate(string(payload));
+            record.setTime(string(payload));
+            record.setPan(string(payload));
+            record.setAmount(string(payload));
+            record.setProcessingCode(string(payload));
+            record.setResponseCode(string(payload));
+            record.setRrn(string(payload));
+            record.setMti(string(payload));
+            record.setTransmissionDateTime(string(payload));
+            record.setAcquirerId(string(payload));
+            record.setTerminalId(string(payload));
+            listener.transaction(record);
+        } else if (type == REVERSAL) {
+            String stan = string(payload);
+            String date = string(payload);
+            String terminalId = payload.hasRemaining() ? string(payload) : null;
+            listener.reversal(terminalId, stan, date, timestamp);
+        } else {
+            log.warn("Skipping transaction journal record of unknown type {}", type);
+        }
+    }
+
+    private static String string(ByteBuffer payload) {
+        int length = payload.get() & 0xFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void clear(MappedByteBuffer buffer, int from) {
+        byte[] zeros = new byte[8192];
+        for (int position = from; position < buffer.capacity(); position += zeros.length) {
+            buffer.put(position, zeros, 0, Math.min(zeros.length, buffer.capacity() - position));
+        }
+        buffer.force();
+    }
+
+    private List<Long> segmentNumbers() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .forEach(name -> {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file in transaction journal directory: {}", name);
+                    }
+                });
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static long epochMillis(LocalDateTime timestamp) {
+        return timestamp != null ? timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : System.currentTimeMillis();
+    }
+
+    private static String truncatePan(String pan) {
+        if (pan == null || pan.length() < 13) {
+            return pan == null ? null : "****";
+        }
+        return pan.substring(0, 6) + "*".repeat(pan.length() - 10) + pan.substring(pan.length() - 4);
+    }
+
+    /**
+     * Mapped segment file; base is its first global position
+     */
+    private static final class Segment {
+        final Path path;
+        final long number;
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int records;
+        boolean truncated;
+
+        private Segment(Path path, long number, long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.number = number;
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path path, long number, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new Segment(path, number, number * size, channel, buffer);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Builds a record payload: type, timestamp and length-prefixed ISO-8859-1 strings
+     */
+    private static final class Encoder {
+        private byte[] bytes = new byte[128];
+        private int length;
+
+        Encoder(byte type, long timestamp) {
+            bytes[length++] = type;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (timestamp >>> shift);
+            }
+        }
+
+        void string(String value) {
+            if (value == null) {
+                ensure(1);
+                bytes[length++] = (byte) NULL_STRING;
+                return;
+            }
+            if (value.length() >= NULL_STRING) {
+                throw new IllegalArgumentException("Journal field too long: " + value.length() + " characters");
+            }
+            ensure(1 + value.length());
+            bytes[length++] = (byte) value.length();
+            for (int i = 0; i < value.length(); i++) {
+                bytes[length++] = (byte) value.charAt(i);
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] payload = new byte[length];
+            System.arraycopy(bytes, 0, payload, 0, length);
+            return payload;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+    }
+}
@@ -1,20 +1,50 @@
 package com.kevshake.gateway.components;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
 
 import org.jpos.iso.ISOMsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @Service
 public class TransactionProcessor {
     private static final Logger log = LoggerFactory.getLogger(TransactionProcessor.class);
     
     // Sample transaction database (in real application, use actual database)
-    private Map<String, TransactionRecord> transactionDatabase = new HashMap<>();
+    private final TransactionStore transactionStore = new TransactionStore();
+    
+    @Value("${iso8583.transaction.duplicate-window-seconds:900}")
+    private long duplicateWindowSeconds;
+    
+    // Transactions seen within the window, keyed on terminal ID, STAN and local date/time
+    private DuplicateTransactionFilter duplicateFilter;
+    
+    @Value("${iso8583.transaction.journal.enabled:true}")
+    private boolean journalEnabled;
+    
+    @Value("${iso8583.transaction.journal.directory:journal}")
+    private String journalDirectory;
+    
+    @Value("${iso8583.transaction.journal.segment-size-mb:64}")
+    private int journalSegmentSizeMb;
+    
+    @Value("${iso8583.transaction.journal.retain-segments:8}")
+    private int journalRetainSegments;
+    
+    @Value("${iso8583.transaction.journal.sync:true}")
+    private boolean journalSync;
+    
+    // Approved transactions and reversals, replayed into the store and duplicate filter on startup
+    private TransactionJournal journal;
     
     // Processing Code Constants
     public static class ProcessingCodes {
@@ -60,6 +90,44 @@ public class TransactionProcessor {
         public static final String COMMS_ERROR = "98";
     }
     
+    @PostConstruct
+    public void initialize() throws IOException {
+        duplicateFilter = new DuplicateTransactionFilter(TimeUnit.SECONDS.toMillis(duplicateWindowSeconds));
+        
+        if (journalEnabled) {
+            long start = System.nanoTime();
+            journal = new TransactionJournal(Paths.get(journalDirectory), journalSegmentSizeMb * 1024 * 1024, 
+                journalRetainSegments, journalSync);
+            int records = journal.open(new TransactionJournal.ReplayListener() {
+                @Override
+                public void transaction(TransactionRecord record) {
+                    transactionStore.add(record);
+                    duplicateFilter.record(record.getTerminalId(), record.getStan(), record.getDate(), record.getTime(),
+                        record.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                }
+                
+                @Override
+                public void reversal(String terminalId, String stan, String date, long timestamp) {
+                    TransactionRecord record = terminalId != null
+                        ? transactionStore.findByTerminalStanAndDate(terminalId, stan, date)
+                        : transactionStore.findByStanAndDate(stan, date);
+                    if (record != null) {
+                        transactionStore.markReversed(record);
+                    }
+                }
+            });
+            log.info("Replayed {} transaction journal records from {} in {} ms", records, journalDirectory, 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+    
     /**
      * Process a financial transaction based on processing code
      */
@@ -83,7 +151,8 @@ public class TransactionProcessor {
             }
             
             // Check for duplicate transaction
-            if (isDuplicateTransaction(stan, msg.getString(13))) {
+            if (duplicateFilter.checkAndRecord(msg.getString(41), stan, msg.getString(13), msg.getString(12))) {
+                log.warn("Duplicate transaction - Terminal: {}, STAN: {}", msg.getString(41), stan);
                 return ResponseCodes.DUPLICATE_TRANSMISSION;
             }
             
@@ -336,17 +405,17 @@ public class TransactionProcessor {
                     originalStan, originalDate, amount);
             
             // Find original transaction
-            TransactionRecord originalTransaction = findOriginalTransaction(originalStan, originalDate);
+            TransactionRecord originalTransaction = findOriginalTransaction(msg);
             
             if (originalTransaction == null) {
                 log.warn("Original transaction not found for reversal");
                 return ResponseCodes.INVALID_TRANSACTION;
             }
             
-            // Process the reversal
-            boolean reversalProcessed = reverseTransaction(originalTransaction);
+            // Process the reversal; a repeated reversal of the same transaction is approved again
+            reverseTransaction(originalTransaction);
             
-            return reversalProcessed ? ResponseCodes.APPROVED : ResponseCodes.SYSTEM_ERROR;
+            return ResponseCodes.APPROVED;
             
         } catch (Exception e) {
             log.error("Error processing reversal", e);
@@ -389,19 +458,14 @@ public class TransactionProcessor {
         return account != null && account.length() >= 10;
     }
     
-    private boolean isDuplicateTransaction(String stan, String date) {
-        String key = stan + "_" + date;
-        return transactionDatabase.containsKey(key);
-    }
-    
     private boolean hasOriginalTransaction(String rrn) {
-        return transactionDatabase.values().stream()
-                .anyMatch(t -> rrn.equals(t.getRrn()));
+        return transactionStore.findByRrn(rrn) != null;
     }
     
     private void storeTransaction(ISOMsg msg, String responseCode) {
         try {
-            String key = msg.getString(11) + "_" + msg.getString(13);
+            String key = TransactionStore.terminalStanAndDateKey(msg.getString(41), msg.getString(11),
+                msg.getString(13));
             TransactionRecord record = new TransactionRecord();
             record.setStan(msg.getString(11));
             record.setDate(msg.getString(13));
@@ -410,10 +474,18 @@ public class TransactionProcessor {
             record.setAmount(msg.getString(4));
             record.setProcessingCode(msg.getString(3));
             record.setResponseCode(responseCode);
-            record.setRrn(generateRRN());
+            record.setRrn(msg.hasField(37) ? msg.getString(37) : generateRRN());
             record.setTimestamp(LocalDateTime.now());
+            record.setMti(msg.getString(0));
+            record.setTransmissionDateTime(msg.getString(7));
+            record.setAcquirerId(msg.getString(32));
+            record.setTerminalId(msg.getString(41));
             
-            transactionDatabase.put(key, record);
+            // Journal first so a transaction is never answered from memory only
+            if (journal != null) {
+                journal.appendTransaction(record);
+            }
+            transactionStore.add(record);
             log.info("Transaction stored: {}", key);
             
         } catch (Exception e) {
@@ -421,9 +493,24 @@ public class TransactionProcessor {
         }
     }
     
-    private TransactionRecord findOriginalTransaction(String stan, String date) {
-        String key = stan + "_" + date;
-        return transactionDatabase.get(key);
+    /**
+     * Find the transaction a reversal refers to: by original data elements (field 90) when present,
+     * then by retrieval reference number (field 37), then by the reversal's own terminal, STAN and date.
+     * Each lookup that misses falls through to the next one
+     */
+    private TransactionRecord findOriginalTransaction(ISOMsg msg) {
+        TransactionRecord original = null;
+        if (msg.hasField(90)) {
+            original = transactionStore.findByOriginalDataElements(msg.getString(90));
+        }
+        if (original == null && msg.hasField(37)) {
+            original = transactionStore.findByRrn(msg.getString(37));
+        }
+        if (original == null) {
+            original = transactionStore.findByTerminalStanAndDate(msg.getString(41), msg.getString(11),
+                msg.getString(13));
+        }
+        return original;
     }
     
     private boolean reverseTransaction(TransactionRecord original) {
@@ -432,7 +519,18 @@ public class TransactionProcessor {
                 original.getStan(), original.getAmount());
         
         // Mark as reversed
-        original.setReversed(true);
+        if (!transactionStore.markReversed(original)) {
+            log.info("Transaction already reversed: STAN={}, RRN={}", original.getStan(), original.getRrn());
+            return false;
+        }
+        
+        if (journal != null) {
+            try {
+                journal.appendReversal(original);
+            } catch (IOException e) {
+                log.error("Error journalling reversal of STAN {}", original.getStan(), e);
+            }
+        }
         
         return true;
     }
@@ -458,6 +556,10 @@ public class TransactionProcessor {
         private String rrn;
         private LocalDateTime timestamp;
         private boolean reversed = false;
+        private String mti;
+        private String transmissionDateTime;
+        private String acquirerId;
+        private String terminalId;
         
         // Getters and setters
         public String getStan() { return stan; }
@@ -489,5 +591,17 @@ public class TransactionProcessor {
         
         public boolean isReversed() { return reversed; }
         public void setReversed(boolean reversed) { this.reversed = reversed; }
+        
+        public String getMti() { return mti; }
+        public void setMti(String mti) { this.mti = mti; }
+        
+        public String getTransmissionDateTime() { return transmissionDateTime; }
+        public void setTransmissionDateTime(String transmissionDateTime) { this.transmissionDateTime = transmissionDateTime; }
+        
+        public String getAcquirerId() { return acquirerId; }
+        public void setAcquirerId(String acquirerId) { this.acquirerId = acquirerId; }
+        
+        public String getTerminalId() { return terminalId; }
+        public void setTerminalId(String terminalId) { this.terminalId = terminalId; }
     }
 }
@@ -0,0 +1,162 @@
+package com.kevshake.gateway.components;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.kevshake.gateway.components.TransactionProcessor.TransactionRecord;
+
+/**
+ * In-memory store of processed transactions with the lookups reversals need
+ * Records are indexed by terminal ID, STAN and local date (STANs are per terminal), by
+ * retrieval reference number (field 37)
+ * and by original data elements (the first 31 digits of field 90: original MTI, STAN,
+ * transmission date/time and acquirer ID), so 0400/0420 matching is a hash lookup.
+ * All indexes and the reversal flag change under one write lock and are never seen out of step
+ */
+public class TransactionStore {
+
+    // Original MTI (4) + STAN (6) + transmission date/time (10) + acquirer ID (11)
+    static final int ORIGINAL_DATA_KEY_LENGTH = 31;
+
+    private final Map<String, TransactionRecord> byTerminalStanAndDate = new HashMap<>();
+    private final Map<String, TransactionRecord> byRrn = new HashMap<>();
+    private final Map<String, TransactionRecord> byOriginalData = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Add a transaction, replacing any record with the same terminal, STAN and date along with its
+     * index entries
+     */
+    public void add(TransactionRecord record) {
+        String key = terminalStanAndDateKey(record.getTerminalId(), record.getStan(), record.getDate());
+        String originalDataKey = originalDataKey(record);
+        lock.writeLock().lock();
+        try {
+            TransactionRecord previous = byTerminalStanAndDate.put(key, record);
+            if (previous != null) {
+                removeIndexEntries(previous);
+            }
+            if (record.getRrn() != null) {
+                byRrn.put(record.getRrn(), record);
+            }
+            if (originalDataKey != null) {
+                byOriginalData.put(originalDataKey, record);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public TransactionRecord findByTerminalStanAndDate(String terminalId, String stan, String date) {
+        return read(byTerminalStanAndDate, terminalStanAndDateKey(terminalId, stan, date));
+    }
+
+    /**
+     * Find a transaction by STAN and date on any terminal, scanning every record
+     * Only for replaying reversals from journals written before reversals carried the terminal ID
+     */
+    public TransactionRecord findByStanAndDate(String stan, String date) {
+        lock.readLock().lock();
+        try {
+            for (TransactionRecord record : byTerminalStanAndDate.values()) {
+                if (stan != null && stan.equals(record.getStan()) && date != null && date.equals(record.getDate())) {
+                    return record;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public TransactionRecord findByRrn(String rrn) {
+        return rrn != null ? read(byRrn, rrn) : null;
+    }
+
+    /**
+     * Find the original of a reversal from its field 90
+     *
+     * @param originalDataElements field 90 (42 digits); only the first 31 identify the original
+     */
+    public TransactionRecord findByOriginalDataElements(String originalDataElements) {
+        if (originalDataElements == null || originalDataElements.length() < ORIGINAL_DATA_KEY_LENGTH) {
+            return null;
+        }
+        return read(byOriginalData, originalDataElements.substring(0, ORIGINAL_DATA_KEY_LENGTH));
+    }
+
+    /**
+     * Flag a transaction as reversed
+     *
+     * @return false if it had already been reversed, e.g. by a repeated 0420
+     */
+    public boolean markReversed(TransactionRecord record) {
+        lock.writeLock().lock();
+        try {
+            if (record.isReversed()) {
+                return false;
+            }
+            record.setReversed(true);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byTerminalStanAndDate.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TransactionRecord read(Map<String, TransactionRecord> index, String key) {
+        lock.readLock().lock();
+        try {
+            return index.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeIndexEntries(TransactionRecord record) {
+        if (record.getRrn() != null) {
+            byRrn.remove(record.getRrn(), record);
+        }
+        String originalDataKey = originalDataKey(record);
+        if (originalDataKey != null) {
+            byOriginalData.remove(originalDataKey, record);
+        }
+    }
+
+    static String terminalStanAndDateKey(String terminalId, String stan, String date) {
+        return terminalId + "_" + stan + "_" + date;
+    }
+
+    /**
+     * The field 90 prefix a reversal of this transaction would carry, null without MTI, STAN or field 7
+     */
+    static String originalDataKey(TransactionRecord record) {
+        String mti = record.getMti();
+        String stan = record.getStan();
+        String transmissionDateTime = record.getTransmissionDateTime();
+        if (mti == null || mti.length() != 4 || stan == null || stan.length() > 6
+                || transmissionDateTime == null || transmissionDateTime.length() != 10) {
+            return null;
+        }
+        String acquirer = record.getAcquirerId() != null ? record.getAcquirerId() : "";
+        if (acquirer.length() > 11) {
+            return null;
+        }
+        return new StringBuilder(ORIGINAL_DATA_KEY_LENGTH)
+            .append(mti)
+            .append("000000", stan.length(), 6).append(stan)
+            .append(transmissionDateTime)
+            .append("00000000000", acquirer.length(), 11).append(acquirer)
+            .toString();
+    }
+}
@@ -0,0 +1,337 @@
+package com.kevshake.gateway.packagers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOFieldPackager;
+import org.jpos.iso.ISOMsg;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Packs ISO8583 messages straight into a Netty ByteBuf
+ * Uses the packager's FieldSpec table to compute the exact packed size up front
+ * and writes each field in place, so no per-field or per-message byte[] is created.
+ * When PackagerCodeGenerator has generated code for the packager, that code is used instead of the table
+ */
+public class ByteBufPacker {
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZEROS = new byte[999];
+    private static final byte[] SPACES = new byte[999];
+
+    static {
+        Arrays.fill(ZEROS, (byte) '0');
+        Arrays.fill(SPACES, (byte) ' ');
+    }
+
+    /** Size of the binary length header expected by LengthFieldBasedFrameDecoder(10240, 0, 2, 0, 2) */
+    public static final int LENGTH_HEADER_SIZE = 2;
+
+    /** Size of the 4-digit ASCII length header used by jPOS ASCIIChannel */
+    public static final int ASCII_LENGTH_HEADER_SIZE = 4;
+
+    private final ISOBasePackager packager;
+    private final FieldSpec[] specs;
+    private final boolean nativeLayout;
+    private final CompiledPackager compiled;
+
+    public ByteBufPacker(ISOBasePackager packager) {
+        this(packager, true);
+    }
+
+    /**
+     * @param useCompiled use the generated code for the packager when there is one
+     */
+    public ByteBufPacker(ISOBasePackager packager, boolean useCompiled) {
+        this.packager = packager;
+        this.specs = FieldSpec.layoutOf(packager);
+        this.nativeLayout = specs[0] != null && specs[0].getKind() == FieldSpec.Kind.NUMERIC
+                && specs[1] != null && specs[1].getKind() == FieldSpec.Kind.BITMAP;
+        this.compiled = useCompiled ? CompiledPackager.forPackager(packager) : null;
+    }
+
+    /**
+     * Compute the exact number of bytes the message occupies when packed (without length header)
+     */
+    public int packedSize(ISOMsg msg) throws ISOException {
+        if (compiled != null) {
+            return compiled.packedSize(msg);
+        }
+        if (!nativeLayout) {
+            return packager.pack(msg).length;
+        }
+
+        int maxField = maxField(msg);
+        int size = specs[0].getLength() + (maxField > 64 ? 32 : 16);
+
+        BitSet present = presentFields(msg);
+        for (int i = present.nextSetBit(2); i >= 0; i = present.nextSetBit(i + 1)) {
+            size += fieldSize(i, msg.getComponent(i));
+        }
+        return size;
+    }
+
+    /**
+     * Write the 2-byte length header followed by the packed message
+     * The header is reserved first and back-filled once the body is written
+     */
+    public void packWithLengthHeader(ISOMsg msg, ByteBuf out) throws ISOException {
+        int headerIndex = out.writerIndex();
+        out.writeShort(0);
+        pack(msg, out);
+        int length = out.writerIndex() - headerIndex - LENGTH_HEADER_SIZE;
+        if (length > 0xFFFF) {
+            throw new ISOException("Packed message too long for 2-byte length header: " + length);
+        }
+        out.setShort(headerIndex, length);
+    }
+
+    /**
+     * Write the 4-digit ASCII length header followed by the packed message (ASCIIChannel framing)
+     */
+    public void packWithAsciiLengthHeader(ISOMsg msg, ByteBuf out) throws ISOException {
+        int headerIndex = out.writerIndex();
+        out.writeZero(ASCII_LENGTH_HEADER_SIZE);
+        pack(msg, out);
+        int length = out.writerIndex() - headerIndex - ASCII_LENGTH_HEADER_SIZE;
+        if (length > 9999) {
+            throw new ISOException("Packed message too long for 4-digit ASCII length header: " + length);
+        }
+        for (int i = ASCII_LENGTH_HEADER_SIZE - 1; i >= 0; i--) {
+            out.setByte(headerIndex + i, '0' + length % 10);
+            length /= 10;
+        }
+    }
+
+    /**
+     * Pack the message into the buffer at its writer index
+     */
+    public void pack(ISOMsg msg, ByteBuf out) throws ISOException {
+        if (compiled != null) {
+            compiled.pack(msg, out);
+            return;
+        }
+        if (!nativeLayout) {
+            out.writeBytes(packager.pack(msg));
+            return;
+        }
+
+        int maxField = maxField(msg);
+
+        // MTI
+        ISOComponent mti = msg.getComponent(0);
+        if (mti == null) {
+            throw new ISOException("error packing field 0 (MTI not set)");
+        }
+        writeFixedString(0, (String) mti.getValue(), specs[0].getLength(), out, true);
+
+        // Bitmap is reserved here and back-filled once the fields are written
+        boolean secondaryBitmap = maxField > 64;
+        int bitmapIndex = out.writerIndex();
+        out.writeZero(secondaryBitmap ? 32 : 16);
+
+        long primary = secondaryBitmap ? Long.MIN_VALUE : 0;
+        long secondary = 0;
+        BitSet present = presentFields(msg);
+        for (int i = present.nextSetBit(2); i >= 0; i = present.nextSetBit(i + 1)) {
+            packField(i, msg.getComponent(i), out);
+            if (i <= 64) {
+                primary |= Long.MIN_VALUE >>> (i - 1);
+            } else {
+                secondary |= Long.MIN_VALUE >>> (i - 65);
+            }
+        }
+
+        setHexLong(bitmapIndex, primary, out);
+        if (secondaryBitmap) {
+            setHexLong(bitmapIndex + 16, secondary, out);
+        }
+    }
+
+    /**
+     * Get the field layout table used by this packer
+     */
+    public FieldSpec[] getFieldSpecs() {
+        return specs;
+    }
+
+    private int fieldSize(int fieldNumber, ISOComponent c) throws ISOException {
+        FieldSpec spec = specs[fieldNumber];
+        int unchanged = FrameField.unchangedLength(c, spec);
+        if (unchanged >= 0) {
+            return unchanged;
+        }
+        if (spec == null || spec.getKind() == FieldSpec.Kind.BITMAP) {
+            return fallbackPack(fieldNumber, c).length;
+        }
+        if (!spec.isVariable()) {
+            return spec.getMaxPackedLength();
+        }
+        int len = spec.isBinary() ? c.getBytes().length : stringValue(fieldNumber, c).length();
+        return spec.getPrefixDigits() + len;
+    }
+
+    private void packField(int fieldNumber, ISOComponent c, ByteBuf out) throws ISOException {
+        FieldSpec spec = specs[fieldNumber];
+        // Unchanged field of a lazily unpacked message, copied as received
+        if (FrameField.unchangedLength(c, spec) >= 0) {
+            ((FrameField) c).writeTo(out);
+            return;
+        }
+        if (spec == null) {
+            out.writeBytes(fallbackPack(fieldNumber, c));
+            return;
+        }
+
+        switch (spec.getKind()) {
+            case NUMERIC:
+                writeFixedString(fieldNumber, stringValue(fieldNumber, c), spec.getLength(), out, true);
+                break;
+            case AMOUNT: {
+                // Sign character (C/D) first, amount zero padded behind it
+                String value = stringValue(fieldNumber, c);
+                if (value.isEmpty()) {
+                    throw new ISOException("error packing field " + fieldNumber + " (empty amount)");
+                }
+                out.writeByte(value.charAt(0));
+                writeFixedString(fieldNumber, value.substring(1), spec.getLength() - 1, out, true);
+                break;
+            }
+            case CHAR:
+                writeFixedString(fieldNumber, stringValue(fieldNumber, c), spec.getLength(), out, false);
+                break;
+            case VAR_CHAR: {
+                String value = stringValue(fieldNumber, c);
+                checkLength(fieldNumber, value.length(), spec.getLength());
+                writeLengthPrefix(value.length(), spec.getPrefixDigits(), out);
+                out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+                break;
+            }
+            case BINARY: {
+                byte[] value = c.getBytes();
+                if (value == null || value.length != spec.getLength()) {
+                    throw new ISOException("error packing field " + fieldNumber + " (binary length "
+                            + (value == null ? 0 : value.length) + ", expected " + spec.getLength() + ")");
+                }
+                out.writeBytes(value);
+                break;
+            }
+            case VAR_BINARY: {
+                byte[] value = c.getBytes();
+                checkLength(fieldNumber, value.length, spec.getLength());
+                writeLengthPrefix(value.length, spec.getPrefixDigits(), out);
+                out.writeBytes(value);
+                break;
+            }
+            case HEX_BINARY: {
+                byte[] value = c.getBytes();
+                if (value == null || value.length != spec.getLength()) {
+                    throw new ISOException("error packing field " + fieldNumber + " (binary length "
+                            + (value == null ? 0 : value.length) + ", expected " + spec.getLength() + ")");
+                }
+                for (byte b : value) {
+                    out.writeByte(HEX_DIGITS[(b >> 4) & 0x0F]);
+                    out.writeByte(HEX_DIGITS[b & 0x0F]);
+                }
+                break;
+            }
+            default:
+                out.writeBytes(fallbackPack(fieldNumber, c));
+                break;
+        }
+    }
+
+    /**
+     * Write a fixed length ASCII field, zero padded on the left or space padded on the right
+     * Over-long values are rejected rather than cut: jPOS 2.1.7 IF_CHAR and IFA_NUMERIC check the
+     * length before padding, so ISOBasePackager.pack() fails on the same message
+     */
+    private static void writeFixedString(int fieldNumber, String value, int length, ByteBuf out, boolean zeroPadLeft)
+            throws ISOException {
+        int valueLength = value.length();
+        checkLength(fieldNumber, valueLength, length);
+        if (zeroPadLeft) {
+            out.writeBytes(ZEROS, 0, length - valueLength);
+            out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+        } else {
+            out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+            out.writeBytes(SPACES, 0, length - valueLength);
+        }
+    }
+
+    private static void writeLengthPrefix(int length, int digits, ByteBuf out) {
+        int divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.writeByte('0' + (length / divisor) % 10);
+        }
+    }
+
+    private static void setHexLong(int index, long value, ByteBuf out) {
+        out.setLong(index, hexAscii((int) (value >>> 32)));
+        out.setLong(index + 8, hexAscii((int) value));
+    }
+
+    /**
+     * Render 32 bits as 8 ASCII hex digits packed big-endian into a long
+     */
+    private static long hexAscii(int value) {
+        long ascii = 0;
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            ascii = (ascii << 8) | HEX_DIGITS[(value >>> shift) & 0x0F];
+        }
+        return ascii;
+    }
+
+    private int maxField(ISOMsg msg) throws ISOException {
+        int maxField = msg.getMaxField();
+        if (maxField >= specs.length) {
+            throw new ISOException("error packing field " + maxField + " (field not defined by packager)");
+        }
+        return maxField;
+    }
+
+    /**
+     * Fields present in the message, taken from the bitmap ISOMsg keeps up to date
+     * so absent fields are skipped without a map lookup each
+     */
+    private static BitSet presentFields(ISOMsg msg) throws ISOException {
+        msg.recalcBitMap();
+        return (BitSet) msg.getComponent(-1).getValue();
+    }
+
+    private static String stringValue(int fieldNumber, ISOComponent c) throws ISOException {
+        if (c instanceof ISOBinaryField) {
+            return new String(c.getBytes(), StandardCharsets.ISO_8859_1);
+        }
+        Object value = c.getValue();
+        if (!(value instanceof String)) {
+            throw new ISOException("error packing field " + fieldNumber + " (unsupported value type "
+                    + (value == null ? "null" : value.getClass().getSimpleName()) + ")");
+        }
+        return (String) value;
+    }
+
+    private static void checkLength(int fieldNumber, int length, int maxLength) throws ISOException {
+        if (length > maxLength) {
+            throw new ISOException("error packing field " + fieldNumber
+                    + " (Field length " + length + " too long. Max: " + maxLength + ")");
+        }
+    }
+
+    private byte[] fallbackPack(int fieldNumber, ISOComponent c) throws ISOException {
+        ISOFieldPackager fp = packager.getFieldPackager(fieldNumber);
+        if (fp == null) {
+            throw new ISOException("error packing field " + fieldNumber + " (field not defined by packager)");
+        }
+        return fp.pack(c);
+    }
+}
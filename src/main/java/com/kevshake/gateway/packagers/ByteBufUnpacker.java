@@ -0,0 +1,306 @@
+package com.kevshake.gateway.packagers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOBitMap;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOField;
+import org.jpos.iso.ISOFieldPackager;
+import org.jpos.iso.ISOMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Unpacks ISO8583 messages straight from a Netty ByteBuf
+ * Fields are located by offset using the packager's FieldSpec table, so the frame
+ * is never copied into an intermediate byte[] before unpacking. When PackagerCodeGenerator
+ * has generated code for the packager, that code is used instead of the table
+ */
+public class ByteBufUnpacker {
+
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final ISOBasePackager packager;
+    private final FieldSpec[] specs;
+    private final boolean nativeLayout;
+    private final CompiledPackager compiled;
+
+    public ByteBufUnpacker(ISOBasePackager packager) {
+        this(packager, true);
+    }
+
+    /**
+     * @param useCompiled use the generated code for the packager when there is one
+     */
+    public ByteBufUnpacker(ISOBasePackager packager, boolean useCompiled) {
+        this.packager = packager;
+        this.specs = FieldSpec.layoutOf(packager);
+        // MTI and bitmap must have a known layout, otherwise delegate to jPOS entirely
+        this.nativeLayout = specs[0] != null && specs[0].getKind() == FieldSpec.Kind.NUMERIC
+                && specs[1] != null && specs[1].getKind() == FieldSpec.Kind.BITMAP;
+        this.compiled = useCompiled ? CompiledPackager.forPackager(packager) : null;
+    }
+
+    /**
+     * Unpack all readable bytes of the frame into a new ISOMsg
+     * The reader index is advanced past the consumed frame
+     *
+     * @param frame single ISO8583 message without length header
+     * @return unpacked message with the packager attached
+     */
+    public ISOMsg unpack(ByteBuf frame) throws ISOException {
+        if (compiled != null) {
+            return compiled.unpack(frame);
+        }
+        return unpack(frame, null);
+    }
+
+    /**
+     * Unpack the frame into an ISOMsg whose text and binary fields are decoded on first access
+     * Only the MTI, the bitmap and the position of each field are parsed up front; the frame is
+     * copied once and backs the LazyField and LazyBinaryField values. Fields left unchanged are
+     * written back as their original bytes by ByteBufPacker and the generated packers, so fields
+     * the gateway never reads, such as 48 or 55, are neither decoded nor encoded when forwarded.
+     * Fields of other types are unpacked as usual
+     */
+    public ISOMsg unpackLazy(ByteBuf frame) throws ISOException {
+        if (!nativeLayout) {
+            return unpack(frame);
+        }
+        int start = frame.readerIndex();
+        return unpack(frame, ByteBufUtil.getBytes(frame, start, frame.writerIndex() - start, true));
+    }
+
+    /**
+     * @param lazyFrame copy of the frame backing lazy fields, or null to unpack every field
+     */
+    private ISOMsg unpack(ByteBuf frame, byte[] lazyFrame) throws ISOException {
+        ISOMsg msg = new ISOMsg();
+        msg.setPackager(packager);
+
+        if (!nativeLayout) {
+            byte[] buffer = ByteBufUtil.getBytes(frame);
+            frame.skipBytes(frame.readableBytes());
+            packager.unpack(msg, buffer);
+            return msg;
+        }
+
+        int start = frame.readerIndex();
+        int end = frame.writerIndex();
+        int offset = start;
+
+        // MTI
+        int mtiLength = specs[0].getLength();
+        checkAvailable(0, offset, mtiLength, end);
+        msg.set(new ISOField(0, frame.toString(offset, mtiLength, StandardCharsets.ISO_8859_1)));
+        offset += mtiLength;
+
+        // Bitmap
+        BitSet bitmap = new BitSet(specs[1].getLength() > 8 ? 129 : 65);
+        offset = readBitmap(frame, offset, end, bitmap);
+        msg.set(new ISOBitMap(-1, bitmap));
+
+        int maxField = Math.min(specs.length, bitmap.length());
+        for (int i = 2; i < maxField; i++) {
+            if (!bitmap.get(i)) {
+                continue;
+            }
+
+            FieldSpec spec = specs[i];
+            if (lazyFrame != null && isLazy(spec)) {
+                offset = locateField(frame, offset, start, end, spec, lazyFrame, msg);
+            } else {
+                offset = unpackField(frame, offset, end, spec, i, msg);
+            }
+        }
+
+        frame.readerIndex(end);
+        return msg;
+    }
+
+    private int unpackField(ByteBuf frame, int offset, int end, FieldSpec spec, int i, ISOMsg msg)
+            throws ISOException {
+        if (spec == null) {
+            return unpackWithFieldPackager(frame, offset, end, i, msg);
+        }
+
+        switch (spec.getKind()) {
+            case NUMERIC:
+            case CHAR:
+            case AMOUNT: {
+                int len = spec.getLength();
+                checkAvailable(i, offset, len, end);
+                msg.set(new ISOField(i, frame.toString(offset, len, StandardCharsets.ISO_8859_1)));
+                return offset + len;
+            }
+            case VAR_CHAR: {
+                int len = readLength(frame, offset, end, spec);
+                offset += spec.getPrefixDigits();
+                checkAvailable(i, offset, len, end);
+                msg.set(new ISOField(i, frame.toString(offset, len, StandardCharsets.ISO_8859_1)));
+                return offset + len;
+            }
+            case BINARY: {
+                int len = spec.getLength();
+                checkAvailable(i, offset, len, end);
+                byte[] value = new byte[len];
+                frame.getBytes(offset, value);
+                msg.set(new ISOBinaryField(i, value));
+                return offset + len;
+            }
+            case VAR_BINARY: {
+                int len = readLength(frame, offset, end, spec);
+                offset += spec.getPrefixDigits();
+                checkAvailable(i, offset, len, end);
+                byte[] value = new byte[len];
+                frame.getBytes(offset, value);
+                msg.set(new ISOBinaryField(i, value));
+                return offset + len;
+            }
+            case HEX_BINARY: {
+                int len = spec.getLength();
+                checkAvailable(i, offset, len * 2, end);
+                byte[] value = new byte[len];
+                for (int j = 0; j < len; j++) {
+                    value[j] = (byte) ((hexValue(frame, offset + j * 2, i) << 4) | hexValue(frame, offset + j * 2 + 1, i));
+                }
+                msg.set(new ISOBinaryField(i, value));
+                return offset + len * 2;
+            }
+            default:
+                return unpackWithFieldPackager(frame, offset, end, i, msg);
+        }
+    }
+
+    /**
+     * Record where a field lies in the frame copy and set a lazy field for it
+     */
+    private int locateField(ByteBuf frame, int offset, int start, int end, FieldSpec spec, byte[] lazyFrame,
+            ISOMsg msg) throws ISOException {
+        int prefix = spec.getPrefixDigits();
+        int len = spec.isVariable() ? readLength(frame, offset, end, spec) : spec.getLength();
+        checkAvailable(spec.getFieldNumber(), offset + prefix, len, end);
+        msg.set(spec.isBinary()
+                ? new LazyBinaryField(lazyFrame, offset - start, prefix + len, spec)
+                : new LazyField(lazyFrame, offset - start, prefix + len, spec));
+        return offset + prefix + len;
+    }
+
+    /**
+     * Text and raw binary fields can be left in the frame; hex fields are decoded up front
+     */
+    private static boolean isLazy(FieldSpec spec) {
+        return spec != null && spec.getKind() != FieldSpec.Kind.HEX_BINARY && spec.getKind() != FieldSpec.Kind.BITMAP;
+    }
+
+    /**
+     * Get the field layout table used by this unpacker
+     */
+    public FieldSpec[] getFieldSpecs() {
+        return specs;
+    }
+
+    /**
+     * Parse the ASCII hex primary (and secondary, if flagged) bitmap into the BitSet
+     */
+    private int readBitmap(ByteBuf frame, int offset, int end, BitSet bitmap) throws ISOException {
+        checkAvailable(1, offset, 16, end);
+        long primary = readHexLong(frame, offset);
+        offset += 16;
+        setBits(bitmap, primary, 1);
+
+        if (bitmap.get(1) && specs[1].getLength() > 8) {
+            checkAvailable(1, offset, 16, end);
+            long secondary = readHexLong(frame, offset);
+            offset += 16;
+            setBits(bitmap, secondary, 65);
+        }
+        return offset;
+    }
+
+    private long readHexLong(ByteBuf frame, int offset) throws ISOException {
+        long value = 0;
+        for (int i = 0; i < 16; i++) {
+            value = (value << 4) | hexValue(frame, offset + i, 1);
+        }
+        return value;
+    }
+
+    private static void setBits(BitSet bitmap, long bits, int firstField) {
+        while (bits != 0) {
+            int leading = Long.numberOfLeadingZeros(bits);
+            bitmap.set(firstField + leading);
+            bits &= ~(Long.MIN_VALUE >>> leading);
+        }
+    }
+
+    private int hexValue(ByteBuf frame, int index, int fieldNumber) throws ISOException {
+        byte b = frame.getByte(index);
+        int value = b >= 0 ? HEX_VALUES[b] : -1;
+        if (value < 0) {
+            throw new ISOException("Invalid hex digit in field " + fieldNumber + " at offset " + index);
+        }
+        return value;
+    }
+
+    /**
+     * Decode the ASCII length prefix of a variable length field
+     */
+    private int readLength(ByteBuf frame, int offset, int end, FieldSpec spec) throws ISOException {
+        int digits = spec.getPrefixDigits();
+        checkAvailable(spec.getFieldNumber(), offset, digits, end);
+        int len = 0;
+        for (int i = 0; i < digits; i++) {
+            int d = frame.getByte(offset + i) - '0';
+            if (d < 0 || d > 9) {
+                throw new ISOException("Invalid length prefix for field " + spec.getFieldNumber());
+            }
+            len = len * 10 + d;
+        }
+        if (len > spec.getLength()) {
+            throw new ISOException("Field length " + len + " too long. Max: " + spec.getLength()
+                    + " (field " + spec.getFieldNumber() + ")");
+        }
+        return len;
+    }
+
+    /**
+     * Fallback for field packagers without a known layout; copies the remaining bytes once
+     */
+    private int unpackWithFieldPackager(ByteBuf frame, int offset, int end, int fieldNumber, ISOMsg msg)
+            throws ISOException {
+        ISOFieldPackager fp = packager.getFieldPackager(fieldNumber);
+        if (fp == null) {
+            throw new ISOException("Field " + fieldNumber + " present in bitmap but not defined by packager");
+        }
+        byte[] remaining = new byte[end - offset];
+        frame.getBytes(offset, remaining);
+        ISOComponent c = fp.createComponent(fieldNumber);
+        int consumed = fp.unpack(c, remaining, 0);
+        msg.set(c);
+        return offset + consumed;
+    }
+
+    private static void checkAvailable(int fieldNumber, int offset, int length, int end) throws ISOException {
+        if (offset + length > end) {
+            throw new ISOException("Message truncated while unpacking field " + fieldNumber
+                    + " (need " + length + " bytes at offset " + offset + ", frame ends at " + end + ")");
+        }
+    }
+}
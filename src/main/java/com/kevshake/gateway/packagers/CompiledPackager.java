@@ -0,0 +1,422 @@
+package com.kevshake.gateway.packagers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jpos.iso.ISOBasePackager;
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+import org.jpos.iso.ISOField;
+import org.jpos.iso.ISOFieldPackager;
+import org.jpos.iso.ISOMsg;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Pack and unpack code specialised for one packager's field table
+ * Subclasses are generated at build time by PackagerCodeGenerator, one per packager class.
+ * The generated code switches on the field number with one case per field, each calling one of
+ * the small helpers below with the field's fixed length, length prefix digits or maximum length
+ * as constants, so there is no FieldSpec lookup or switch on the field kind and the JIT can
+ * inline each call with its constants. Wire format and error messages are the same as
+ * ByteBufUnpacker and ByteBufPacker, which use the generated class when it is on the classpath
+ */
+public abstract class CompiledPackager {
+
+    /** Simple name prefix of generated classes, which live in the packager's package */
+    public static final String CLASS_PREFIX = "Compiled";
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_VALUES = new byte[128];
+    private static final byte[] ZEROS = new byte[999];
+    private static final byte[] SPACES = new byte[999];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+        Arrays.fill(ZEROS, (byte) '0');
+        Arrays.fill(SPACES, (byte) ' ');
+    }
+
+    protected final ISOBasePackager packager;
+    private final FieldSpec[] specs;
+
+    protected CompiledPackager(ISOBasePackager packager) {
+        this.packager = packager;
+        this.specs = FieldSpec.layoutOf(packager);
+    }
+
+    /**
+     * Generated code for a packager, or null if none was generated for its class
+     */
+    public static CompiledPackager forPackager(ISOBasePackager packager) {
+        Class<?> type = packager.getClass();
+        String name = type.getPackageName() + "." + CLASS_PREFIX + type.getSimpleName();
+        try {
+            Class<?> compiled = Class.forName(name, true, type.getClassLoader());
+            return (CompiledPackager) compiled.getConstructor(ISOBasePackager.class).newInstance(packager);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate " + name, e);
+        }
+    }
+
+    /**
+     * Unpack all readable bytes of the frame into a new ISOMsg and advance the reader index
+     */
+    public abstract ISOMsg unpack(ByteBuf frame) throws ISOException;
+
+    /**
+     * Exact number of bytes the message occupies when packed, without length header
+     */
+    public abstract int packedSize(ISOMsg msg) throws ISOException;
+
+    /**
+     * Pack the message into the buffer at its writer index
+     */
+    public abstract void pack(ISOMsg msg, ByteBuf out) throws ISOException;
+
+    // Unpacking; each reader returns the offset after the field
+
+    protected static int readFixed(ByteBuf frame, int offset, int end, int fieldNumber, int length, ISOMsg msg)
+            throws ISOException {
+        need(fieldNumber, offset, length, end);
+        msg.set(new ISOField(fieldNumber, frame.toString(offset, length, StandardCharsets.ISO_8859_1)));
+        return offset + length;
+    }
+
+    protected static int readLlvar(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength, ISOMsg msg)
+            throws ISOException {
+        int length = readLength2(frame, offset, end, fieldNumber, maxLength);
+        return readFixed(frame, offset + 2, end, fieldNumber, length, msg);
+    }
+
+    protected static int readLllvar(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength, ISOMsg msg)
+            throws ISOException {
+        int length = readLength3(frame, offset, end, fieldNumber, maxLength);
+        return readFixed(frame, offset + 3, end, fieldNumber, length, msg);
+    }
+
+    protected static int readBinary(ByteBuf frame, int offset, int end, int fieldNumber, int length, ISOMsg msg)
+            throws ISOException {
+        need(fieldNumber, offset, length, end);
+        byte[] value = new byte[length];
+        frame.getBytes(offset, value);
+        msg.set(new ISOBinaryField(fieldNumber, value));
+        return offset + length;
+    }
+
+    protected static int readLlbinary(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength, ISOMsg msg)
+            throws ISOException {
+        int length = readLength2(frame, offset, end, fieldNumber, maxLength);
+        return readBinary(frame, offset + 2, end, fieldNumber, length, msg);
+    }
+
+    protected static int readLllbinary(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength, ISOMsg msg)
+            throws ISOException {
+        int length = readLength3(frame, offset, end, fieldNumber, maxLength);
+        return readBinary(frame, offset + 3, end, fieldNumber, length, msg);
+    }
+
+    protected static int readHexBinary(ByteBuf frame, int offset, int end, int fieldNumber, int length, ISOMsg msg)
+            throws ISOException {
+        need(fieldNumber, offset, length * 2, end);
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int index = offset + i * 2;
+            value[i] = (byte) ((hexValue(frame, index, fieldNumber) << 4) | hexValue(frame, index + 1, fieldNumber));
+        }
+        msg.set(new ISOBinaryField(fieldNumber, value));
+        return offset + length * 2;
+    }
+
+    /**
+     * Field packager without a known layout; copies the remaining bytes once
+     */
+    protected int readWithFieldPackager(ByteBuf frame, int offset, int end, int fieldNumber, ISOMsg msg)
+            throws ISOException {
+        ISOFieldPackager fp = packager.getFieldPackager(fieldNumber);
+        if (fp == null) {
+            throw new ISOException("Field " + fieldNumber + " present in bitmap but not defined by packager");
+        }
+        byte[] remaining = new byte[end - offset];
+        frame.getBytes(offset, remaining);
+        ISOComponent c = fp.createComponent(fieldNumber);
+        int consumed = fp.unpack(c, remaining, 0);
+        msg.set(c);
+        return offset + consumed;
+    }
+
+    /**
+     * 16 ASCII hex digits of a primary or secondary bitmap
+     */
+    protected static long readBitmap(ByteBuf frame, int offset, int end) throws ISOException {
+        need(1, offset, 16, end);
+        long value = 0;
+        for (int i = 0; i < 16; i++) {
+            value = (value << 4) | hexValue(frame, offset + i, 1);
+        }
+        return value;
+    }
+
+    /**
+     * BitSet for ISOBitMap from the wire bitmaps, the top bit of the primary being field 1
+     */
+    protected static BitSet bitmap(long primary, long secondary, int size) {
+        BitSet bitmap = new BitSet(size);
+        setBits(bitmap, primary, 1);
+        setBits(bitmap, secondary, 65);
+        return bitmap;
+    }
+
+    private static void setBits(BitSet bitmap, long bits, int firstField) {
+        while (bits != 0) {
+            int leading = Long.numberOfLeadingZeros(bits);
+            bitmap.set(firstField + leading);
+            bits &= ~(Long.MIN_VALUE >>> leading);
+        }
+    }
+
+    private static int readLength2(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength)
+            throws ISOException {
+        need(fieldNumber, offset, 2, end);
+        int length = digit(frame, offset, fieldNumber) * 10 + digit(frame, offset + 1, fieldNumber);
+        return checkPrefix(fieldNumber, length, maxLength);
+    }
+
+    private static int readLength3(ByteBuf frame, int offset, int end, int fieldNumber, int maxLength)
+            throws ISOException {
+        need(fieldNumber, offset, 3, end);
+        int length = digit(frame, offset, fieldNumber) * 100 + digit(frame, offset + 1, fieldNumber) * 10
+                + digit(frame, offset + 2, fieldNumber);
+        return checkPrefix(fieldNumber, length, maxLength);
+    }
+
+    private static int digit(ByteBuf frame, int index, int fieldNumber) throws ISOException {
+        int d = frame.getByte(index) - '0';
+        if (d < 0 || d > 9) {
+            throw new ISOException("Invalid length prefix for field " + fieldNumber);
+        }
+        return d;
+    }
+
+    private static int checkPrefix(int fieldNumber, int length, int maxLength) throws ISOException {
+        if (length > maxLength) {
+            throw new ISOException("Field length " + length + " too long. Max: " + maxLength
+                    + " (field " + fieldNumber + ")");
+        }
+        return length;
+    }
+
+    private static int hexValue(ByteBuf frame, int index, int fieldNumber) throws ISOException {
+        byte b = frame.getByte(index);
+        int value = b >= 0 ? HEX_VALUES[b] : -1;
+        if (value < 0) {
+            throw new ISOException("Invalid hex digit in field " + fieldNumber + " at offset " + index);
+        }
+        return value;
+    }
+
+    private static void need(int fieldNumber, int offset, int length, int end) throws ISOException {
+        if (offset + length > end) {
+            throw new ISOException("Message truncated while unpacking field " + fieldNumber
+                    + " (need " + length + " bytes at offset " + offset + ", frame ends at " + end + ")");
+        }
+    }
+
+    // Packing
+
+    /**
+     * Highest field set, checked against the 128 fields a packager can define
+     */
+    protected static int maxField(ISOMsg msg) throws ISOException {
+        int maxField = msg.getMaxField();
+        if (maxField > 128) {
+            throw new ISOException("error packing field " + maxField + " (field not defined by packager)");
+        }
+        return maxField;
+    }
+
+    /**
+     * Fields present in the message, from the bitmap ISOMsg keeps up to date
+     */
+    protected static BitSet presentFields(ISOMsg msg) throws ISOException {
+        msg.recalcBitMap();
+        return (BitSet) msg.getComponent(-1).getValue();
+    }
+
+    protected static ISOComponent mti(ISOMsg msg) throws ISOException {
+        ISOComponent mti = msg.getComponent(0);
+        if (mti == null) {
+            throw new ISOException("error packing field 0 (MTI not set)");
+        }
+        return mti;
+    }
+
+    protected static void writeNumeric(int fieldNumber, ISOComponent c, int length, ByteBuf out) throws ISOException {
+        writeZeroPadded(fieldNumber, string(fieldNumber, c), length, out);
+    }
+
+    protected static void writeChar(int fieldNumber, ISOComponent c, int length, ByteBuf out) throws ISOException {
+        String value = string(fieldNumber, c);
+        checkLength(fieldNumber, value.length(), length);
+        out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+        out.writeBytes(SPACES, 0, length - value.length());
+    }
+
+    /**
+     * Sign character (C/D) first, amount zero padded behind it
+     */
+    protected static void writeAmount(int fieldNumber, ISOComponent c, int length, ByteBuf out) throws ISOException {
+        String value = string(fieldNumber, c);
+        if (value.isEmpty()) {
+            throw new ISOException("error packing field " + fieldNumber + " (empty amount)");
+        }
+        out.writeByte(value.charAt(0));
+        writeZeroPadded(fieldNumber, value.substring(1), length - 1, out);
+    }
+
+    protected static void writeLlvar(int fieldNumber, ISOComponent c, int maxLength, ByteBuf out) throws ISOException {
+        String value = string(fieldNumber, c);
+        int length = value.length();
+        checkLength(fieldNumber, length, maxLength);
+        out.writeByte('0' + length / 10);
+        out.writeByte('0' + length % 10);
+        out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+    }
+
+    protected static void writeLllvar(int fieldNumber, ISOComponent c, int maxLength, ByteBuf out) throws ISOException {
+        String value = string(fieldNumber, c);
+        int length = value.length();
+        checkLength(fieldNumber, length, maxLength);
+        out.writeByte('0' + length / 100);
+        out.writeByte('0' + length / 10 % 10);
+        out.writeByte('0' + length % 10);
+        out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+    }
+
+    protected static void writeBinary(int fieldNumber, ISOComponent c, int length, ByteBuf out) throws ISOException {
+        out.writeBytes(fixedBytes(fieldNumber, c, length));
+    }
+
+    protected static void writeLlbinary(int fieldNumber, ISOComponent c, int maxLength, ByteBuf out)
+            throws ISOException {
+        byte[] value = c.getBytes();
+        checkLength(fieldNumber, value.length, maxLength);
+        out.writeByte('0' + value.length / 10);
+        out.writeByte('0' + value.length % 10);
+        out.writeBytes(value);
+    }
+
+    protected static void writeLllbinary(int fieldNumber, ISOComponent c, int maxLength, ByteBuf out)
+            throws ISOException {
+        byte[] value = c.getBytes();
+        checkLength(fieldNumber, value.length, maxLength);
+        out.writeByte('0' + value.length / 100);
+        out.writeByte('0' + value.length / 10 % 10);
+        out.writeByte('0' + value.length % 10);
+        out.writeBytes(value);
+    }
+
+    protected static void writeHexBinary(int fieldNumber, ISOComponent c, int length, ByteBuf out)
+            throws ISOException {
+        for (byte b : fixedBytes(fieldNumber, c, length)) {
+            out.writeByte(HEX_DIGITS[(b >> 4) & 0x0F]);
+            out.writeByte(HEX_DIGITS[b & 0x0F]);
+        }
+    }
+
+    /**
+     * Field packager without a known layout, or a field the packager does not define
+     */
+    protected byte[] packWithFieldPackager(int fieldNumber, ISOComponent c) throws ISOException {
+        ISOFieldPackager fp = packager.getFieldPackager(fieldNumber);
+        if (fp == null) {
+            throw new ISOException("error packing field " + fieldNumber + " (field not defined by packager)");
+        }
+        return fp.pack(c);
+    }
+
+    /**
+     * Copy an unchanged field of a lazily unpacked message as received
+     *
+     * @return false if the field has to be packed from its value
+     */
+    protected boolean writeUnchanged(int fieldNumber, ISOComponent c, ByteBuf out) {
+        if (FrameField.unchangedLength(c, specs[fieldNumber]) < 0) {
+            return false;
+        }
+        ((FrameField) c).writeTo(out);
+        return true;
+    }
+
+    /**
+     * Wire length of an unchanged field of a lazily unpacked message, or -1
+     */
+    protected int unchangedLength(int fieldNumber, ISOComponent c) {
+        return FrameField.unchangedLength(c, specs[fieldNumber]);
+    }
+
+    /**
+     * Overwrite 16 reserved bytes with a bitmap as ASCII hex
+     */
+    protected static void setBitmap(int index, long value, ByteBuf out) {
+        out.setLong(index, hexAscii((int) (value >>> 32)));
+        out.setLong(index + 8, hexAscii((int) value));
+    }
+
+    protected static int charLength(int fieldNumber, ISOComponent c) throws ISOException {
+        return string(fieldNumber, c).length();
+    }
+
+    private static long hexAscii(int value) {
+        long ascii = 0;
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            ascii = (ascii << 8) | HEX_DIGITS[(value >>> shift) & 0x0F];
+        }
+        return ascii;
+    }
+
+    private static void writeZeroPadded(int fieldNumber, String value, int length, ByteBuf out) throws ISOException {
+        checkLength(fieldNumber, value.length(), length);
+        out.writeBytes(ZEROS, 0, length - value.length());
+        out.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String string(int fieldNumber, ISOComponent c) throws ISOException {
+        if (c instanceof ISOBinaryField) {
+            return new String(c.getBytes(), StandardCharsets.ISO_8859_1);
+        }
+        Object value = c.getValue();
+        if (!(value instanceof String)) {
+            throw new ISOException("error packing field " + fieldNumber + " (unsupported value type "
+                    + (value == null ? "null" : value.getClass().getSimpleName()) + ")");
+        }
+        return (String) value;
+    }
+
+    private static byte[] fixedBytes(int fieldNumber, ISOComponent c, int length) throws ISOException {
+        byte[] value = c.getBytes();
+        if (value == null || value.length != length) {
+            throw new ISOException("error packing field " + fieldNumber + " (binary length "
+                    + (value == null ? 0 : value.length) + ", expected " + length + ")");
+        }
+        return value;
+    }
+
+    private static void checkLength(int fieldNumber, int length, int maxLength) throws ISOException {
+        if (length > maxLength) {
+            throw new ISOException("error packing field " + fieldNumber
+                    + " (Field length " + length + " too long. Max: " + maxLength + ")");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.kevshake.gateway.packagers;
+
+import org.jpos.iso.*;
+
+/**
+ * Wire layout of a single ISO8583 field, derived from the jPOS field packager
+ * Lets the Netty codecs read and write fields by offset instead of going
+ * through ISOFieldPackager.pack()/unpack() and intermediate byte arrays
+ */
+public final class FieldSpec {
+
+    /**
+     * Wire representation of a field
+     */
+    public enum Kind {
+        NUMERIC,     // Fixed length ASCII digits, left padded with zeros (IFA_NUMERIC)
+        CHAR,        // Fixed length ASCII, right padded with spaces (IF_CHAR)
+        AMOUNT,      // Fixed length ASCII amount with C/D sign (IFA_AMOUNT)
+        VAR_CHAR,    // ASCII length prefix followed by ASCII data (IFA_LLNUM, IFA_LLCHAR, IFA_LLLCHAR)
+        BINARY,      // Fixed length raw bytes (IFB_BINARY)
+        VAR_BINARY,  // ASCII length prefix followed by raw bytes (IFA_LLBINARY, IFA_LLLBINARY)
+        HEX_BINARY,  // Fixed length bytes carried as ASCII hex (IFA_BINARY)
+        BITMAP       // Primary/secondary bitmap carried as ASCII hex (IFA_BITMAP)
+    }
+
+    private final int fieldNumber;
+    private final Kind kind;
+    private final int length;
+    private final int prefixDigits;
+    private final ISOFieldPackager fieldPackager;
+
+    private FieldSpec(int fieldNumber, Kind kind, int length, int prefixDigits, ISOFieldPackager fieldPackager) {
+        this.fieldNumber = fieldNumber;
+        this.kind = kind;
+        this.length = length;
+        this.prefixDigits = prefixDigits;
+        this.fieldPackager = fieldPackager;
+    }
+
+    /**
+     * Build the field layout table for a packager
+     * Entries are null for absent fields and for field packagers without a known
+     * wire layout; callers fall back to the jPOS field packager for those
+     *
+     * @param packager ISOBasePackager such as POSPackager or BankPackager
+     * @return array indexed by field number
+     */
+    public static FieldSpec[] layoutOf(ISOBasePackager packager) {
+        FieldSpec[] specs = new FieldSpec[129];
+        for (int i = 0; i < specs.length; i++) {
+            ISOFieldPackager fp = packager.getFieldPackager(i);
+            if (fp != null) {
+                specs[i] = of(i, fp);
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Describe a single field packager, or return null if its layout is unknown
+     */
+    public static FieldSpec of(int fieldNumber, ISOFieldPackager fp) {
+        Class<?> type = fp.getClass();
+        int len = fp.getLength();
+
+        if (type == IFA_NUMERIC.class) return new FieldSpec(fieldNumber, Kind.NUMERIC, len, 0, fp);
+        if (type == IF_CHAR.class) return new FieldSpec(fieldNumber, Kind.CHAR, len, 0, fp);
+        if (type == IFA_AMOUNT.class) return new FieldSpec(fieldNumber, Kind.AMOUNT, len, 0, fp);
+        if (type == IFA_LLNUM.class || type == IFA_LLCHAR.class) return new FieldSpec(fieldNumber, Kind.VAR_CHAR, len, 2, fp);
+        if (type == IFA_LLLCHAR.class) return new FieldSpec(fieldNumber, Kind.VAR_CHAR, len, 3, fp);
+        if (type == IFB_BINARY.class) return new FieldSpec(fieldNumber, Kind.BINARY, len, 0, fp);
+        if (type == IFA_LLBINARY.class) return new FieldSpec(fieldNumber, Kind.VAR_BINARY, len, 2, fp);
+        if (type == IFA_LLLBINARY.class) return new FieldSpec(fieldNumber, Kind.VAR_BINARY, len, 3, fp);
+        if (type == IFA_BINARY.class) return new FieldSpec(fieldNumber, Kind.HEX_BINARY, len, 0, fp);
+        if (type == IFA_BITMAP.class) return new FieldSpec(fieldNumber, Kind.BITMAP, len, 0, fp);
+
+        return null;
+    }
+
+    /**
+     * Check whether values of this field can be stored as ISOBinaryField
+     */
+    public boolean isBinary() {
+        return kind == Kind.BINARY || kind == Kind.VAR_BINARY || kind == Kind.HEX_BINARY;
+    }
+
+    /**
+     * Check whether the field carries an ASCII length prefix
+     */
+    public boolean isVariable() {
+        return prefixDigits > 0;
+    }
+
+    /**
+     * Check whether values are encoded the same way on the wire as in another field
+     */
+    public boolean hasSameLayout(FieldSpec other) {
+        return other != null && other.kind == kind && other.length == length && other.prefixDigits == prefixDigits;
+    }
+
+    /**
+     * Largest number of bytes this field can occupy on the wire
+     */
+    public int getMaxPackedLength() {
+        switch (kind) {
+            case HEX_BINARY:
+                return length * 2;
+            case BITMAP:
+                return length * 2;
+            default:
+                return prefixDigits + length;
+        }
+    }
+
+    // Getters
+    public int getFieldNumber() { return fieldNumber; }
+    public Kind getKind() { return kind; }
+    public int getLength() { return length; }
+    public int getPrefixDigits() { return prefixDigits; }
+    public ISOFieldPackager getFieldPackager() { return fieldPackager; }
+
+    @Override
+    public String toString() {
+        return "FieldSpec{" +
+                "field=" + fieldNumber +
+                ", kind=" + kind +
+                ", length=" + length +
+                ", prefixDigits=" + prefixDigits +
+                '}';
+    }
+}
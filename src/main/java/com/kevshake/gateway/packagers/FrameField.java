@@ -0,0 +1,58 @@
+package com.kevshake.gateway.packagers;
+
+import org.jpos.iso.ISOComponent;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Field of a lazily unpacked message that still refers to its bytes in the received frame
+ * Lets a packer copy the field as received when it is unchanged and the target packager
+ * encodes it the same way, and a log formatter mask it without decoding it
+ */
+public interface FrameField {
+
+    /**
+     * Wire length of the field, length prefix included, or -1 if it has been changed
+     * or the target field has a different layout
+     */
+    int unchangedLength(FieldSpec target);
+
+    /**
+     * Write the field's wire bytes, length prefix included
+     */
+    void writeTo(ByteBuf out);
+
+    /**
+     * Check whether the value has been decoded from the frame or set since
+     */
+    boolean isMaterialized();
+
+    /**
+     * Length of the value as received, length prefix excluded
+     */
+    int valueLength();
+
+    /**
+     * Byte of the value as received, length prefix excluded
+     */
+    byte valueAt(int index);
+
+    /**
+     * Copy part of the value as received into dst, one char per byte (ISO-8859-1)
+     */
+    void getChars(int from, int to, char[] dst, int dstBegin);
+
+    /**
+     * New component for the same received bytes, for another message to use on another thread
+     *
+     * @return the copy, or null if the field has been changed and has to be copied by value
+     */
+    ISOComponent copy();
+
+    /**
+     * Wire length of c if it is an unchanged frame field the target can take as received, or -1
+     */
+    static int unchangedLength(ISOComponent c, FieldSpec target) {
+        return c instanceof FrameField ? ((FrameField) c).unchangedLength(target) : -1;
+    }
+}
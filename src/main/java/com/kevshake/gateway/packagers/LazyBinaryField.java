@@ -0,0 +1,135 @@
+package com.kevshake.gateway.packagers;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.jpos.iso.ISOBinaryField;
+import org.jpos.iso.ISOComponent;
+import org.jpos.iso.ISOException;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * ISOBinaryField counterpart of LazyField, for raw binary fields such as PIN data and ICC data
+ */
+public class LazyBinaryField extends ISOBinaryField implements FrameField {
+
+    private final byte[] frame;
+    private final int offset;
+    private final int length;
+    private final FieldSpec spec;
+    // Written under the lock; a reader that sees materialized set also sees the decoded value
+    private volatile boolean materialized;
+    private volatile boolean changed;
+
+    /**
+     * @param frame copy of the received frame
+     * @param offset start of the field in the frame, length prefix included
+     * @param length wire length of the field, length prefix included
+     */
+    LazyBinaryField(byte[] frame, int offset, int length, FieldSpec spec) {
+        super(spec.getFieldNumber());
+        this.frame = frame;
+        this.offset = offset;
+        this.length = length;
+        this.spec = spec;
+    }
+
+    @Override
+    public Object getValue() {
+        materialize();
+        return value;
+    }
+
+    @Override
+    public synchronized void setValue(Object obj) throws ISOException {
+        super.setValue(obj);
+        changed = true;
+        materialized = true;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        materialize();
+        return value;
+    }
+
+    @Override
+    public byte[] pack() throws ISOException {
+        materialize();
+        return super.pack();
+    }
+
+    @Override
+    public void dump(PrintStream p, String indent) {
+        materialize();
+        super.dump(p, indent);
+    }
+
+    @Override
+    public String toString() {
+        materialize();
+        return super.toString();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        materialize();
+        super.writeExternal(out);
+    }
+
+    @Override
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    @Override
+    public int unchangedLength(FieldSpec target) {
+        return !changed && spec.hasSameLayout(target) ? length : -1;
+    }
+
+    @Override
+    public void writeTo(ByteBuf out) {
+        out.writeBytes(frame, offset, length);
+    }
+
+    @Override
+    public int valueLength() {
+        return length - spec.getPrefixDigits();
+    }
+
+    @Override
+    public byte valueAt(int index) {
+        return frame[offset + spec.getPrefixDigits() + index];
+    }
+
+    @Override
+    public void getChars(int from, int to, char[] dst, int dstBegin) {
+        int start = offset + spec.getPrefixDigits() + from;
+        for (int i = 0; i < to - from; i++) {
+            dst[dstBegin + i] = (char) (frame[start + i] & 0xFF);
+        }
+    }
+
+    @Override
+    public ISOComponent copy() {
+        return changed ? null : new LazyBinaryField(frame, offset, length, spec);
+    }
+
+    /**
+     * Decode the value once; the processing and bank threads may both read the field
+     */
+    private void materialize() {
+        if (!materialized) {
+            synchronized (this) {
+                if (!materialized) {
+                    int prefix = spec.getPrefixDigits();
+                    value = Arrays.copyOfRange(frame, offset + prefix, offset + length);
+                    materialized = true;
+                }
+            }
+        }
+    }
+}
@@ -140,6 +140,17 @@ public interface TerminalKeyRepository extends JpaRepository<TerminalKey, Long>
            "ORDER BY tk.createdDate DESC")
     List<TerminalKey> findKeysByTerminalIdOrderByCreatedDateDesc(@Param("terminalId") String terminalId);
 
+    /**
+     * Find the active key assigned to an active terminal
+     * Reads the key columns in one query, without loading the lazy Terminal/TerminalKey association
+     * @param terminalId the terminal ID to search for
+     * @return Optional containing the key data if the terminal can use its key
+     */
+    @Query("SELECT tk.keyId AS keyId, tk.keyValue AS keyValue, tk.expiryDate AS expiryDate " +
+           "FROM Terminal t JOIN t.terminalKey tk WHERE t.terminalId = :terminalId " +
+           "AND t.status = 'ACTIVE' AND tk.keyStatus = 'ACTIVE'")
+    Optional<ActiveKey> findActiveKeyByTerminalId(@Param("terminalId") String terminalId);
+
     /**
      * Find keys that need to be rotated (old keys that should be replaced)
      * @param maxAgeInDays maximum age of keys in days before rotation needed
@@ -226,4 +237,13 @@ public interface TerminalKeyRepository extends JpaRepository<TerminalKey, Long>
         @Param("keyStatus") TerminalKey.KeyStatus keyStatus,
         @Param("keyLength") Integer keyLength,
         @Param("hasTerminal") Boolean hasTerminal);
+
+    /**
+     * Key columns needed to use a terminal key
+     */
+    interface ActiveKey {
+        Long getKeyId();
+        String getKeyValue();
+        LocalDateTime getExpiryDate();
+    }
 }
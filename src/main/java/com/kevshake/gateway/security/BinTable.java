@@ -0,0 +1,267 @@
+package com.kevshake.gateway.security;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BIN/IIN prefix table for card scheme detection
+ * Prefixes and prefix ranges are expanded into a decimal digit trie once, so a lookup walks
+ * at most one node per leading PAN digit without regular expressions or allocation.
+ * The longest matching prefix whose PAN length rule accepts the PAN wins; on equal prefixes
+ * the entry listed first in the table wins.
+ *
+ * Table format, one entry per line ({@code #} starts a comment):
+ * <pre>
+ * # scheme           prefixes                  PAN lengths
+ * VISA               4                         13,16
+ * MASTERCARD         51-55,2221-2720           16
+ * MAESTRO            50,56-58,6304,6390,67     12-19
+ * </pre>
+ * Scheme names matching a {@link CardValidationService.CardType} constant map to that type;
+ * any other name is reported as {@code OTHER} with the name as display name
+ */
+public final class BinTable {
+
+    /**
+     * Card scheme resolved from the table
+     */
+    public static final class Scheme {
+        private final String name;
+        private final CardValidationService.CardType cardType;
+        private final String displayName;
+
+        Scheme(String name) {
+            CardValidationService.CardType type = CardValidationService.CardType.OTHER;
+            for (CardValidationService.CardType candidate : CardValidationService.CardType.values()) {
+                if (candidate.name().equalsIgnoreCase(name)) {
+                    type = candidate;
+                    break;
+                }
+            }
+            this.name = name;
+            this.cardType = type;
+            this.displayName = type == CardValidationService.CardType.OTHER ? name.replace('_', ' ') : type.getDisplayName();
+        }
+
+        public String getName() { return name; }
+        public CardValidationService.CardType getCardType() { return cardType; }
+        public String getDisplayName() { return displayName; }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Scheme and the PAN lengths it accepts under one prefix
+     */
+    private static final class Rule {
+        final Scheme scheme;
+        final int lengthMask;   // bit n set when PAN length n is accepted
+
+        Rule(Scheme scheme, int lengthMask) {
+            this.scheme = scheme;
+            this.lengthMask = lengthMask;
+        }
+    }
+
+    private static final class Node {
+        final Node[] children = new Node[10];
+        Rule[] rules;
+    }
+
+    private static final int MAX_PAN_LENGTH = 31;
+
+    private final Node root = new Node();
+    private int entries;
+    private int prefixes;
+
+    private BinTable() {
+    }
+
+    /**
+     * Load a table in the format described above
+     *
+     * @throws IllegalArgumentException if a line is malformed, with its line number
+     */
+    public static BinTable load(InputStream in) throws IOException {
+        BinTable table = new BinTable();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] columns = line.split("\\s+");
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("BIN table line " + lineNumber + ": expected scheme, prefixes and lengths");
+            }
+            try {
+                table.add(new Scheme(columns[0]), columns[1], parseLengths(columns[2]));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("BIN table line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Find the scheme of a PAN
+     *
+     * @param pan digits only
+     * @return the scheme, or null if no entry matches the PAN and its length
+     */
+    public Scheme lookup(CharSequence pan) {
+        int length = pan.length();
+        if (length > MAX_PAN_LENGTH) {
+            return null;
+        }
+        int lengthBit = 1 << length;
+        Scheme match = null;
+        Node node = root;
+        for (int i = 0; i < length; i++) {
+            int digit = pan.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            node = node.children[digit];
+            if (node == null) {
+                break;
+            }
+            if (node.rules != null) {
+                for (Rule rule : node.rules) {
+                    if ((rule.lengthMask & lengthBit) != 0) {
+                        match = rule.scheme;
+                        break;
+                    }
+                }
+            }
+        }
+        return match;
+    }
+
+    /** Number of table entries loaded */
+    public int getEntryCount() { return entries; }
+
+    /** Number of trie prefixes the entries expanded into */
+    public int getPrefixCount() { return prefixes; }
+
+    private void add(Scheme scheme, String prefixList, int lengthMask) {
+        List<String> expanded = new ArrayList<>();
+        for (String item : prefixList.split(",")) {
+            int dash = item.indexOf('-');
+            if (dash < 0) {
+                expanded.add(digits(item));
+            } else {
+                String low = digits(item.substring(0, dash));
+                String high = digits(item.substring(dash + 1));
+                if (low.length() != high.length() || low.compareTo(high) > 0) {
+                    throw new IllegalArgumentException("invalid prefix range " + item);
+                }
+                cover(low, high, expanded);
+            }
+        }
+        for (String prefix : expanded) {
+            insert(prefix, new Rule(scheme, lengthMask));
+        }
+        entries++;
+    }
+
+    private void insert(String prefix, Rule rule) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            int digit = prefix.charAt(i) - '0';
+            if (node.children[digit] == null) {
+                node.children[digit] = new Node();
+            }
+            node = node.children[digit];
+        }
+        if (node.rules == null) {
+            node.rules = new Rule[] { rule };
+        } else {
+            Rule[] rules = Arrays.copyOf(node.rules, node.rules.length + 1);
+            rules[rules.length - 1] = rule;
+            node.rules = rules;
+        }
+        prefixes++;
+    }
+
+    /**
+     * Smallest set of prefixes covering every number from low to high (same number of digits),
+     * e.g. 2221-2720 becomes 2221..2229, 223..229, 23..26, 270, 271, 2720
+     */
+    static void cover(String low, String high, List<String> out) {
+        if (low.equals(high)) {
+            out.add(low);
+            return;
+        }
+        int common = 0;
+        while (low.charAt(common) == high.charAt(common)) {
+            common++;
+        }
+        if (allOf(low, common, '0') && allOf(high, common, '9')) {
+            out.add(low.substring(0, common));
+            return;
+        }
+        String prefix = low.substring(0, common);
+        char first = low.charAt(common);
+        char last = high.charAt(common);
+        int tail = low.length() - common - 1;
+        cover(low, prefix + first + "9".repeat(tail), out);
+        for (char d = (char) (first + 1); d < last; d++) {
+            out.add(prefix + d);
+        }
+        cover(prefix + last + "0".repeat(tail), high, out);
+    }
+
+    private static boolean allOf(String s, int from, char c) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String digits(String s) {
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("empty prefix");
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                throw new IllegalArgumentException("prefix is not numeric: " + s);
+            }
+        }
+        return s;
+    }
+
+    private static int parseLengths(String spec) {
+        int mask = 0;
+        for (String item : spec.split(",")) {
+            int dash = item.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? item : item.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(item.substring(dash + 1));
+            if (from < 1 || to > MAX_PAN_LENGTH || from > to) {
+                throw new IllegalArgumentException("invalid PAN length " + item);
+            }
+            for (int n = from; n <= to; n++) {
+                mask |= 1 << n;
+            }
+        }
+        return mask;
+    }
+}
@@ -1,18 +1,27 @@
 package com.kevshake.gateway.security;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
+import com.kevshake.gateway.components.LogEvent;
 import com.kevshake.gateway.components.MaskedLogger;
 
+import jakarta.annotation.PostConstruct;
+
 /**
  * Card Validation Service using Luhn Algorithm
  * Validates PAN/Card numbers for mathematical correctness
  * 
  * The Luhn algorithm is used to validate credit card numbers, IMEI numbers, and other identifier numbers.
  * It was designed to protect against accidental errors in manually entered numbers.
+ * Card schemes are detected with the BIN table loaded from iso8583.security.card.bin-file.
  */
 @Service
 public class CardValidationService {
@@ -21,8 +30,14 @@ public class CardValidationService {
     @Autowired
     private MaskedLogger maskedLogger;
     
+    @Value("${iso8583.security.card.bin-file:classpath:bin-table.txt}")
+    private Resource binFile;
+    
+    private volatile BinTable binTable;
+    
     /**
      * Card type enumeration based on card number patterns
+     * The patterns describe the built-in schemes; detection uses the BIN table
      */
     public enum CardType {
         VISA("Visa", "^4[0-9]{12}(?:[0-9]{3})?$"),
@@ -32,6 +47,7 @@ public class CardValidationService {
         JCB("JCB", "^(?:2131|1800|35\\d{3})\\d{11}$"),
         DINERS_CLUB("Diners Club", "^3(?:0[0-5]|[68][0-9])[0-9]{11}$"),
         MAESTRO("Maestro", "^(?:5[0678]\\d\\d|6304|6390|67\\d\\d)\\d{8,15}$"),
+        OTHER("Other", null),           // Scheme defined only in the BIN table
         UNKNOWN("Unknown", ".*");
         
         private final String displayName;
@@ -58,13 +74,19 @@ public class CardValidationService {
         private final boolean valid;
         private final boolean luhnValid;
         private final CardType cardType;
+        private final String schemeName;
         private final String maskedPan;
         private final String errorMessage;
         
         public CardValidationResult(boolean valid, boolean luhnValid, CardType cardType, String maskedPan, String errorMessage) {
+            this(valid, luhnValid, cardType, cardType.getDisplayName(), maskedPan, errorMessage);
+        }
+        
+        public CardValidationResult(boolean valid, boolean luhnValid, CardType cardType, String schemeName, String maskedPan, String errorMessage) {
             this.valid = valid;
             this.luhnValid = luhnValid;
             this.cardType = cardType;
+            this.schemeName = schemeName;
             this.maskedPan = maskedPan;
             this.errorMessage = errorMessage;
         }
@@ -72,16 +94,29 @@ public class CardValidationService {
         public boolean isValid() { return valid; }
         public boolean isLuhnValid() { return luhnValid; }
         public CardType getCardType() { return cardType; }
+        public String getSchemeName() { return schemeName; }
         public String getMaskedPan() { return maskedPan; }
         public String getErrorMessage() { return errorMessage; }
         
         @Override
         public String toString() {
             return String.format("CardValidationResult{valid=%s, luhnValid=%s, cardType=%s, maskedPan='%s', errorMessage='%s'}", 
-                valid, luhnValid, cardType.getDisplayName(), maskedPan, errorMessage);
+                valid, luhnValid, schemeName, maskedPan, errorMessage);
         }
     }
     
+    /**
+     * Load the BIN table used for card type detection
+     */
+    @PostConstruct
+    public void loadBinTable() throws IOException {
+        try (InputStream in = binFile.getInputStream()) {
+            binTable = BinTable.load(in);
+        }
+        log.info("Loaded BIN table {}: {} entries, {} prefixes", binFile.getDescription(),
+            binTable.getEntryCount(), binTable.getPrefixCount());
+    }
+    
     /**
      * Validate card number using Luhn algorithm and card type detection
      * 
@@ -96,7 +131,7 @@ public class CardValidationService {
             }
             
             // Remove any spaces or non-digit characters
-            String cleanPan = pan.replaceAll("[^0-9]", "");
+            String cleanPan = digitsOnly(pan);
             
             // Check minimum and maximum length
             if (cleanPan.length() < 13 || cleanPan.length() > 19) {
@@ -106,7 +141,9 @@ public class CardValidationService {
             }
             
             // Detect card type
-            CardType cardType = detectCardType(cleanPan);
+            BinTable.Scheme scheme = binTable.lookup(cleanPan);
+            CardType cardType = scheme != null ? scheme.getCardType() : CardType.UNKNOWN;
+            String schemeName = scheme != null ? scheme.getDisplayName() : CardType.UNKNOWN.getDisplayName();
             String maskedPan = maskPan(cleanPan);
             
             // Perform Luhn validation
@@ -117,13 +154,11 @@ public class CardValidationService {
             
             // Log validation attempt (without exposing sensitive data)
             if (valid) {
-                maskedLogger.logSystemEvent("CARD_VALIDATION_SUCCESS", 
-                    String.format("Card validation successful - Type: %s, Masked PAN: %s", 
-                    cardType.getDisplayName(), maskedPan));
+                maskedLogger.log(LogEvent.CARD_VALIDATION_SUCCESS, "Card validation successful - Type: {}, Masked PAN: {}", 
+                    schemeName, maskedPan);
             } else {
-                maskedLogger.logSystemEvent("CARD_VALIDATION_FAILED", 
-                    String.format("Card validation failed - Type: %s, Masked PAN: %s, Luhn Valid: %s", 
-                    cardType.getDisplayName(), maskedPan, luhnValid));
+                maskedLogger.log(LogEvent.CARD_VALIDATION_FAILED, "Card validation failed - Type: {}, Masked PAN: {}, Luhn Valid: {}", 
+                    schemeName, maskedPan, luhnValid);
             }
             
             String errorMessage = null;
@@ -133,11 +168,11 @@ public class CardValidationService {
                 errorMessage = "Unknown or unsupported card type";
             }
             
-            return new CardValidationResult(valid, luhnValid, cardType, maskedPan, errorMessage);
+            return new CardValidationResult(valid, luhnValid, cardType, schemeName, maskedPan, errorMessage);
             
         } catch (Exception e) {
             log.error("Error during card validation", e);
-            maskedLogger.logError("CARD_VALIDATION_ERROR", "Card validation processing error", e);
+            maskedLogger.log(LogEvent.CARD_VALIDATION_ERROR, e, "Card validation processing error");
             return new CardValidationResult(false, false, CardType.UNKNOWN, "****", "Validation processing error");
         }
     }
@@ -153,29 +188,43 @@ public class CardValidationService {
             return false;
         }
         
-        String cleanPan = pan.replaceAll("[^0-9]", "");
-        return isLuhnValid(cleanPan);
+        return isLuhnValid(digitsOnly(pan));
     }
     
     /**
-     * Detect card type based on card number patterns
+     * Detect card type from the BIN table
      * 
      * @param pan Clean card number (digits only)
-     * @return CardType enum value
+     * @return CardType enum value, OTHER for schemes only defined in the table
      */
     public CardType detectCardType(String pan) {
         if (pan == null || pan.isEmpty()) {
             return CardType.UNKNOWN;
         }
         
-        // Check each card type pattern
-        for (CardType cardType : CardType.values()) {
-            if (cardType != CardType.UNKNOWN && pan.matches(cardType.getPattern())) {
-                return cardType;
+        BinTable.Scheme scheme = binTable.lookup(pan);
+        return scheme != null ? scheme.getCardType() : CardType.UNKNOWN;
+    }
+    
+    /**
+     * Strip non-digit characters; PANs that are already digits only are returned as is
+     */
+    private static String digitsOnly(String pan) {
+        int i = 0;
+        while (i < pan.length() && pan.charAt(i) >= '0' && pan.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == pan.length()) {
+            return pan;
+        }
+        StringBuilder digits = new StringBuilder(pan.length()).append(pan, 0, i);
+        for (; i < pan.length(); i++) {
+            char c = pan.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
             }
         }
-        
-        return CardType.UNKNOWN;
+        return digits.toString();
     }
     
     /**
@@ -252,20 +301,30 @@ public class CardValidationService {
      * @return true if card is valid, false otherwise
      */
     public boolean validateCardForTransaction(String pan, String transactionId) {
+        return validateCard(pan, transactionId).isValid();
+    }
+    
+    /**
+     * Validate card number and log the result for a transaction
+     * The result is meant to be kept with the message so later stages do not validate again
+     * 
+     * @param pan Primary Account Number
+     * @param transactionId Transaction identifier for logging
+     * @return CardValidationResult with validation details
+     */
+    public CardValidationResult validateCard(String pan, String transactionId) {
         CardValidationResult result = validateCard(pan);
         
         // Log transaction-specific validation
         if (result.isValid()) {
-            maskedLogger.logSystemEvent("TXN_CARD_VALIDATION_SUCCESS", 
-                String.format("Transaction %s - Card validation successful: %s (%s)", 
-                transactionId, result.getMaskedPan(), result.getCardType().getDisplayName()));
+            maskedLogger.log(LogEvent.TXN_CARD_VALIDATION_SUCCESS, "Transaction {} - Card validation successful: {} ({})", 
+                transactionId, result.getMaskedPan(), result.getSchemeName());
         } else {
-            maskedLogger.logSystemEvent("TXN_CARD_VALIDATION_FAILED", 
-                String.format("Transaction %s - Card validation failed: %s - %s", 
-                transactionId, result.getMaskedPan(), result.getErrorMessage()));
+            maskedLogger.log(LogEvent.TXN_CARD_VALIDATION_FAILED, "Transaction {} - Card validation failed: {} - {}", 
+                transactionId, result.getMaskedPan(), result.getErrorMessage());
         }
         
-        return result.isValid();
+        return result;
     }
     
     /**
@@ -280,7 +339,7 @@ public class CardValidationService {
         StringBuilder info = new StringBuilder();
         info.append(String.format("Card Information:\n"));
         info.append(String.format("  Masked PAN: %s\n", result.getMaskedPan()));
-        info.append(String.format("  Card Type: %s\n", result.getCardType().getDisplayName()));
+        info.append(String.format("  Card Type: %s\n", result.getSchemeName()));
         info.append(String.format("  Luhn Valid: %s\n", result.isLuhnValid()));
         info.append(String.format("  Overall Valid: %s\n", result.isValid()));
         
@@ -347,7 +406,7 @@ public class CardValidationService {
             
             if (actual == expected) {
                 passed++;
-                log.info("✓ PASS: {} - {} ({})", description, result.getMaskedPan(), result.getCardType().getDisplayName());
+                log.info("✓ PASS: {} - {} ({})", description, result.getMaskedPan(), result.getSchemeName());
             } else {
                 log.error("✗ FAIL: {} - Expected: {}, Actual: {} ({})", description, expected, actual, result.getMaskedPan());
             }
@@ -356,10 +415,9 @@ public class CardValidationService {
         log.info("=== Test Results: {}/{} passed ===", passed, total);
         
         if (passed == total) {
-            maskedLogger.logSystemEvent("LUHN_TEST_SUCCESS", "All Luhn algorithm tests passed");
+            maskedLogger.log(LogEvent.LUHN_TEST_SUCCESS, "All Luhn algorithm tests passed");
         } else {
-            maskedLogger.logSystemEvent("LUHN_TEST_FAILED", 
-                String.format("Luhn algorithm tests failed: %d/%d passed", passed, total));
+            maskedLogger.log(LogEvent.LUHN_TEST_FAILED, "Luhn algorithm tests failed: {}/{} passed", passed, total);
         }
     }
     
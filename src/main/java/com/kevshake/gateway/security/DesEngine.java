@@ -0,0 +1,206 @@
+package com.kevshake.gateway.security;
+
+/**
+ * Table-driven DES block cipher working on 64-bit longs
+ * The initial/final permutations and the combined S-box + P permutation are expanded into
+ * lookup tables once at class load, so a block costs a few dozen table reads and XORs.
+ * Key schedules are computed once per key and can be reused for any number of blocks
+ */
+public final class DesEngine {
+
+    private static final int[] IP = {
+        58, 50, 42, 34, 26, 18, 10, 2, 60, 52, 44, 36, 28, 20, 12, 4,
+        62, 54, 46, 38, 30, 22, 14, 6, 64, 56, 48, 40, 32, 24, 16, 8,
+        57, 49, 41, 33, 25, 17, 9, 1, 59, 51, 43, 35, 27, 19, 11, 3,
+        61, 53, 45, 37, 29, 21, 13, 5, 63, 55, 47, 39, 31, 23, 15, 7 };
+
+    private static final int[] FP = {
+        40, 8, 48, 16, 56, 24, 64, 32, 39, 7, 47, 15, 55, 23, 63, 31,
+        38, 6, 46, 14, 54, 22, 62, 30, 37, 5, 45, 13, 53, 21, 61, 29,
+        36, 4, 44, 12, 52, 20, 60, 28, 35, 3, 43, 11, 51, 19, 59, 27,
+        34, 2, 42, 10, 50, 18, 58, 26, 33, 1, 41, 9, 49, 17, 57, 25 };
+
+    private static final int[] PC1 = {
+        57, 49, 41, 33, 25, 17, 9, 1, 58, 50, 42, 34, 26, 18,
+        10, 2, 59, 51, 43, 35, 27, 19, 11, 3, 60, 52, 44, 36,
+        63, 55, 47, 39, 31, 23, 15, 7, 62, 54, 46, 38, 30, 22,
+        14, 6, 61, 53, 45, 37, 29, 21, 13, 5, 28, 20, 12, 4 };
+
+    private static final int[] PC2 = {
+        14, 17, 11, 24, 1, 5, 3, 28, 15, 6, 21, 10,
+        23, 19, 12, 4, 26, 8, 16, 7, 27, 20, 13, 2,
+        41, 52, 31, 37, 47, 55, 30, 40, 51, 45, 33, 48,
+        44, 49, 39, 56, 34, 53, 46, 42, 50, 36, 29, 32 };
+
+    private static final int[] P = {
+        16, 7, 20, 21, 29, 12, 28, 17, 1, 15, 23, 26, 5, 18, 31, 10,
+        2, 8, 24, 14, 32, 27, 3, 9, 19, 13, 30, 6, 22, 11, 4, 25 };
+
+    private static final int[] SHIFTS = { 1, 1, 2, 2, 2, 2, 2, 2, 1, 2, 2, 2, 2, 2, 2, 1 };
+
+    // S-boxes indexed by (row << 4) | column
+    private static final byte[][] SBOX = {
+        { 14, 4, 13, 1, 2, 15, 11, 8, 3, 10, 6, 12, 5, 9, 0, 7,
+          0, 15, 7, 4, 14, 2, 13, 1, 10, 6, 12, 11, 9, 5, 3, 8,
+          4, 1, 14, 8, 13, 6, 2, 11, 15, 12, 9, 7, 3, 10, 5, 0,
+          15, 12, 8, 2, 4, 9, 1, 7, 5, 11, 3, 14, 10, 0, 6, 13 },
+        { 15, 1, 8, 14, 6, 11, 3, 4, 9, 7, 2, 13, 12, 0, 5, 10,
+          3, 13, 4, 7, 15, 2, 8, 14, 12, 0, 1, 10, 6, 9, 11, 5,
+          0, 14, 7, 11, 10, 4, 13, 1, 5, 8, 12, 6, 9, 3, 2, 15,
+          13, 8, 10, 1, 3, 15, 4, 2, 11, 6, 7, 12, 0, 5, 14, 9 },
+        { 10, 0, 9, 14, 6, 3, 15, 5, 1, 13, 12, 7, 11, 4, 2, 8,
+          13, 7, 0, 9, 3, 4, 6, 10, 2, 8, 5, 14, 12, 11, 15, 1,
+          13, 6, 4, 9, 8, 15, 3, 0, 11, 1, 2, 12, 5, 10, 14, 7,
+          1, 10, 13, 0, 6, 9, 8, 7, 4, 15, 14, 3, 11, 5, 2, 12 },
+        { 7, 13, 14, 3, 0, 6, 9, 10, 1, 2, 8, 5, 11, 12, 4, 15,
+          13, 8, 11, 5, 6, 15, 0, 3, 4, 7, 2, 12, 1, 10, 14, 9,
+          10, 6, 9, 0, 12, 11, 7, 13, 15, 1, 3, 14, 5, 2, 8, 4,
+          3, 15, 0, 6, 10, 1, 13, 8, 9, 4, 5, 11, 12, 7, 2, 14 },
+        { 2, 12, 4, 1, 7, 10, 11, 6, 8, 5, 3, 15, 13, 0, 14, 9,
+          14, 11, 2, 12, 4, 7, 13, 1, 5, 0, 15, 10, 3, 9, 8, 6,
+          4, 2, 1, 11, 10, 13, 7, 8, 15, 9, 12, 5, 6, 3, 0, 14,
+          11, 8, 12, 7, 1, 14, 2, 13, 6, 15, 0, 9, 10, 4, 5, 3 },
+        { 12, 1, 10, 15, 9, 2, 6, 8, 0, 13, 3, 4, 14, 7, 5, 11,
+          10, 15, 4, 2, 7, 12, 9, 5, 6, 1, 13, 14, 0, 11, 3, 8,
+          9, 14, 15, 5, 2, 8, 12, 3, 7, 0, 4, 10, 1, 13, 11, 6,
+          4, 3, 2, 12, 9, 5, 15, 10, 11, 14, 1, 7, 6, 0, 8, 13 },
+        { 4, 11, 2, 14, 15, 0, 8, 13, 3, 12, 9, 7, 5, 10, 6, 1,
+          13, 0, 11, 7, 4, 9, 1, 10, 14, 3, 5, 12, 2, 15, 8, 6,
+          1, 4, 11, 13, 12, 3, 7, 14, 10, 15, 6, 8, 0, 5, 9, 2,
+          6, 11, 13, 8, 1, 4, 10, 7, 9, 5, 0, 15, 14, 2, 3, 12 },
+        { 13, 2, 8, 4, 6, 15, 11, 1, 10, 9, 3, 14, 5, 0, 12, 7,
+          1, 15, 13, 8, 10, 3, 7, 4, 12, 5, 6, 11, 0, 14, 9, 2,
+          7, 11, 4, 1, 9, 12, 14, 2, 0, 6, 10, 13, 15, 3, 5, 8,
+          2, 1, 14, 7, 4, 10, 8, 13, 15, 12, 9, 0, 3, 5, 6, 11 } };
+
+    // Permutation of each input byte value, OR-ed together to permute a whole block
+    private static final long[][] IP_TABLE = byteTables(IP);
+    private static final long[][] FP_TABLE = byteTables(FP);
+
+    // S-box j output for each 6-bit input, already moved through the P permutation
+    private static final int[][] SP = spTables();
+
+    /** Number of bytes in a key schedule: 16 rounds of eight 6-bit subkey chunks */
+    public static final int SCHEDULE_SIZE = 128;
+
+    private DesEngine() {
+    }
+
+    /**
+     * Expand a 64-bit DES key (parity bits ignored) into its round subkeys
+     */
+    public static byte[] keySchedule(long key) {
+        byte[] schedule = new byte[SCHEDULE_SIZE];
+        long cd = permute(key, 64, PC1);
+        int c = (int) (cd >>> 28) & 0x0FFFFFFF;
+        int d = (int) cd & 0x0FFFFFFF;
+        for (int round = 0; round < 16; round++) {
+            int shift = SHIFTS[round];
+            c = ((c << shift) | (c >>> (28 - shift))) & 0x0FFFFFFF;
+            d = ((d << shift) | (d >>> (28 - shift))) & 0x0FFFFFFF;
+            long subkey = permute(((long) c << 28) | d, 56, PC2);
+            for (int j = 0; j < 8; j++) {
+                schedule[round * 8 + j] = (byte) ((subkey >>> (42 - 6 * j)) & 0x3F);
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Encrypt one block with the given key schedule
+     */
+    public static long encrypt(long block, byte[] schedule) {
+        return crypt(block, schedule, false);
+    }
+
+    /**
+     * Decrypt one block with the given key schedule
+     */
+    public static long decrypt(long block, byte[] schedule) {
+        return crypt(block, schedule, true);
+    }
+
+    /**
+     * Triple DES encrypt-decrypt-encrypt of one block
+     */
+    public static long encryptEde(long block, byte[] k1, byte[] k2, byte[] k3) {
+        return crypt(crypt(crypt(block, k1, false), k2, true), k3, false);
+    }
+
+    /**
+     * Triple DES decrypt-encrypt-decrypt of one block, the inverse of encryptEde with the same keys
+     */
+    public static long decryptEde(long block, byte[] k1, byte[] k2, byte[] k3) {
+        return crypt(crypt(crypt(block, k3, true), k2, false), k1, true);
+    }
+
+    private static long crypt(long block, byte[] schedule, boolean decrypt) {
+        long ip = lookup(IP_TABLE, block);
+        int left = (int) (ip >>> 32);
+        int right = (int) ip;
+        for (int round = 0; round < 16; round++) {
+            int offset = (decrypt ? 15 - round : round) * 8;
+            int next = left ^ f(right, schedule, offset);
+            left = right;
+            right = next;
+        }
+        // The halves are swapped once more before the final permutation
+        return lookup(FP_TABLE, ((long) right << 32) | (left & 0xFFFFFFFFL));
+    }
+
+    private static int f(int right, byte[] schedule, int offset) {
+        // Expansion: DES bit 32 in front of bits 1..32 followed by bit 1, read as eight overlapping 6-bit chunks
+        long r = right & 0xFFFFFFFFL;
+        long e = ((r & 1L) << 33) | (r << 1) | (r >>> 31);
+        return SP[0][(int) ((e >>> 28) & 0x3F) ^ schedule[offset]]
+             ^ SP[1][(int) ((e >>> 24) & 0x3F) ^ schedule[offset + 1]]
+             ^ SP[2][(int) ((e >>> 20) & 0x3F) ^ schedule[offset + 2]]
+             ^ SP[3][(int) ((e >>> 16) & 0x3F) ^ schedule[offset + 3]]
+             ^ SP[4][(int) ((e >>> 12) & 0x3F) ^ schedule[offset + 4]]
+             ^ SP[5][(int) ((e >>> 8) & 0x3F) ^ schedule[offset + 5]]
+             ^ SP[6][(int) ((e >>> 4) & 0x3F) ^ schedule[offset + 6]]
+             ^ SP[7][(int) (e & 0x3F) ^ schedule[offset + 7]];
+    }
+
+    private static long lookup(long[][] tables, long block) {
+        long out = 0;
+        for (int i = 0; i < 8; i++) {
+            out |= tables[i][(int) (block >>> (56 - 8 * i)) & 0xFF];
+        }
+        return out;
+    }
+
+    /**
+     * Apply a DES permutation table (1-based, bit 1 is the most significant input bit)
+     */
+    private static long permute(long in, int inBits, int[] table) {
+        long out = 0;
+        for (int position : table) {
+            out = (out << 1) | ((in >>> (inBits - position)) & 1L);
+        }
+        return out;
+    }
+
+    private static long[][] byteTables(int[] table) {
+        long[][] tables = new long[8][256];
+        for (int i = 0; i < 8; i++) {
+            for (int value = 0; value < 256; value++) {
+                tables[i][value] = permute((long) value << (56 - 8 * i), 64, table);
+            }
+        }
+        return tables;
+    }
+
+    private static int[][] spTables() {
+        int[][] sp = new int[8][64];
+        for (int j = 0; j < 8; j++) {
+            for (int v = 0; v < 64; v++) {
+                int row = ((v >>> 4) & 0x2) | (v & 0x1);
+                int column = (v >>> 1) & 0xF;
+                long s = (long) SBOX[j][(row << 4) | column] << (28 - 4 * j);
+                sp[j][v] = (int) permute(s, 32, P);
+            }
+        }
+        return sp;
+    }
+}
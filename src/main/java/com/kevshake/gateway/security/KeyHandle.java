@@ -0,0 +1,118 @@
+package com.kevshake.gateway.security;
+
+/**
+ * DES/TDES key with its key schedules expanded once
+ * Single (16 hex), double (32 hex, K1 K2 K1) and triple (48 hex, K1 K2 K3) length keys are
+ * supported. Handles are immutable and safe to share between threads
+ */
+public final class KeyHandle {
+
+    private final byte[] k1;
+    private final byte[] k2;
+    private final byte[] k3;
+    private final int length;
+
+    private KeyHandle(byte[] k1, byte[] k2, byte[] k3, int length) {
+        this.k1 = k1;
+        this.k2 = k2;
+        this.k3 = k3;
+        this.length = length;
+    }
+
+    /**
+     * Build a handle from a hexadecimal key
+     *
+     * @throws IllegalArgumentException if the key is not 16, 32 or 48 hex digits
+     */
+    public static KeyHandle fromHex(String hexKey) {
+        if (hexKey == null || (hexKey.length() != 16 && hexKey.length() != 32 && hexKey.length() != 48)) {
+            throw new IllegalArgumentException("TDES key must be 16, 32 or 48 hex digits");
+        }
+        int length = hexKey.length() / 16;
+        byte[] k1 = DesEngine.keySchedule(parsePart(hexKey, 0));
+        byte[] k2 = length > 1 ? DesEngine.keySchedule(parsePart(hexKey, 16)) : k1;
+        byte[] k3 = length > 2 ? DesEngine.keySchedule(parsePart(hexKey, 32)) : k1;
+        return new KeyHandle(k1, k2, k3, length);
+    }
+
+    /**
+     * Build a handle from a binary key of 8, 16 or 24 bytes
+     */
+    public static KeyHandle fromBytes(byte[] key) {
+        if (key == null || (key.length != 8 && key.length != 16 && key.length != 24)) {
+            throw new IllegalArgumentException("TDES key must be 8, 16 or 24 bytes");
+        }
+        int length = key.length / 8;
+        byte[] k1 = DesEngine.keySchedule(readBlock(key, 0));
+        byte[] k2 = length > 1 ? DesEngine.keySchedule(readBlock(key, 8)) : k1;
+        byte[] k3 = length > 2 ? DesEngine.keySchedule(readBlock(key, 16)) : k1;
+        return new KeyHandle(k1, k2, k3, length);
+    }
+
+    /**
+     * Encrypt one 64-bit block (EDE)
+     */
+    public long encrypt(long block) {
+        return DesEngine.encryptEde(block, k1, k2, k3);
+    }
+
+    /**
+     * Decrypt one 64-bit block (DED)
+     */
+    public long decrypt(long block) {
+        return DesEngine.decryptEde(block, k1, k2, k3);
+    }
+
+    /**
+     * Number of 8 byte DES keys: 1 single, 2 double, 3 triple length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Key Check Value: first 6 hex digits of a zero block encrypted under the key
+     */
+    public String getKcv() {
+        return String.format("%016X", encrypt(0L)).substring(0, 6);
+    }
+
+    /**
+     * Read 8 bytes big-endian as a block
+     */
+    public static long readBlock(byte[] data, int offset) {
+        long block = 0;
+        for (int i = 0; i < 8; i++) {
+            block = (block << 8) | (data[offset + i] & 0xFF);
+        }
+        return block;
+    }
+
+    /**
+     * Write a block as 8 bytes big-endian
+     */
+    public static void writeBlock(long block, byte[] data, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            data[offset + i] = (byte) block;
+            block >>>= 8;
+        }
+    }
+
+    private static long parsePart(String hex, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("TDES key is not hexadecimal");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        // Never expose key material
+        return "KeyHandle[length=" + length + ", kcv=" + getKcv() + "]";
+    }
+}
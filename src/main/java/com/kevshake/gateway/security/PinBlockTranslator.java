@@ -0,0 +1,87 @@
+package com.kevshake.gateway.security;
+
+/**
+ * Binary ISO 9564 format 0 PIN block translation
+ * The PIN block is decrypted, checked and re-encrypted as 64-bit values: the PAN block is
+ * XOR-ed into the clear block only to validate it, and the PIN digits never become a String
+ * or a heap buffer. Clear values are cleared as soon as the new block has been produced
+ */
+public final class PinBlockTranslator {
+
+    /** Size of a PIN block in bytes */
+    public static final int PIN_BLOCK_SIZE = 8;
+
+    private PinBlockTranslator() {
+    }
+
+    /**
+     * Translate a format 0 PIN block from one key to another
+     *
+     * @param in PIN block encrypted under {@code from}, first 8 bytes are used
+     * @param pan primary account number as ASCII digits
+     * @param from key the PIN block is encrypted under
+     * @param to key to encrypt the PIN block under
+     * @param out receives the 8 byte PIN block encrypted under {@code to}; may be the same array as {@code in}
+     * @throws IllegalArgumentException if a buffer is too short, the PAN is not numeric or the
+     *         decrypted block is not a valid format 0 PIN block (e.g. wrong source key)
+     */
+    public static void translatePinBlock(byte[] in, byte[] pan, KeyHandle from, KeyHandle to, byte[] out) {
+        if (in == null || in.length < PIN_BLOCK_SIZE || out == null || out.length < PIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("PIN block buffers must hold " + PIN_BLOCK_SIZE + " bytes");
+        }
+
+        long clearBlock = from.decrypt(KeyHandle.readBlock(in, 0));
+        long pinField = clearBlock ^ panBlock(pan);
+        boolean valid = isFormat0PinField(pinField);
+        pinField = 0;
+        if (!valid) {
+            clearBlock = 0;
+            throw new IllegalArgumentException("Decrypted PIN block is not a valid ISO 9564 format 0 block");
+        }
+
+        // The PAN is unchanged, so the clear block is already the format 0 block for the new key
+        KeyHandle.writeBlock(to.encrypt(clearBlock), out, 0);
+        clearBlock = 0;
+    }
+
+    /**
+     * Build the format 0 PAN block: 0000 followed by the 12 rightmost PAN digits excluding the check digit
+     * (the whole PAN, zero padded, when it has 12 digits or fewer)
+     */
+    public static long panBlock(byte[] pan) {
+        if (pan == null || pan.length == 0) {
+            throw new IllegalArgumentException("PAN is required for a format 0 PIN block");
+        }
+        int end = pan.length > 12 ? pan.length - 1 : pan.length;
+        int start = pan.length > 12 ? end - 12 : 0;
+        long block = 0;
+        for (int i = start; i < end; i++) {
+            int digit = pan[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("PAN must be numeric");
+            }
+            block = (block << 4) | digit;
+        }
+        return block;
+    }
+
+    /**
+     * Check the control nibble (0), PIN length (4-12), decimal PIN digits and F filler
+     */
+    private static boolean isFormat0PinField(long field) {
+        if ((field >>> 60) != 0) {
+            return false;
+        }
+        int length = (int) (field >>> 56) & 0x0F;
+        if (length < 4 || length > 12) {
+            return false;
+        }
+        for (int i = 0; i < 14; i++) {
+            int nibble = (int) (field >>> (52 - 4 * i)) & 0x0F;
+            if (i < length ? nibble > 9 : nibble != 0x0F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,12 +1,20 @@
 package com.kevshake.gateway.security;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.kevshake.gateway.components.GatewayMetrics;
+import com.kevshake.gateway.components.LogEvent;
 import com.kevshake.gateway.components.MaskedLogger;
+import com.kevshake.gateway.service.TerminalKeyCache;
 
 /**
  * PIN Transposition Service
@@ -20,6 +28,12 @@ public class PinTranspositionService {
     @Autowired
     private MaskedLogger maskedLogger;
     
+    @Autowired
+    private TerminalKeyCache terminalKeyCache;
+    
+    @Autowired
+    private GatewayMetrics metrics;
+    
     // Configuration for PIN keys - these should be loaded from secure configuration
     @Value("${iso8583.security.gateway-zonal-key:40763BB5B0B910B5CE3297E58967CD2A}")
     private String gatewayZonalKey;
@@ -27,6 +41,11 @@ public class PinTranspositionService {
     @Value("${iso8583.security.default-terminal-key:9E4F7FF1F831F1132CD9B6C740B0134C}")
     private String defaultTerminalKey;
     
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+    
+    // Expanded key schedules by hex key, so each configured key is parsed once
+    private final Map<String, KeyHandle> keyHandles = new ConcurrentHashMap<>();
+    
     /**
      * Transpose PIN from POS Terminal key to Gateway Zonal key
      * 
@@ -36,35 +55,40 @@ public class PinTranspositionService {
      * @return PIN block encrypted with gateway zonal key
      */
     public String transposePinToGatewayKey(String encryptedPinBlock, String pan, String terminalId) {
+        byte[] pinBlock = transposePinToGatewayKey(HexFormat.of().parseHex(encryptedPinBlock),
+            pan.getBytes(StandardCharsets.US_ASCII), terminalId);
+        return HEX.formatHex(pinBlock);
+    }
+    
+    /**
+     * Transpose a binary PIN block from POS Terminal key to Gateway Zonal key
+     * The clear PIN is never turned into a String (see PinBlockTranslator)
+     * 
+     * @param encryptedPinBlock 8 byte PIN block encrypted with terminal key
+     * @param pan Primary Account Number as ASCII digits
+     * @param terminalId Terminal ID (used to determine terminal-specific key if needed)
+     * @return 8 byte PIN block encrypted with gateway zonal key
+     */
+    public byte[] transposePinToGatewayKey(byte[] encryptedPinBlock, byte[] pan, String terminalId) {
         try {
             // Log the transposition attempt (without sensitive data)
-            maskedLogger.logSystemEvent("PIN_TRANSPOSE_START", 
-                String.format("Starting PIN transposition for terminal: %s", terminalId));
-            
-            // Step 1: Get the terminal-specific PIN key (could be from database/config)
-            String terminalPinKey = getTerminalPinKey(terminalId);
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_START, "Starting PIN transposition for terminal: {}", terminalId);
             
-            // Step 2: Decrypt the PIN block using terminal key
-            String decryptedPinBlock = TDES.TDES_Decrypt(encryptedPinBlock, terminalPinKey, false);
-            
-            // Step 3: Decrypt the PIN block to get clear PIN
-            String clearPin = TDES.format0decode(decryptedPinBlock, pan);
-            
-            // Step 4: Create new PIN block with clear PIN and PAN
-            String newPinBlock = TDES.format0Encode(clearPin, pan);
-            
-            // Step 5: Encrypt new PIN block with gateway zonal key
-            String gatewayEncryptedPinBlock = TDES.TDES_Encrypt(newPinBlock, gatewayZonalKey, false);
+            // Decrypt with the terminal key, check the format 0 block and encrypt with the zonal key
+            long start = System.nanoTime();
+            byte[] gatewayEncryptedPinBlock = new byte[PinBlockTranslator.PIN_BLOCK_SIZE];
+            PinBlockTranslator.translatePinBlock(encryptedPinBlock, pan,
+                getTerminalKeyHandle(terminalId), keyHandle(gatewayZonalKey), gatewayEncryptedPinBlock);
+            metrics.recordPinTranslation(System.nanoTime() - start);
             
             // Log successful transposition
-            maskedLogger.logSystemEvent("PIN_TRANSPOSE_SUCCESS", 
-                String.format("PIN successfully transposed for terminal: %s", terminalId));
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_SUCCESS, "PIN successfully transposed for terminal: {}", terminalId);
             
             return gatewayEncryptedPinBlock;
             
         } catch (Exception e) {
             // Log error without exposing sensitive data
-            maskedLogger.logError("PIN_TRANSPOSE_ERROR",  String.format("PIN transposition failed for terminal: %s", terminalId), e);
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_ERROR, e, "PIN transposition failed for terminal: {}", terminalId);
             log.error("PIN transposition error for terminal: {}", terminalId, e);
             throw new RuntimeException("PIN transposition failed", e);
         }
@@ -79,32 +103,35 @@ public class PinTranspositionService {
      * @return PIN block encrypted with bank key
      */
     public String transposePinToBankKey(String gatewayEncryptedPinBlock, String pan, String bankId) {
+        byte[] pinBlock = transposePinToBankKey(HexFormat.of().parseHex(gatewayEncryptedPinBlock),
+            pan.getBytes(StandardCharsets.US_ASCII), bankId);
+        return HEX.formatHex(pinBlock);
+    }
+    
+    /**
+     * Transpose a binary PIN block from Gateway Zonal key to Bank key
+     * 
+     * @param gatewayEncryptedPinBlock 8 byte PIN block encrypted with gateway zonal key
+     * @param pan Primary Account Number as ASCII digits
+     * @param bankId Bank identifier (used to determine bank-specific key)
+     * @return 8 byte PIN block encrypted with bank key
+     */
+    public byte[] transposePinToBankKey(byte[] gatewayEncryptedPinBlock, byte[] pan, String bankId) {
         try {
-            maskedLogger.logSystemEvent("PIN_TRANSPOSE_BANK_START", 
-                String.format("Starting PIN transposition to bank key for bank: %s", bankId));
-            
-            // Step 1: Get the bank-specific PIN key
-            String bankPinKey = getBankPinKey(bankId);
-            
-            // Step 2: Decrypt PIN block using gateway zonal key
-            String decryptedPinBlock = TDES.TDES_Decrypt(gatewayEncryptedPinBlock, gatewayZonalKey, false);
-            
-            // Step 3: Get clear PIN
-            String clearPin = TDES.format0decode(decryptedPinBlock, pan);
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_BANK_START, "Starting PIN transposition to bank key for bank: {}", bankId);
             
-            // Step 4: Create new PIN block
-            String newPinBlock = TDES.format0Encode(clearPin, pan);
+            long start = System.nanoTime();
+            byte[] bankEncryptedPinBlock = new byte[PinBlockTranslator.PIN_BLOCK_SIZE];
+            PinBlockTranslator.translatePinBlock(gatewayEncryptedPinBlock, pan,
+                keyHandle(gatewayZonalKey), keyHandle(getBankPinKey(bankId)), bankEncryptedPinBlock);
+            metrics.recordBankPinTranslation(System.nanoTime() - start);
             
-            // Step 5: Encrypt with bank key
-            String bankEncryptedPinBlock = TDES.TDES_Encrypt(newPinBlock, bankPinKey, false);
-            
-            maskedLogger.logSystemEvent("PIN_TRANSPOSE_BANK_SUCCESS", 
-                String.format("PIN successfully transposed to bank key for bank: %s", bankId));
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_BANK_SUCCESS, "PIN successfully transposed to bank key for bank: {}", bankId);
             
             return bankEncryptedPinBlock;
             
         } catch (Exception e) {
-            maskedLogger.logError("PIN_TRANSPOSE_BANK_ERROR", String.format("PIN transposition to bank failed for bank: %s", bankId), e);
+            maskedLogger.log(LogEvent.PIN_TRANSPOSE_BANK_ERROR, e, "PIN transposition to bank failed for bank: {}", bankId);
             log.error("PIN transposition to bank error for bank: {}", bankId, e);
             throw new RuntimeException("PIN transposition to bank failed", e);
         }
@@ -146,25 +173,60 @@ public class PinTranspositionService {
     }
     
     /**
-     * Get terminal-specific PIN key
-     * In production, this should retrieve from secure key storage/database
+     * Validate a binary PIN block: 8 bytes, not all zeros, PAN of at least 12 digits
+     * 
+     * @param pinBlock PIN block to validate
+     * @param pan Primary Account Number as ASCII digits
+     * @return true if valid, false otherwise
+     */
+    public boolean validatePinBlock(byte[] pinBlock, byte[] pan) {
+        if (pinBlock == null || pinBlock.length != PinBlockTranslator.PIN_BLOCK_SIZE) {
+            log.warn("Invalid PIN block length: {}", pinBlock != null ? pinBlock.length : 0);
+            return false;
+        }
+        
+        int bits = 0;
+        for (byte b : pinBlock) {
+            bits |= b;
+        }
+        if (bits == 0) {
+            log.warn("PIN block is all zeros - invalid");
+            return false;
+        }
+        
+        if (pan == null || pan.length < 12) {
+            log.warn("Invalid PAN length: {}", pan != null ? pan.length : 0);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Get the fallback PIN key for terminals without an active key of their own
+     * Terminal-specific keys come from TerminalKeyCache (see getTerminalKeyHandle)
      * 
      * @param terminalId Terminal identifier
      * @return Terminal PIN key
      */
     private String getTerminalPinKey(String terminalId) {
-        // TODO: In production, implement secure key retrieval from database/HSM
-        // For now, return default terminal key
-        
-        // Example of terminal-specific key logic:
-        // if ("TERM0001".equals(terminalId)) {
-        //     return "SPECIFIC_KEY_FOR_TERM0001";
-        // }
-        
         log.debug("Using default terminal key for terminal: {}", terminalId);
         return defaultTerminalKey;
     }
     
+    /**
+     * Key handle for the terminal PIN key
+     * Uses the terminal's own active key from the key cache, or the default terminal key
+     */
+    private KeyHandle getTerminalKeyHandle(String terminalId) {
+        KeyHandle terminalKey = terminalKeyCache.get(terminalId);
+        return terminalKey != null ? terminalKey : keyHandle(getTerminalPinKey(terminalId));
+    }
+    
+    private KeyHandle keyHandle(String hexKey) {
+        return keyHandles.computeIfAbsent(hexKey, KeyHandle::fromHex);
+    }
+    
     /**
      * Get bank-specific PIN key
      * In production, this should retrieve from secure key storage/database
@@ -199,7 +261,7 @@ public class PinTranspositionService {
             return TDES.getKCV(key);
         } catch (Exception e) {
             log.error("Error generating KCV", e);
-            maskedLogger.logError("KCV_GENERATION_ERROR", "Failed to generate KCV", e);
+            maskedLogger.log(LogEvent.KCV_GENERATION_ERROR, e, "Failed to generate KCV");
             return null;
         }
     }
@@ -225,16 +287,16 @@ public class PinTranspositionService {
             boolean matches = expectedPin.equals(clearPin);
             
             if (matches) {
-                maskedLogger.logSystemEvent("PIN_VERIFY_SUCCESS", "PIN verification successful");
+                maskedLogger.log(LogEvent.PIN_VERIFY_SUCCESS, "PIN verification successful");
             } else {
-                maskedLogger.logSystemEvent("PIN_VERIFY_FAILED", "PIN verification failed");
+                maskedLogger.log(LogEvent.PIN_VERIFY_FAILED, "PIN verification failed");
             }
             
             return matches;
             
         } catch (Exception e) {
             log.error("Error verifying PIN", e);
-            maskedLogger.logError("PIN_VERIFY_ERROR", "PIN verification error", e);
+            maskedLogger.log(LogEvent.PIN_VERIFY_ERROR, e, "PIN verification error");
             return false;
         }
     }
@@ -225,18 +225,15 @@ public class BankResponseCodeService {
         String description = getBankResponseDescription(responseCode);
         BankResponseSeverity severity = getBankResponseSeverity(responseCode);
         
-        String logMessage = String.format("Bank Response Code: %s - %s | Context: %s | Transaction: %s", 
-                                        responseCode, description, context, transactionId);
-
         switch (severity) {
             case INFO:
-                logger.info(logMessage);
+                logger.info("Bank Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
             case WARN:
-                logger.warn(logMessage);
+                logger.warn("Bank Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
             case ERROR:
-                logger.error(logMessage);
+                logger.error("Bank Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
         }
     }
@@ -260,18 +260,15 @@ public class ResponseCodeService {
         String description = getResponseDescription(responseCode);
         ResponseSeverity severity = getResponseSeverity(responseCode);
         
-        String logMessage = String.format("Response Code: %s - %s | Context: %s | Transaction: %s", 
-                                        responseCode, description, context, transactionId);
-
         switch (severity) {
             case INFO:
-                logger.info(logMessage);
+                logger.info("Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
             case WARN:
-                logger.warn(logMessage);
+                logger.warn("Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
             case ERROR:
-                logger.error(logMessage);
+                logger.error("Response Code: {} - {} | Context: {} | Transaction: {}", responseCode, description, context, transactionId);
                 break;
         }
     }
@@ -0,0 +1,216 @@
+package com.kevshake.gateway.service;
+
+import com.kevshake.gateway.entity.TerminalKey;
+import com.kevshake.gateway.repository.TerminalKeyRepository;
+import com.kevshake.gateway.security.KeyHandle;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Terminal Key Cache
+ * Keeps the PIN key of each terminal as a KeyHandle with its key schedules already expanded,
+ * so PIN transactions do not hit the database. Entries are loaded on first use, replaced on
+ * key change, dropped on deactivation and reloaded after the TTL or when the key expires.
+ * Terminals without a usable key are cached too, so they do not cost a query per transaction.
+ * A load that overlaps a key change or deactivation is used once but not cached
+ */
+@Service
+public class TerminalKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TerminalKeyCache.class);
+
+    // Entries inspected when choosing an eviction victim
+    private static final int EVICTION_SAMPLE = 8;
+
+    // Invalidation counters, one per stripe of terminal IDs (power of two)
+    private static final int INVALIDATION_STRIPES = 256;
+
+    @Autowired
+    private TerminalKeyRepository terminalKeyRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${iso8583.terminal.key-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${iso8583.terminal.key-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.terminal.key.cache.size", this, TerminalKeyCache::getSize)
+            .register(registry);
+        FunctionCounter.builder("gateway.terminal.key.cache.requests", this, TerminalKeyCache::getHitCount)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("gateway.terminal.key.cache.requests", this, TerminalKeyCache::getMissCount)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("gateway.terminal.key.cache.evictions", this, TerminalKeyCache::getEvictionCount)
+            .register(registry);
+    }
+
+    /**
+     * Get the key handle for a terminal, loading it on a miss
+     *
+     * @param terminalId the terminal ID (field 41)
+     * @return key handle, or null if the terminal has no active, unexpired key
+     */
+    public KeyHandle get(String terminalId) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(terminalId);
+        if (entry != null) {
+            if (entry.validUntil > now) {
+                hits.increment();
+                entry.lastAccess = now;
+                return entry.handle;
+            }
+            entries.remove(terminalId, entry);
+        }
+
+        misses.increment();
+        int stripe = stripe(terminalId);
+        long version = invalidations.get(stripe);
+        Entry loaded = load(terminalId, now);
+        // A key change that completed meanwhile wins over what was read from the database
+        Entry current = entries.putIfAbsent(terminalId, loaded);
+        if (current != null) {
+            return current.handle;
+        }
+        if (invalidations.get(stripe) != version) {
+            // Changed or deactivated during the load; the next lookup reads the database again
+            entries.remove(terminalId, loaded);
+            return loaded.handle;
+        }
+        evictIfFull();
+        return loaded.handle;
+    }
+
+    /**
+     * Cache a newly assigned key, replacing any previous entry
+     */
+    public void put(String terminalId, TerminalKey key) {
+        Entry entry = entryFor(key.getKeyValue(), key.getExpiryDate(), System.currentTimeMillis());
+        invalidations.incrementAndGet(stripe(terminalId));
+        entries.put(terminalId, entry);
+        evictIfFull();
+    }
+
+    /**
+     * Drop the entry of a terminal, e.g. after deactivation
+     */
+    public void evict(String terminalId) {
+        invalidations.incrementAndGet(stripe(terminalId));
+        if (entries.remove(terminalId) != null) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drop every entry
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private static int stripe(String terminalId) {
+        int h = terminalId.hashCode();
+        return (h ^ (h >>> 16)) & (INVALIDATION_STRIPES - 1);
+    }
+
+    private Entry load(String terminalId, long now) {
+        Optional<TerminalKeyRepository.ActiveKey> key = terminalKeyRepository.findActiveKeyByTerminalId(terminalId);
+        if (key.isEmpty()) {
+            return new Entry(null, now + TimeUnit.SECONDS.toMillis(ttlSeconds), now);
+        }
+        try {
+            return entryFor(key.get().getKeyValue(), key.get().getExpiryDate(), now);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unusable key {} for terminal {}: {}", key.get().getKeyId(), terminalId, e.getMessage());
+            return new Entry(null, now + TimeUnit.SECONDS.toMillis(ttlSeconds), now);
+        }
+    }
+
+    private Entry entryFor(String keyValue, LocalDateTime expiryDate, long now) {
+        long validUntil = now + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        if (expiryDate != null) {
+            long expiry = expiryDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (expiry <= now) {
+                // Expired keys are not used; look again once the TTL has passed
+                return new Entry(null, validUntil, now);
+            }
+            validUntil = Math.min(validUntil, expiry);
+        }
+        return new Entry(KeyHandle.fromHex(keyValue), validUntil, now);
+    }
+
+    /**
+     * Keep the cache bounded by dropping the least recently used of a few sampled entries
+     */
+    private void evictIfFull() {
+        while (entries.size() > maxEntries) {
+            String victim = null;
+            long oldest = Long.MAX_VALUE;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            for (int i = 0; i < EVICTION_SAMPLE && it.hasNext(); i++) {
+                Map.Entry<String, Entry> candidate = it.next();
+                if (candidate.getValue().lastAccess < oldest) {
+                    oldest = candidate.getValue().lastAccess;
+                    victim = candidate.getKey();
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            // Capacity eviction is not an invalidation; loads in flight may still cache their result
+            if (entries.remove(victim) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    // Metrics accessors
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public int getSize() { return entries.size(); }
+
+    /**
+     * Cached key, null when the terminal has no usable key
+     */
+    private static final class Entry {
+        final KeyHandle handle;
+        final long validUntil;
+        volatile long lastAccess;
+
+        Entry(KeyHandle handle, long validUntil, long lastAccess) {
+            this.handle = handle;
+            this.validUntil = validUntil;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
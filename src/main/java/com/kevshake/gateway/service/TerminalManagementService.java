@@ -12,6 +12,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -38,6 +40,9 @@ public class TerminalManagementService {
     @Autowired
     private MaskedLogger maskedLogger;
 
+    @Autowired
+    private TerminalKeyCache terminalKeyCache;
+
     // Configuration properties for key management
     @Value("${iso8583.terminal.auto-create:true}")
     private boolean autoCreateTerminals;
@@ -89,6 +94,10 @@ public class TerminalManagementService {
             // Save terminal and key
             terminalRepository.save(terminal);
             
+            // Serve PIN translations with the new key once it is committed
+            String cachedTerminalId = terminalId;
+            afterCommit(() -> terminalKeyCache.put(cachedTerminalId, newKey));
+            
             if (logKeyOperations) {
                 logger.info("Key change completed successfully for Terminal ID: {}, Key ID: {}, Masked Key: {}", 
                            terminalId, newKey.getKeyId(), newKey.getMaskedKeyValue());
@@ -348,6 +357,7 @@ public class TerminalManagementService {
             }
             
             terminalRepository.save(terminal);
+            afterCommit(() -> terminalKeyCache.evict(terminalId));
             logger.info("Deactivated terminal: {}", terminalId);
             return true;
         }
@@ -355,6 +365,24 @@ public class TerminalManagementService {
         return false;
     }
 
+    /**
+     * Run an action once the current transaction has committed, or at once outside a transaction
+     * 
+     * @param action the action to run
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * Get terminal statistics
      * 